@@ -0,0 +1,102 @@
+// Benchmark class: BatchUploadBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.model.FileMetadata;
+import com.digitallocker.model.User;
+import com.digitallocker.service.LockerService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares uploading a folder of small files one uploadFile call at a time with uploadAll at
+ * several concurrency levels. Before each invocation every source file is stamped with a new
+ * counter so uploads store new content instead of deduplicating; uploads are deleted afterwards.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchUploadBenchmark {
+
+    @Param({"1000"})
+    public int fileCount;
+
+    @Param({"16384"})
+    public long fileSize;
+
+    @Param({"1", "4", "16", "64"})
+    public int concurrency;
+
+    private Path workDirectory;
+    private List<Path> sources;
+    private LockerService lockerService;
+    private User user;
+    private ExecutorService executor;
+    private long uploadCounter;
+
+    @Setup(Level.Trial)
+    public void createLocker() throws IOException {
+        workDirectory = Files.createTempDirectory("batch-upload-bench");
+        Path sourceDirectory = Files.createDirectories(workDirectory.resolve("sources"));
+        sources = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            Path source = sourceDirectory.resolve("file-" + i + ".bin");
+            BenchmarkFiles.writeRandomFile(source, fileSize);
+            sources.add(source);
+        }
+        lockerService = new LockerService(workDirectory.resolve("data").toString());
+        lockerService.registerUser("bench", "bench");
+        user = lockerService.authenticateUser("bench", "bench");
+        executor = Executors.newFixedThreadPool(concurrency);
+    }
+
+    @Setup(Level.Invocation)
+    public void stampSources() throws IOException {
+        uploadCounter++;
+        for (int i = 0; i < sources.size(); i++) {
+            try (FileChannel channel = FileChannel.open(sources.get(i), StandardOpenOption.WRITE)) {
+                ByteBuffer stamp = ByteBuffer.allocate(2 * Long.BYTES).putLong(uploadCounter).putLong(i).flip();
+                channel.write(stamp, 0);
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteUploads() throws IOException {
+        for (FileMetadata file : lockerService.listFiles(user)) {
+            lockerService.deleteFile(user, file.getId());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLocker() throws IOException {
+        executor.shutdown();
+        lockerService.close();
+        BenchmarkFiles.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public void uploadSequentially() throws IOException {
+        for (Path source : sources) {
+            lockerService.uploadFile(user, source);
+        }
+    }
+
+    @Benchmark
+    public List<LockerService.UploadResult> uploadAll() throws IOException {
+        return lockerService.uploadAll(user, sources, executor, concurrency);
+    }
+}
@@ -0,0 +1,87 @@
+// Benchmark class: BlobLayoutBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.storage.BlobLayout;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating and opening blob files in a blob directory that already holds 1K or 1M
+ * files, stored flat or in two levels of 256 buckets. Files are empty and named by random
+ * 64-digit hex, like blob names. createAndDelete creates a new file and deletes it again, so the
+ * directory does not grow over the run; open opens and closes a random existing file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class BlobLayoutBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int fileCount;
+
+    @Param({"flat", "2"})
+    public String layout;
+
+    private Path blobDirectory;
+    private BlobLayout blobLayout;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        blobDirectory = Files.createTempDirectory("blob-layout-bench");
+        blobLayout = BlobLayout.parse(layout);
+        Random random = new Random(42);
+        Set<Path> buckets = new HashSet<>();
+        names = new String[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            names[i] = randomName(random);
+            Path file = blobLayout.locate(blobDirectory, names[i]);
+            if (buckets.add(file.getParent())) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.createFile(file);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.deleteRecursively(blobDirectory);
+    }
+
+    @Benchmark
+    public Path createAndDelete() throws IOException {
+        Path file = blobLayout.locate(blobDirectory, randomName(ThreadLocalRandom.current()));
+        Files.createDirectories(file.getParent()); // As BlobStore does before moving a new blob in.
+        Files.createFile(file);
+        Files.delete(file);
+        return file;
+    }
+
+    @Benchmark
+    public long open() throws IOException {
+        String name = names[ThreadLocalRandom.current().nextInt(fileCount)];
+        try (FileChannel channel = FileChannel.open(blobLayout.locate(blobDirectory, name), StandardOpenOption.READ)) {
+            return channel.size();
+        }
+    }
+
+    private static String randomName(Random random) {
+        byte[] hash = new byte[32];
+        random.nextBytes(hash);
+        return HexFormat.of().formatHex(hash);
+    }
+}
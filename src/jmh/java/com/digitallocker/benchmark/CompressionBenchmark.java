@@ -0,0 +1,159 @@
+// Benchmark class: CompressionBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.storage.CompressionPolicy;
+import com.digitallocker.storage.StreamingCompressor;
+import com.digitallocker.util.CopyEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU cost of storing uploads through the StreamingCompressor against the disk bytes
+ * it saves, for the kinds of content a locker holds: text logs, CSV exports, already-compressed
+ * media (random bytes, which is what JPEG and ZIP look like to Deflater) and sparse binary files.
+ * <p>
+ * Level 0 is the store-as-is baseline. The {@code rawBytes} and {@code storedBytes} counters
+ * are summed over each iteration, so {@code storedBytes / rawBytes} is the fraction of disk space used.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    private static final int FILE_SIZE = 16 * 1024 * 1024;
+
+    @Param({"log", "csv", "media", "sparse"})
+    public String content;
+
+    @Param({"0", "1", "6", "9"})
+    public int level;
+
+    private Path workDirectory;
+    private Path source;
+    private StreamingCompressor compressor;
+
+    /**
+     * Bytes read and bytes that would be written to disk, summed per iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long rawBytes;
+        public long storedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rawBytes = 0;
+            storedBytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createSourceFile() throws IOException {
+        workDirectory = Files.createTempDirectory("compression-bench");
+        source = workDirectory.resolve("source." + content);
+        compressor = new StreamingCompressor(new CopyEngine());
+        switch (content) {
+            case "log" -> writeText(source, (random, line) -> line.append("2025-01-15 10:")
+                    .append(10 + random.nextInt(50)).append(':').append(10 + random.nextInt(50))
+                    .append(" INFO  [worker-").append(random.nextInt(16)).append("] GET /files/")
+                    .append(Long.toHexString(random.nextLong())).append(" 200 ")
+                    .append(random.nextInt(5000)).append("ms\n"));
+            case "csv" -> writeText(source, (random, line) -> line.append(random.nextInt(1_000_000)).append(',')
+                    .append("customer-").append(random.nextInt(5000)).append(',')
+                    .append(random.nextInt(100_000) / 100.0).append(",EUR,")
+                    .append(random.nextBoolean() ? "paid" : "open").append('\n'));
+            case "media" -> writeRandom(source);
+            case "sparse" -> writeSparse(source);
+            default -> throw new IllegalArgumentException("Unknown content: " + content);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public long compress(Sizes sizes) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            StreamingCompressor.Result result = compressor.compress(in, new DiscardingSink(), newDigest(),
+                    level == 0 ? CompressionPolicy.STORE : level);
+            sizes.rawBytes += result.getRawSize();
+            sizes.storedBytes += result.getStoredSize();
+            return result.getStoredSize();
+        }
+    }
+
+    private interface LineWriter {
+        void append(Random random, StringBuilder line);
+    }
+
+    private static void writeText(Path file, LineWriter lineWriter) throws IOException {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(FILE_SIZE + 256);
+        while (text.length() < FILE_SIZE) {
+            lineWriter.append(random, text);
+        }
+        text.setLength(FILE_SIZE);
+        Files.writeString(file, text);
+    }
+
+    private static void writeRandom(Path file) throws IOException {
+        byte[] bytes = new byte[FILE_SIZE];
+        new Random(42).nextBytes(bytes);
+        Files.write(file, bytes);
+    }
+
+    private static void writeSparse(Path file) throws IOException {
+        byte[] bytes = new byte[FILE_SIZE];
+        Random random = new Random(42);
+        for (int i = 0; i < bytes.length; i += 4096) {
+            bytes[i + random.nextInt(4096)] = (byte) random.nextInt();
+        }
+        Files.write(file, bytes);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Discards what is written, so the benchmark measures CPU rather than the disk.
+     */
+    private static class DiscardingSink implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+// Benchmark class: CopyEngineBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.util.CopyEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old upload path (Files.copy followed by Files.size) with CopyEngine,
+ * both in zero-copy mode and with a CRC32C computed during the copy.
+ * Divide fileSize by the reported time per operation to get bytes per second.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CopyEngineBenchmark {
+
+    @Param({"4096", "1048576", "67108864", "1073741824", "4294967296"})
+    public long fileSize;
+
+    private Path workDirectory;
+    private Path source;
+    private Path target;
+    private CopyEngine zeroCopyEngine;
+    private CopyEngine checksumEngine;
+
+    @Setup(Level.Trial)
+    public void createSourceFile() throws IOException {
+        workDirectory = Files.createTempDirectory("copy-bench");
+        source = workDirectory.resolve("source.bin");
+        target = workDirectory.resolve("target.bin");
+        zeroCopyEngine = new CopyEngine();
+        checksumEngine = new CopyEngine(CopyEngine.DEFAULT_CHUNK_SIZE, true);
+        BenchmarkFiles.writeRandomFile(source, fileSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public long filesCopyThenSize() throws IOException {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        return Files.size(source);
+    }
+
+    @Benchmark
+    public long copyEngineZeroCopy() throws IOException {
+        return zeroCopyEngine.copy(source, target).getSize();
+    }
+
+    @Benchmark
+    public long copyEngineWithChecksum() throws IOException {
+        return checksumEngine.copy(source, target).getChecksum();
+    }
+}
@@ -0,0 +1,128 @@
+// Benchmark class: EncryptionBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.storage.DataKey;
+import com.digitallocker.storage.SegmentedCipher;
+import com.digitallocker.util.CopyEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that segmented AES-GCM keeps up with the disk: compares writing and reading a file
+ * through SegmentedCipher with a plain CopyEngine copy of the same file, and measures the cipher
+ * alone against a discarding sink. Divide fileSize by the reported time per operation to get
+ * bytes per second. The JDK uses AES-NI and CLMUL intrinsics for AES-GCM when the CPU has them;
+ * run with {@code -XX:-UseAES -XX:-UseAESIntrinsics} to see the software path for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncryptionBenchmark {
+
+    @Param({"1048576", "67108864", "1073741824"})
+    public long fileSize;
+
+    private Path workDirectory;
+    private Path source;
+    private Path encrypted;
+    private Path target;
+    private CopyEngine copyEngine;
+    private DataKey dataKey;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        workDirectory = Files.createTempDirectory("encryption-bench");
+        source = workDirectory.resolve("source.bin");
+        encrypted = workDirectory.resolve("encrypted.bin");
+        target = workDirectory.resolve("target.bin");
+        copyEngine = new CopyEngine();
+        byte[] keyBytes = new byte[32];
+        new Random(42).nextBytes(keyBytes);
+        dataKey = new DataKey(keyBytes);
+        BenchmarkFiles.writeRandomFile(source, fileSize);
+        encryptToDisk();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public long plainCopyToDisk() throws IOException {
+        return copyEngine.copy(source, target).getSize();
+    }
+
+    @Benchmark
+    public long encryptToDisk() throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             WritableByteChannel out = SegmentedCipher.encrypt(FileChannel.open(encrypted, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), dataKey.getKey())) {
+            return pump(in, out);
+        }
+    }
+
+    @Benchmark
+    public long decryptFromDisk() throws IOException {
+        try (ReadableByteChannel in = SegmentedCipher.decrypt(FileChannel.open(encrypted, StandardOpenOption.READ), dataKey.getKey());
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return pump(in, out);
+        }
+    }
+
+    @Benchmark
+    public long encryptOnly() throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             WritableByteChannel out = SegmentedCipher.encrypt(new DiscardingSink(), dataKey.getKey())) {
+            return pump(in, out);
+        }
+    }
+
+    private static long pump(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SegmentedCipher.SEGMENT_SIZE);
+        long total = 0;
+        while (in.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                total += out.write(buffer);
+            }
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * Discards what is written, so the cipher is measured without the disk.
+     */
+    private static class DiscardingSink implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
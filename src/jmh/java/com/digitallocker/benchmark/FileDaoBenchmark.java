@@ -0,0 +1,92 @@
+// Benchmark class: FileDaoBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.dao.DurabilityPolicy;
+import com.digitallocker.dao.FileDao;
+import com.digitallocker.dao.MetadataConverter;
+import com.digitallocker.model.FileMetadata;
+import com.digitallocker.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures metadata reads and updates for a locker holding 10, 1K or 100K entries, stored either
+ * as a text log or converted to a binary snapshot. The uncached variants drop the user's cache
+ * entry first, so they include reading the locker from disk: a full replay for listings, and a
+ * log scan or snapshot index lookup for single ids.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileDaoBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int entryCount;
+
+    @Param({"text", "binary"})
+    public String format;
+
+    private final User user = new User("bench", "unused");
+    private Path dataDirectory;
+    private FileDao fileDao;
+
+    @Setup(Level.Trial)
+    public void createLocker() throws IOException {
+        dataDirectory = Files.createTempDirectory("file-bench");
+        fileDao = new FileDao(dataDirectory.toString());
+        for (int i = 0; i < entryCount; i++) {
+            fileDao.saveFileMetadata(user, entry(i, "document-" + i + ".pdf"));
+        }
+        if (format.equals("binary")) {
+            MetadataConverter.convert(dataDirectory, DurabilityPolicy.none());
+            fileDao = new FileDao(dataDirectory.toString());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLocker() throws IOException {
+        BenchmarkFiles.deleteRecursively(dataDirectory);
+    }
+
+    @Benchmark
+    public List<FileMetadata> getFilesMetadataCached() throws IOException {
+        return fileDao.getFilesMetadata(user);
+    }
+
+    @Benchmark
+    public List<FileMetadata> getFilesMetadataUncached() throws IOException {
+        fileDao.getCache().invalidate(user.getUsername());
+        return fileDao.getFilesMetadata(user);
+    }
+
+    @Benchmark
+    public Optional<FileMetadata> findFileByIdCached() throws IOException {
+        return fileDao.findFileById(user, "file-" + ThreadLocalRandom.current().nextInt(entryCount));
+    }
+
+    @Benchmark
+    public Optional<FileMetadata> findFileByIdUncached() throws IOException {
+        fileDao.getCache().invalidate(user.getUsername());
+        return fileDao.findFileById(user, "file-" + ThreadLocalRandom.current().nextInt(entryCount));
+    }
+
+    @Benchmark
+    public void updateFileMetadata() throws IOException {
+        int index = ThreadLocalRandom.current().nextInt(entryCount);
+        fileDao.updateFileMetadata(user, entry(index, "renamed-" + index + ".pdf"));
+    }
+
+    private static FileMetadata entry(int index, String originalFilename) {
+        return new FileMetadata("file-" + index, originalFilename, "stored-" + index, 1_704_110_400_000L, 1024L * index);
+    }
+}
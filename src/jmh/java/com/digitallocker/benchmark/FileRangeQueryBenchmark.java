@@ -0,0 +1,78 @@
+// Benchmark class: FileRangeQueryBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.dao.FileRangeIndex;
+import com.digitallocker.model.FileMetadata;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares date-range and top-K queries through a FileRangeIndex with a scan and sort of the
+ * locker, for 1K and 1M entries uploaded over one year: the files uploaded in one week, and the
+ * 50 largest files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class FileRangeQueryBenchmark {
+    private static final long START = 1_704_110_400_000L;
+    private static final long WEEK = 7L * 24 * 60 * 60 * 1000;
+    private static final int LIMIT = 1000;
+    private static final int TOP = 50;
+
+    @Param({"1000", "1000000"})
+    public int entryCount;
+
+    private List<FileMetadata> files;
+    private FileRangeIndex index;
+
+    @Setup(Level.Trial)
+    public void createLocker() {
+        Random random = new Random(42);
+        files = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            long uploadDate = START + (long) (random.nextDouble() * 52 * WEEK);
+            files.add(new FileMetadata("file-" + i, "document-" + i + ".pdf", "stored-" + i, uploadDate,
+                    random.nextInt(100 * 1024 * 1024), null));
+        }
+        index = new FileRangeIndex(files);
+    }
+
+    @Benchmark
+    public List<FileMetadata> weekWithIndex() {
+        return index.findByUploadDate(START + 20 * WEEK, START + 21 * WEEK, false, LIMIT);
+    }
+
+    @Benchmark
+    public List<FileMetadata> weekWithScan() {
+        long from = START + 20 * WEEK;
+        long to = START + 21 * WEEK;
+        return files.stream()
+                .filter(file -> file.getUploadDate() >= from && file.getUploadDate() < to)
+                .sorted(Comparator.comparingLong(FileMetadata::getUploadDate))
+                .limit(LIMIT)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<FileMetadata> largestWithIndex() {
+        return index.findLargest(TOP);
+    }
+
+    @Benchmark
+    public List<FileMetadata> largestWithScan() {
+        return files.stream()
+                .sorted(Comparator.comparingLong(FileMetadata::getFileSize).reversed())
+                .limit(TOP)
+                .collect(Collectors.toList());
+    }
+}
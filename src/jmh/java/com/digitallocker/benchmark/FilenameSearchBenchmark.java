@@ -0,0 +1,88 @@
+// Benchmark class: FilenameSearchBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.dao.FilenameIndex;
+import com.digitallocker.model.FileMetadata;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares filename searches through a FilenameIndex with a linear scan of the locker, for 1K and
+ * 1M entries. "report" matches a few percent of the names and fills the limit quickly;
+ * "-424242." matches at most one name, so a scan has to visit every entry. The scan compares
+ * against names lowercased in advance, so it pays only for the scan itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class FilenameSearchBenchmark {
+    private static final String[] WORDS = {"report", "invoice", "budget", "photo", "scan", "draft", "contract",
+            "notes", "summary", "backup", "holiday", "receipt", "statement", "resume", "letter", "minutes",
+            "plan", "slides", "design", "export", "archive", "tax", "payslip", "policy", "manual"};
+    private static final String[] EXTENSIONS = {".pdf", ".docx", ".jpg", ".png", ".xlsx", ".txt", ".zip"};
+    private static final int LIMIT = 100;
+
+    @Param({"1000", "1000000"})
+    public int entryCount;
+
+    @Param({"report", "-424242."})
+    public String query;
+
+    private List<FileMetadata> files;
+    private List<String> lowercaseNames;
+    private FilenameIndex index;
+
+    @Setup(Level.Trial)
+    public void createLocker() {
+        Random random = new Random(42);
+        files = new ArrayList<>(entryCount);
+        lowercaseNames = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + "-" + WORDS[random.nextInt(WORDS.length)].toUpperCase(Locale.ROOT)
+                    + "-" + i + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            files.add(new FileMetadata("file-" + i, name, "stored-" + i, 1_704_110_400_000L, 1024, null));
+            lowercaseNames.add(name.toLowerCase(Locale.ROOT));
+        }
+        index = new FilenameIndex(files);
+    }
+
+    @Benchmark
+    public List<FileMetadata> containingWithIndex() {
+        return index.findContaining(query, LIMIT);
+    }
+
+    @Benchmark
+    public List<FileMetadata> containingWithScan() {
+        List<FileMetadata> matches = new ArrayList<>();
+        for (int i = 0; i < lowercaseNames.size() && matches.size() < LIMIT; i++) {
+            if (lowercaseNames.get(i).contains(query)) {
+                matches.add(files.get(i));
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public List<FileMetadata> prefixWithIndex() {
+        return index.findByPrefix(query, LIMIT);
+    }
+
+    @Benchmark
+    public List<FileMetadata> prefixWithScan() {
+        List<FileMetadata> matches = new ArrayList<>();
+        for (int i = 0; i < lowercaseNames.size() && matches.size() < LIMIT; i++) {
+            if (lowercaseNames.get(i).startsWith(query)) {
+                matches.add(files.get(i));
+            }
+        }
+        return matches;
+    }
+}
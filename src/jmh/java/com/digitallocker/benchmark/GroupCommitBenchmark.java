@@ -0,0 +1,78 @@
+// Benchmark class: GroupCommitBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.dao.DurabilityPolicy;
+import com.digitallocker.dao.GroupCommitWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares appending records from 16 threads through a GroupCommitWriter with the previous
+ * approach of opening, writing and closing the file once per record under a lock, for each
+ * DurabilityPolicy. The baseline forces each record to disk when the policy syncs each write. The record
+ * is the size of a metadata put record.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GroupCommitBenchmark {
+    private static final String RECORD = "P|0f8e3c1a-6b2d-4f7e-9a51-3c2b1d0e9f87|report-2024.pdf|"
+            + "0f8e3c1a6b2d4f7e9a513c2b1d0e9f87|2024-05-17 10:42:13|1048576";
+
+    @Param({"none", "write", "100ms"})
+    public String durability;
+
+    private Path workDirectory;
+    private Path groupCommitFile;
+    private Path appendFile;
+    private DurabilityPolicy policy;
+    private GroupCommitWriter writer;
+    private final Object appendLock = new Object();
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        workDirectory = Files.createTempDirectory("group-commit-bench");
+        groupCommitFile = workDirectory.resolve("group-commit.log");
+        appendFile = workDirectory.resolve("append.log");
+        policy = DurabilityPolicy.parse(durability);
+        writer = new GroupCommitWriter(groupCommitFile, policy);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        writer.close();
+        BenchmarkFiles.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public void groupCommit() throws IOException {
+        GroupCommitWriter.await(writer.append(RECORD));
+    }
+
+    @Benchmark
+    public void openAppendClose() throws IOException {
+        synchronized (appendLock) {
+            try (BufferedWriter out = new BufferedWriter(new FileWriter(appendFile.toFile(), true))) {
+                out.write(RECORD);
+                out.newLine();
+            }
+            if (policy.syncsEachWrite()) {
+                try (FileChannel channel = FileChannel.open(appendFile, StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+// Benchmark class: ListingBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.dao.DurabilityPolicy;
+import com.digitallocker.dao.FileDao;
+import com.digitallocker.dao.FilePage;
+import com.digitallocker.dao.MetadataConverter;
+import com.digitallocker.model.FileMetadata;
+import com.digitallocker.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time to the first page of a locker listing, for 1K and 1M entries stored as a
+ * binary snapshot: through a paged listing, and by reading the whole locker into a list as
+ * getFilesMetadata does on a cache miss. streamAll reads the whole locker through the stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ListingBenchmark {
+    private static final int PAGE_SIZE = 20;
+    private static final int BATCH_SIZE = 10_000;
+
+    @Param({"1000", "1000000"})
+    public int entryCount;
+
+    private final User user = new User("bench", "unused");
+    private Path dataDirectory;
+    private FileDao fileDao;
+
+    @Setup(Level.Trial)
+    public void createLocker() throws IOException {
+        dataDirectory = Files.createTempDirectory("listing-bench");
+        fileDao = new FileDao(dataDirectory.toString());
+        List<FileMetadata> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < entryCount; i++) {
+            batch.add(new FileMetadata("file-" + i, "document-" + i + ".pdf", "stored-" + i,
+                    1_704_110_400_000L + i, 1024L * i));
+            if (batch.size() == BATCH_SIZE || i == entryCount - 1) {
+                fileDao.saveFilesMetadata(user, batch);
+                batch.clear();
+            }
+        }
+        MetadataConverter.convert(dataDirectory, DurabilityPolicy.none());
+        fileDao = new FileDao(dataDirectory.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLocker() throws IOException {
+        BenchmarkFiles.deleteRecursively(dataDirectory);
+    }
+
+    @Benchmark
+    public FilePage firstPageListed() throws IOException {
+        return fileDao.listFilesPage(user, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<FileMetadata> firstPageFromFullList() throws IOException {
+        fileDao.getCache().invalidate(user.getUsername());
+        return fileDao.getFilesMetadata(user).subList(0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public long streamAll() throws IOException {
+        try (Stream<FileMetadata> files = fileDao.streamFiles(user)) {
+            return files.count();
+        }
+    }
+}
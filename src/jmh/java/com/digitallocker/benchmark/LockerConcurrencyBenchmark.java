@@ -0,0 +1,75 @@
+// Benchmark class: LockerConcurrencyBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.model.FileMetadata;
+import com.digitallocker.model.User;
+import com.digitallocker.service.LockerService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures LockerService throughput when several threads work at once.
+ * Each thread uses its own user, so per-user locking should let throughput grow with the thread count.
+ * Run with {@code -t 1}, {@code -t 4}, etc. to compare.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LockerConcurrencyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Locker {
+        final AtomicInteger nextUser = new AtomicInteger();
+        Path workDirectory;
+        Path source;
+        LockerService lockerService;
+
+        @Setup(Level.Trial)
+        public void createLocker() throws IOException {
+            workDirectory = Files.createTempDirectory("concurrency-bench");
+            source = workDirectory.resolve("source.bin");
+            BenchmarkFiles.writeRandomFile(source, 4096);
+            lockerService = new LockerService(workDirectory.resolve("data").toString());
+        }
+
+        @TearDown(Level.Trial)
+        public void deleteLocker() throws IOException {
+            BenchmarkFiles.deleteRecursively(workDirectory);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadUser {
+        User user;
+        String fileId;
+
+        @Setup(Level.Trial)
+        public void registerUser(Locker locker) throws IOException {
+            String username = "user" + locker.nextUser.getAndIncrement();
+            locker.lockerService.registerUser(username, "bench");
+            user = locker.lockerService.authenticateUser(username, "bench");
+            for (int i = 0; i < 100; i++) {
+                fileId = locker.lockerService.uploadFile(user, locker.source).getId();
+            }
+        }
+    }
+
+    @Benchmark
+    public List<FileMetadata> listFiles(Locker locker, ThreadUser threadUser) throws IOException {
+        return locker.lockerService.listFiles(threadUser.user);
+    }
+
+    @Benchmark
+    public FileMetadata getFile(Locker locker, ThreadUser threadUser) throws IOException {
+        return locker.lockerService.getFile(threadUser.user, threadUser.fileId);
+    }
+}
@@ -0,0 +1,82 @@
+// Benchmark class: LockerServiceBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.model.FileMetadata;
+import com.digitallocker.model.User;
+import com.digitallocker.service.LockerService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end-to-end upload and download throughput by file size.
+ * Each upload stamps a counter into the first bytes of the source, so it stores new content
+ * instead of hitting the deduplication path; uploads are deleted after every iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockerServiceBenchmark {
+
+    @Param({"4096", "1048576", "16777216"})
+    public long fileSize;
+
+    private Path workDirectory;
+    private Path source;
+    private Path downloadDirectory;
+    private LockerService lockerService;
+    private User user;
+    private String downloadFileId;
+    private long uploadCounter;
+
+    @Setup(Level.Trial)
+    public void createLocker() throws IOException {
+        workDirectory = Files.createTempDirectory("locker-bench");
+        source = workDirectory.resolve("source.bin");
+        downloadDirectory = Files.createDirectories(workDirectory.resolve("downloads"));
+        BenchmarkFiles.writeRandomFile(source, fileSize);
+
+        lockerService = new LockerService(workDirectory.resolve("data").toString());
+        lockerService.registerUser("bench", "bench");
+        user = lockerService.authenticateUser("bench", "bench");
+        lockerService.uploadFile(user, source);
+        downloadFileId = lockerService.listFiles(user).get(0).getId();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteUploads() throws IOException {
+        for (FileMetadata file : lockerService.listFiles(user)) {
+            if (!file.getId().equals(downloadFileId)) {
+                lockerService.deleteFile(user, file.getId());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLocker() throws IOException {
+        BenchmarkFiles.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public void uploadFile() throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+            ByteBuffer stamp = ByteBuffer.allocate(Long.BYTES).putLong(0, ++uploadCounter);
+            channel.write(stamp, 0);
+        }
+        lockerService.uploadFile(user, source);
+    }
+
+    @Benchmark
+    public void downloadFile() throws IOException {
+        lockerService.downloadFile(user, downloadFileId, downloadDirectory);
+    }
+}
@@ -0,0 +1,63 @@
+// Benchmark class: PasswordHasherBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.util.PasswordHasher;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures password hashing and verification, which run on every registration and login.
+ * The {@code original} methods reproduce the earlier implementation, which looked up the digest
+ * and built the hex string per byte on every call. Run with {@code -prof gc} to compare allocation per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PasswordHasherBenchmark {
+
+    private final String password = "correct horse battery staple";
+    private String hashedPassword;
+
+    @Setup(Level.Trial)
+    public void hashOnce() {
+        hashedPassword = PasswordHasher.hashPassword(password);
+    }
+
+    @Benchmark
+    public String hashPassword() {
+        return PasswordHasher.hashPassword(password);
+    }
+
+    @Benchmark
+    public boolean verifyPassword() {
+        return PasswordHasher.verifyPassword(password, hashedPassword);
+    }
+
+    @Benchmark
+    public String originalHashPassword() throws NoSuchAlgorithmException {
+        return originalHash(password);
+    }
+
+    @Benchmark
+    public boolean originalVerifyPassword() throws NoSuchAlgorithmException {
+        return originalHash(password).equals(hashedPassword);
+    }
+
+    private static String originalHash(String password) throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] hash = md.digest(password.getBytes());
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : hash) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) hexString.append('0');
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+}
@@ -0,0 +1,95 @@
+// Benchmark class: SmallBlobBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.storage.BlobLayout;
+import com.digitallocker.storage.BlobStore;
+import com.digitallocker.util.CopyEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures storing and reading small blobs with a file per blob (pack threshold 0) and packed into
+ * segments (the default threshold). Each store writes new, unique content of {@code blobSize}
+ * bytes, as an upload of a small file does; read opens a random one of {@code blobCount} blobs
+ * stored beforehand and reads it to the end.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class SmallBlobBenchmark {
+
+    @Param({"0", "65536"})
+    public int packThreshold;
+
+    @Param({"4096"})
+    public int blobSize;
+
+    @Param({"100000"})
+    public int blobCount;
+
+    private Path blobDirectory;
+    private BlobStore blobStore;
+    private String[] names;
+    private byte[] template;
+    private final AtomicLong counter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void storeBlobs() throws IOException {
+        blobDirectory = Files.createTempDirectory("small-blob-bench");
+        blobStore = new BlobStore(blobDirectory, new CopyEngine(), BlobLayout.defaultLayout(), packThreshold);
+        template = new byte[blobSize];
+        new Random(42).nextBytes(template);
+        names = new String[blobCount];
+        for (int i = 0; i < blobCount; i++) {
+            names[i] = store().getName();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBlobs() throws IOException {
+        blobStore.close();
+        BenchmarkFiles.deleteRecursively(blobDirectory);
+    }
+
+    @Benchmark
+    public BlobStore.StoredBlob storeBlob() throws IOException {
+        return store();
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(blobSize);
+        try (FileChannel channel = blobStore.open(names[ThreadLocalRandom.current().nextInt(blobCount)])) {
+            long total = 0;
+            int read;
+            while ((read = channel.read(buffer)) > 0) {
+                total += read;
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                }
+            }
+            return total;
+        }
+    }
+
+    private BlobStore.StoredBlob store() throws IOException {
+        byte[] content = template.clone();
+        ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN).putLong(counter.incrementAndGet()); // Unique content.
+        return blobStore.store(Channels.newChannel(new ByteArrayInputStream(content)));
+    }
+}
@@ -0,0 +1,59 @@
+// Benchmark class: UserDaoBenchmark.java
+package com.digitallocker.benchmark;
+
+import com.digitallocker.dao.UserDao;
+import com.digitallocker.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures user lookups against a users.txt holding 1K, 100K or 1M users.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserDaoBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int userCount;
+
+    private Path dataDirectory;
+    private UserDao userDao;
+
+    @Setup(Level.Trial)
+    public void createUsers() throws IOException {
+        dataDirectory = Files.createTempDirectory("user-bench");
+        try (BufferedWriter writer = Files.newBufferedWriter(dataDirectory.resolve("users.txt"))) {
+            for (int i = 0; i < userCount; i++) {
+                writer.write("user" + i + "|5e884898da28047151d0e56f8dc6292773603d0d6aabbdd62a11ef721d1542d8");
+                writer.newLine();
+            }
+        }
+        userDao = new UserDao(dataDirectory.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteUsers() throws IOException {
+        BenchmarkFiles.deleteRecursively(dataDirectory);
+    }
+
+    @Benchmark
+    public Optional<User> findExistingUser() throws IOException {
+        return userDao.findUserByUsername("user" + ThreadLocalRandom.current().nextInt(userCount));
+    }
+
+    @Benchmark
+    public Optional<User> findMissingUser() throws IOException {
+        return userDao.findUserByUsername("nobody");
+    }
+}
@@ -1,23 +1,46 @@
 // Model class: FileMetadata.java
 package com.digitallocker.model;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
 /**
  * Represents the metadata of a file stored in the digital locker.
  * This information is stored in the user's metadata file, not the actual file content.
  */
 public class FileMetadata {
+    private static final DateTimeFormatter UPLOAD_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private String id; // Unique identifier for the file within the locker
     private String originalFilename; // Original name of the file when uploaded
     private String storedFilename;   // Name of the file as stored on disk (e.g., a timestamp or UUID)
-    private String uploadDate;       // Date and time of upload
+    private long uploadDate;         // Time of upload, in milliseconds since the epoch
     private long fileSize;           // Size of the file in bytes
+    private String storedHash;       // SHA-256 of the content in the blob store, or null for per-user files
+    private String codec;            // Compression codec of the stored content, or null if stored as-is
+    private long storedSize;         // Size of the stored content in bytes, after compression
 
-    public FileMetadata(String id, String originalFilename, String storedFilename, String uploadDate, long fileSize) {
+    public FileMetadata(String id, String originalFilename, String storedFilename, long uploadDate, long fileSize) {
+        this(id, originalFilename, storedFilename, uploadDate, fileSize, null);
+    }
+
+    public FileMetadata(String id, String originalFilename, String storedFilename, long uploadDate, long fileSize, String storedHash) {
+        this(id, originalFilename, storedFilename, uploadDate, fileSize, storedHash, null, fileSize);
+    }
+
+    public FileMetadata(String id, String originalFilename, String storedFilename, long uploadDate, long fileSize,
+                        String storedHash, String codec, long storedSize) {
         this.id = id;
         this.originalFilename = originalFilename;
         this.storedFilename = storedFilename;
         this.uploadDate = uploadDate;
         this.fileSize = fileSize;
+        this.storedHash = storedHash;
+        this.codec = codec;
+        this.storedSize = storedSize;
     }
 
     public String getId() {
@@ -32,25 +55,50 @@ public class FileMetadata {
         return storedFilename;
     }
 
-    public String getUploadDate() {
+    public long getUploadDate() {
         return uploadDate;
     }
 
+    // The upload time as yyyy-MM-dd HH:mm:ss in the system time zone, for display.
+    public String getFormattedUploadDate() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(uploadDate), ZoneId.systemDefault()).format(UPLOAD_DATE_FORMAT);
+    }
+
     public long getFileSize() {
         return fileSize;
     }
 
+    public String getStoredHash() {
+        return storedHash;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public long getStoredSize() {
+        return storedSize;
+    }
+
     // Method to convert FileMetadata object to a string format for file storage.
+    // The stored hash is only written for blob-backed files, and the codec and stored size only for
+    // compressed ones, so older entries keep five or six fields.
     public String toFileString() {
-        return String.join("|", id, originalFilename, storedFilename, uploadDate, String.valueOf(fileSize));
+        return FileMetadataCodec.encode(this, new StringBuilder(96)).toString();
+    }
+
+    // Parses an upload date in the yyyy-MM-dd HH:mm:ss form metadata used to be stored in, taken as
+    // system time zone, into milliseconds since the epoch.
+    public static long parseUploadDate(String formatted) {
+        try {
+            return LocalDateTime.parse(formatted, UPLOAD_DATE_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid upload date: " + formatted, e);
+        }
     }
 
     // Static method to parse a string from file back into a FileMetadata object.
     public static FileMetadata fromFileString(String fileString) {
-        String[] parts = fileString.split("\\|");
-        if (parts.length == 5) {
-            return new FileMetadata(parts[0], parts[1], parts[2], parts[3], Long.parseLong(parts[4]));
-        }
-        throw new IllegalArgumentException("Invalid file metadata string format.");
+        return FileMetadataCodec.decode(fileString);
     }
 }
@@ -0,0 +1,205 @@
+// Model class: FileMetadataBinaryCodec.java
+package com.digitallocker.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoder and decoder for the binary FileMetadata record, version 1:
+ * <pre>
+ * int    record length, not counting this field
+ * byte[] id, {@value #ID_SIZE} bytes of ASCII padded with zeros
+ * long   upload date, epoch milliseconds
+ * long   file size
+ * long   stored size
+ * string original filename
+ * string stored filename
+ * string stored hash, or null
+ * string codec, or null
+ * </pre>
+ * Strings are an int byte count (-1 for null) followed by UTF-8. Every field is read by position,
+ * so no delimiter can appear in a value, and the fixed-width fields are read without parsing.
+ */
+public final class FileMetadataBinaryCodec {
+    public static final int ID_SIZE = 36; // The length of a UUID string.
+
+    private static final int FIXED_SIZE = ID_SIZE + 3 * Long.BYTES;
+
+    private FileMetadataBinaryCodec() {
+    }
+
+    /**
+     * Returns true if the metadata can be encoded: its id is ASCII and at most {@value #ID_SIZE}
+     * characters long.
+     */
+    public static boolean canEncode(FileMetadata metadata) {
+        return isEncodableId(metadata.getId());
+    }
+
+    /**
+     * Returns the number of bytes {@link #encode} writes for the metadata, including the length field.
+     */
+    public static int encodedSize(FileMetadata metadata) {
+        return Integer.BYTES + FIXED_SIZE
+                + stringSize(metadata.getOriginalFilename()) + stringSize(metadata.getStoredFilename())
+                + stringSize(metadata.getStoredHash()) + stringSize(metadata.getCodec());
+    }
+
+    /**
+     * Writes one record at the buffer's position.
+     *
+     * @param metadata The metadata to encode.
+     * @param out The buffer, with at least {@link #encodedSize} bytes remaining.
+     * @throws IllegalArgumentException If the metadata cannot be encoded (see {@link #canEncode}).
+     */
+    public static void encode(FileMetadata metadata, ByteBuffer out) {
+        out.putInt(encodedSize(metadata) - Integer.BYTES);
+        putId(metadata.getId(), out);
+        out.putLong(metadata.getUploadDate());
+        out.putLong(metadata.getFileSize());
+        out.putLong(metadata.getStoredSize());
+        putString(metadata.getOriginalFilename(), out);
+        putString(metadata.getStoredFilename(), out);
+        putString(metadata.getStoredHash(), out);
+        putString(metadata.getCodec(), out);
+    }
+
+    /**
+     * Reads the record at an absolute position, without moving the buffer's position.
+     *
+     * @param in The buffer holding the record.
+     * @param offset The position of the record's length field.
+     * @return The decoded metadata.
+     * @throws IllegalArgumentException If the record is malformed.
+     */
+    public static FileMetadata decode(ByteBuffer in, int offset) {
+        int length = in.getInt(offset);
+        if (length < FIXED_SIZE || offset + Integer.BYTES + length > in.limit()) {
+            throw new IllegalArgumentException("Invalid binary file metadata record at " + offset + ".");
+        }
+        int position = offset + Integer.BYTES;
+        String id = getId(in, position);
+        position += ID_SIZE;
+        long uploadDate = in.getLong(position);
+        long fileSize = in.getLong(position + Long.BYTES);
+        long storedSize = in.getLong(position + 2 * Long.BYTES);
+        position += 3 * Long.BYTES;
+        int end = offset + Integer.BYTES + length;
+        String originalFilename = getString(in, position, end);
+        position = skipString(in, position);
+        String storedFilename = getString(in, position, end);
+        position = skipString(in, position);
+        String storedHash = getString(in, position, end);
+        position = skipString(in, position);
+        String codec = getString(in, position, end);
+        return new FileMetadata(id, originalFilename, storedFilename, uploadDate, fileSize,
+                storedHash, codec, storedSize);
+    }
+
+    /**
+     * Writes an id as a fixed-width field at the buffer's position.
+     *
+     * @throws IllegalArgumentException If the id is not ASCII or is longer than {@value #ID_SIZE} characters.
+     */
+    public static void putId(String id, ByteBuffer out) {
+        if (!isEncodableId(id)) {
+            throw new IllegalArgumentException("File id cannot be stored in binary metadata: " + id);
+        }
+        for (int i = 0; i < ID_SIZE; i++) {
+            out.put(i < id.length() ? (byte) id.charAt(i) : 0);
+        }
+    }
+
+    /**
+     * Compares an id with the fixed-width id field at an absolute position, as String.compareTo
+     * would compare the two ids.
+     */
+    public static int compareId(ByteBuffer in, int position, byte[] paddedId) {
+        for (int i = 0; i < ID_SIZE; i++) {
+            int difference = (in.get(position + i) & 0xFF) - (paddedId[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns an id as the padded bytes of its fixed-width field, or null if it cannot be encoded.
+     */
+    public static byte[] paddedId(String id) {
+        if (!isEncodableId(id)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(ID_SIZE);
+        putId(id, buffer);
+        return buffer.array();
+    }
+
+    private static boolean isEncodableId(String id) {
+        if (id.length() > ID_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getId(ByteBuffer in, int position) {
+        int length = 0;
+        while (length < ID_SIZE && in.get(position + length) != 0) {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        in.get(position, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static int stringSize(String value) {
+        return Integer.BYTES + (value == null ? 0 : utf8Length(value));
+    }
+
+    private static int utf8Length(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                // Rare outside ASCII filenames, so count exactly by encoding.
+                return value.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return value.length();
+    }
+
+    private static void putString(String value, ByteBuffer out) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in, int position, int end) {
+        if (position + Integer.BYTES > end) {
+            throw new IllegalArgumentException("Invalid binary file metadata string at " + position + ".");
+        }
+        int length = in.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        if (position + Integer.BYTES + length > end) {
+            throw new IllegalArgumentException("Invalid binary file metadata string at " + position + ".");
+        }
+        byte[] bytes = new byte[length];
+        in.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int skipString(ByteBuffer in, int position) {
+        return position + Integer.BYTES + Math.max(0, in.getInt(position));
+    }
+}
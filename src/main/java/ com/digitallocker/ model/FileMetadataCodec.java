@@ -0,0 +1,234 @@
+// Model class: FileMetadataCodec.java
+package com.digitallocker.model;
+
+/**
+ * Single-pass encoder and decoder for the pipe-delimited FileMetadata text format:
+ * {@code id|originalFilename|storedFilename|uploadDate|fileSize[|storedHash[|codec|storedSize]]}.
+ * <p>
+ * Decoding scans the characters once for delimiters and parses the size in place, so the only
+ * objects created are the field strings the FileMetadata keeps. Encoding appends into a caller's
+ * StringBuilder, which can be reused across records.
+ * <p>
+ * The upload date is written as milliseconds since the epoch. Records written before that are
+ * recognised by their {@code yyyy-MM-dd HH:mm:ss} date, which is read in the system time zone.
+ * <p>
+ * A {@code |}, backslash, or line break inside a field is written as {@code \|}, {@code \\},
+ * {@code \n} or {@code \r}, so filenames containing them survive a round trip. Records written
+ * before escaping was introduced decode unchanged unless a field holds one of those sequences.
+ */
+public final class FileMetadataCodec {
+    private static final char DELIMITER = '|';
+    private static final char ESCAPE = '\\';
+    private static final int LEGACY_DATE_LENGTH = 19; // yyyy-MM-dd HH:mm:ss
+
+    private FileMetadataCodec() {
+    }
+
+    /**
+     * Decodes a whole character sequence into a FileMetadata object.
+     *
+     * @param text The encoded record.
+     * @return The decoded metadata.
+     * @throws IllegalArgumentException If the record does not have five, six or eight fields, or a
+     *         size or the upload date is not valid.
+     */
+    public static FileMetadata decode(CharSequence text) {
+        return decode(text, 0, text.length());
+    }
+
+    /**
+     * Decodes the characters in {@code [start, end)} into a FileMetadata object.
+     *
+     * @param text The sequence holding the encoded record.
+     * @param start The index of the first character of the record.
+     * @param end The index just past the last character of the record.
+     * @return The decoded metadata.
+     * @throws IllegalArgumentException If the record does not have five, six or eight fields, or a
+     *         size or the upload date is not valid.
+     */
+    public static FileMetadata decode(CharSequence text, int start, int end) {
+        int idEnd = requireDelimiter(text, start, end);
+        int originalEnd = requireDelimiter(text, idEnd + 1, end);
+        int storedEnd = requireDelimiter(text, originalEnd + 1, end);
+        int dateEnd = requireDelimiter(text, storedEnd + 1, end);
+        int sizeEnd = indexOfDelimiter(text, dateEnd + 1, end);
+
+        String storedHash = null;
+        String codec = null;
+        long storedSize = -1;
+        if (sizeEnd < 0) {
+            sizeEnd = end;
+        } else {
+            int hashEnd = indexOfDelimiter(text, sizeEnd + 1, end);
+            if (hashEnd < 0) {
+                hashEnd = end;
+            } else {
+                int codecEnd = requireDelimiter(text, hashEnd + 1, end);
+                if (indexOfDelimiter(text, codecEnd + 1, end) >= 0) {
+                    throw new IllegalArgumentException("Invalid file metadata string format.");
+                }
+                codec = field(text, hashEnd + 1, codecEnd);
+                storedSize = parseLong(text, codecEnd + 1, end);
+            }
+            // A trailing empty stored hash is treated as absent, as the old split-based parser did.
+            if (sizeEnd + 1 < hashEnd) {
+                storedHash = field(text, sizeEnd + 1, hashEnd);
+            }
+        }
+
+        long fileSize = parseLong(text, dateEnd + 1, sizeEnd);
+        return new FileMetadata(
+                field(text, start, idEnd),
+                field(text, idEnd + 1, originalEnd),
+                field(text, originalEnd + 1, storedEnd),
+                parseUploadDate(text, storedEnd + 1, dateEnd),
+                fileSize,
+                storedHash,
+                codec,
+                codec != null ? storedSize : fileSize);
+    }
+
+    /**
+     * Appends the encoded form of a FileMetadata object, without a line separator.
+     *
+     * @param metadata The metadata to encode.
+     * @param out The builder to append to.
+     * @return The same builder, for chaining.
+     */
+    public static StringBuilder encode(FileMetadata metadata, StringBuilder out) {
+        appendEscaped(out, metadata.getId()).append(DELIMITER);
+        appendEscaped(out, metadata.getOriginalFilename()).append(DELIMITER);
+        appendEscaped(out, metadata.getStoredFilename()).append(DELIMITER);
+        out.append(metadata.getUploadDate()).append(DELIMITER)
+                .append(metadata.getFileSize());
+        if (metadata.getStoredHash() != null || metadata.getCodec() != null) {
+            out.append(DELIMITER).append(metadata.getStoredHash() != null ? metadata.getStoredHash() : "");
+        }
+        if (metadata.getCodec() != null) {
+            out.append(DELIMITER).append(metadata.getCodec())
+                    .append(DELIMITER).append(metadata.getStoredSize());
+        }
+        return out;
+    }
+
+    private static StringBuilder appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == DELIMITER || c == ESCAPE || c == '\n' || c == '\r') {
+                // Copy the clean prefix in one go, then escape the rest character by character.
+                out.append(value, 0, i);
+                for (int j = i; j < value.length(); j++) {
+                    c = value.charAt(j);
+                    if (c == DELIMITER || c == ESCAPE) {
+                        out.append(ESCAPE).append(c);
+                    } else if (c == '\n') {
+                        out.append(ESCAPE).append('n');
+                    } else if (c == '\r') {
+                        out.append(ESCAPE).append('r');
+                    } else {
+                        out.append(c);
+                    }
+                }
+                return out;
+            }
+        }
+        return out.append(value);
+    }
+
+    /**
+     * Returns the field in {@code [start, end)}, unescaped if it holds an escape character.
+     */
+    private static String field(CharSequence text, int start, int end) {
+        int escape = indexOf(text, ESCAPE, start, end);
+        if (escape < 0) {
+            return text.subSequence(start, end).toString();
+        }
+        StringBuilder value = new StringBuilder(end - start).append(text, start, escape);
+        for (int i = escape; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ESCAPE && i + 1 < end) {
+                char next = text.charAt(i + 1);
+                if (next == DELIMITER || next == ESCAPE) {
+                    c = next;
+                    i++;
+                } else if (next == 'n') {
+                    c = '\n';
+                    i++;
+                } else if (next == 'r') {
+                    c = '\r';
+                    i++;
+                }
+            }
+            value.append(c);
+        }
+        return value.toString();
+    }
+
+    private static int indexOfDelimiter(CharSequence text, int from, int end) {
+        int index = indexOf(text, DELIMITER, from, end);
+        // A delimiter after an odd number of escape characters is part of the field.
+        while (index > from && text.charAt(index - 1) == ESCAPE) {
+            int escapes = 1;
+            while (index - escapes - 1 >= from && text.charAt(index - escapes - 1) == ESCAPE) {
+                escapes++;
+            }
+            if (escapes % 2 == 0) {
+                break;
+            }
+            index = indexOf(text, DELIMITER, index + 1, end);
+        }
+        return index;
+    }
+
+    private static int indexOf(CharSequence text, char c, int from, int end) {
+        if (text instanceof String) {
+            // String.indexOf is intrinsified and much faster than a charAt loop.
+            int index = ((String) text).indexOf(c, from);
+            return index < end ? index : -1;
+        }
+        for (int i = from; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int requireDelimiter(CharSequence text, int from, int end) {
+        int index = indexOfDelimiter(text, from, end);
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid file metadata string format.");
+        }
+        return index;
+    }
+
+    private static long parseUploadDate(CharSequence text, int start, int end) {
+        if (end - start == LEGACY_DATE_LENGTH && text.charAt(start + 4) == '-') {
+            return FileMetadata.parseUploadDate(text.subSequence(start, end).toString());
+        }
+        return parseLong(text, start, end);
+    }
+
+    private static long parseLong(CharSequence text, int start, int end) {
+        if (start == end) {
+            throw new NumberFormatException("Empty number field.");
+        }
+        boolean negative = text.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("Invalid number field.");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number field.");
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Number field out of range.");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+}
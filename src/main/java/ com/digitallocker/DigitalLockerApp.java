@@ -1,21 +1,40 @@
 // Main application class: DigitalLockerApp.java
 package com.digitallocker;
 
+import com.digitallocker.dao.DurabilityPolicy;
+import com.digitallocker.dao.FilePage;
+import com.digitallocker.dao.MetadataConverter;
+import com.digitallocker.dao.MetadataRecovery;
+import com.digitallocker.dao.UserDao;
 import com.digitallocker.model.FileMetadata;
 import com.digitallocker.model.User;
+import com.digitallocker.server.LockerHttpServer;
 import com.digitallocker.service.LockerService;
+import com.digitallocker.service.PasswordService;
+import com.digitallocker.storage.BlobLayout;
+import com.digitallocker.storage.CompressionPolicy;
+import com.digitallocker.storage.KeyManager;
+import com.digitallocker.util.CopyEngine;
 import com.digitallocker.util.PasswordHasher;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Base64;
 import java.util.List;
 import java.util.Scanner;
 
 /**
  * Main application class for the Digital Locker System.
  * Provides a console-based user interface for interacting with the locker.
+ * Started with {@code --server [--port N]}, it serves the locker over HTTP instead.
+ * {@code --compression-level N} (0-9) stores compressible uploads deflated at that level,
+ * {@code --encrypt} encrypts new uploads at rest, and {@code --durability none|write|<N>ms}
+ * sets when metadata writes are fsynced. {@code --convert-metadata} converts every locker's
+ * metadata to the binary format and exits. {@code --blob-fanout flat|N} (0-3, default 2) sets how
+ * many levels of bucket directories stored content is spread over, and {@code --migrate-blobs}
+ * moves content stored under an older layout in the background while the locker runs.
  */
 public class DigitalLockerApp {
 
@@ -27,10 +46,92 @@ public class DigitalLockerApp {
     // This will contain user credentials and subdirectories for user files.
     private static final String DATA_DIR = "data";
 
+    // Directory under the data directory holding the wrapped data keys, and the master key variable.
+    private static final String KEY_DIR = ".keys";
+    private static final String MASTER_KEY_ENV = "LOCKER_MASTER_KEY";
+
+    // Default port for the HTTP server mode.
+    private static final int DEFAULT_PORT = 8080;
+
+    // Maximum number of files a console search prints.
+    private static final int SEARCH_RESULT_LIMIT = 100;
+
+    // Number of files the console lists before asking whether to show more.
+    private static final int LIST_PAGE_SIZE = 20;
+
     public static void main(String[] args) {
+        // Uploads are stored as-is unless a compression level is given with --compression-level N.
+        CompressionPolicy compressionPolicy = CompressionPolicy.disabled();
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--compression-level")) {
+                try {
+                    compressionPolicy = new CompressionPolicy(Integer.parseInt(args[i + 1]));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid compression level: " + args[i + 1]);
+                    return;
+                }
+            }
+        }
+
+        // Metadata writes are left to the OS to flush unless --durability says otherwise.
+        DurabilityPolicy durability = DurabilityPolicy.none();
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--durability")) {
+                try {
+                    durability = DurabilityPolicy.parse(args[i + 1]);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid durability policy: " + args[i + 1] + " (use none, write or <N>ms)");
+                    return;
+                }
+            }
+        }
+
+        // Stored content is spread over two levels of bucket directories unless --blob-fanout says otherwise.
+        BlobLayout blobLayout = BlobLayout.defaultLayout();
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--blob-fanout")) {
+                try {
+                    blobLayout = BlobLayout.parse(args[i + 1]);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid blob fan-out: " + args[i + 1] + " (use flat or 0-" + BlobLayout.MAX_LEVELS + ")");
+                    return;
+                }
+            }
+        }
+
+        // With --convert-metadata, convert all lockers to binary metadata snapshots and exit.
+        if (hasArgument(args, "--convert-metadata")) {
+            try {
+                Files.createDirectories(Paths.get(DATA_DIR));
+                MetadataRecovery.recover(Paths.get(DATA_DIR));
+                int converted = MetadataConverter.convert(Paths.get(DATA_DIR), durability);
+                System.out.println("Converted the metadata of " + converted + " locker(s).");
+            } catch (IOException e) {
+                System.err.println("Error converting metadata: " + e.getMessage());
+            }
+            return;
+        }
+
+        // With --encrypt, new uploads are encrypted under per-user keys wrapped by a master key.
+        KeyManager keyManager = null;
+        if (hasArgument(args, "--encrypt")) {
+            try {
+                keyManager = new KeyManager(Paths.get(DATA_DIR, KEY_DIR), loadMasterKey());
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error loading encryption keys: " + e.getMessage());
+                return;
+            }
+        }
+
         // Initialize the LockerService with the data directory.
         // This ensures all file operations are relative to this base directory.
-        lockerService = new LockerService(DATA_DIR);
+        lockerService = new LockerService(DATA_DIR, new CopyEngine(), new PasswordService(), compressionPolicy, keyManager,
+                durability, blobLayout);
+
+        // With --migrate-blobs, move content stored under an older layout while the locker is in use.
+        if (hasArgument(args, "--migrate-blobs")) {
+            startBlobMigration(blobLayout);
+        }
 
         // Ensure the base data directory exists.
         // This is crucial for the application to store its data correctly.
@@ -41,6 +142,12 @@ public class DigitalLockerApp {
             return; // Exit if the data directory cannot be created.
         }
 
+        // In server mode, serve HTTP requests instead of running the console menu.
+        if (hasArgument(args, "--server")) {
+            startServer(args);
+            return;
+        }
+
         // Display the main menu and handle user interactions.
         while (true) {
             if (currentUser == null) {
@@ -51,6 +158,92 @@ public class DigitalLockerApp {
         }
     }
 
+    /**
+     * Starts the HTTP server and leaves it running until the JVM is stopped.
+     *
+     * @param args The command-line arguments, which may contain {@code --port N}.
+     */
+    private static void startServer(String[] args) {
+        int port = DEFAULT_PORT;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--port")) {
+                try {
+                    port = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid port: " + args[i + 1]);
+                    return;
+                }
+            }
+        }
+
+        try {
+            LockerHttpServer server = new LockerHttpServer(lockerService, port);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(1);
+                closeLockerService();
+            }));
+            System.out.println("Digital Locker server listening on port " + server.getPort() + ".");
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the locker service, so queued metadata is written and its files are closed.
+     */
+    private static void closeLockerService() {
+        try {
+            lockerService.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the locker: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves stored content into the configured blob layout on a background thread, reporting
+     * the outcome when it finishes.
+     */
+    private static void startBlobMigration(BlobLayout blobLayout) {
+        if (lockerService.isBlobLayoutMigrated()) {
+            System.out.println("Stored files already use the " + blobLayout + " layout.");
+            return;
+        }
+        Thread migration = new Thread(() -> {
+            try {
+                int moved = lockerService.migrateBlobLayout();
+                System.out.println("Moved " + moved + " stored file(s) to the " + blobLayout + " layout.");
+            } catch (IOException e) {
+                System.err.println("Error migrating stored files: " + e.getMessage());
+            }
+        }, "blob-migration");
+        migration.setDaemon(true);
+        migration.start();
+        System.out.println("Moving stored files to the " + blobLayout + " layout in the background.");
+    }
+
+    /**
+     * Reads the master key from the {@code LOCKER_MASTER_KEY} environment variable (base64), or
+     * from {@code data/.keys/master.key}, which is created on first use. The file is only as safe
+     * as the data directory itself, so the environment variable is preferred in production.
+     */
+    private static byte[] loadMasterKey() throws IOException {
+        String encoded = System.getenv(MASTER_KEY_ENV);
+        if (encoded != null && !encoded.isBlank()) {
+            return Base64.getDecoder().decode(encoded.trim());
+        }
+        return KeyManager.loadOrCreateMasterKey(Paths.get(DATA_DIR, KEY_DIR, "master.key"));
+    }
+
+    private static boolean hasArgument(String[] args, String argument) {
+        for (String arg : args) {
+            if (arg.equals(argument)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Displays the login and registration menu for unauthenticated users.
      * Allows users to log in or create a new account.
@@ -74,6 +267,7 @@ public class DigitalLockerApp {
             case 3:
                 System.out.println("Exiting Digital Locker. Goodbye!");
                 scanner.close();
+                closeLockerService();
                 System.exit(0);
                 break;
             default:
@@ -120,6 +314,10 @@ public class DigitalLockerApp {
             System.out.println("Username and password cannot be empty.");
             return;
         }
+        if (!UserDao.isValidUsername(username)) {
+            System.out.println("Username cannot start with '.', contain |, :, / or \\, or be a reserved file name.");
+            return;
+        }
 
         try {
             // Attempt to register the new user.
@@ -144,7 +342,8 @@ public class DigitalLockerApp {
         System.out.println("1. Upload File");
         System.out.println("2. Download File");
         System.out.println("3. List Files");
-        System.out.println("4. Logout");
+        System.out.println("4. Search Files");
+        System.out.println("5. Logout");
         System.out.print("Enter your choice: ");
 
         int choice = getIntegerInput();
@@ -160,6 +359,9 @@ public class DigitalLockerApp {
                 listFiles();
                 break;
             case 4:
+                searchFiles();
+                break;
+            case 5:
                 currentUser = null; // Log out the current user.
                 System.out.println("Logged out successfully.");
                 break;
@@ -225,28 +427,76 @@ public class DigitalLockerApp {
     }
 
     /**
-     * Displays a list of files stored in the current user's locker.
+     * Displays the files stored in the current user's locker, a page at a time.
      */
     private static void listFiles() {
         try {
-            // Retrieve the list of files for the current user.
-            List<FileMetadata> files = lockerService.listFiles(currentUser);
-            if (files.isEmpty()) {
+            // Retrieve the first page of files for the current user.
+            FilePage page = lockerService.listFilesPage(currentUser, null, LIST_PAGE_SIZE);
+            if (page.getFiles().isEmpty()) {
                 System.out.println("Your locker is empty. No files to display.");
-            } else {
-                System.out.println("\n--- Your Stored Files ---");
-                System.out.printf("%-5s %-30s %-20s %-15s%n", "ID", "Original Filename", "Upload Date", "Size (bytes)");
-                System.out.println("-------------------------------------------------------------------------");
-                for (FileMetadata file : files) {
-                    System.out.printf("%-5s %-30s %-20s %-15d%n",
-                            file.getId(), file.getOriginalFilename(), file.getUploadDate(), file.getFileSize());
+                return;
+            }
+            printFiles("Your Stored Files", page.getFiles());
+            while (page.getNextCursor() != null) {
+                System.out.print("Press Enter to see more files, or type q to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
                 }
-                System.out.println("-------------------------------------------------------------------------");
+                page = lockerService.listFilesPage(currentUser, page.getNextCursor(), LIST_PAGE_SIZE);
+                printFiles("More Files", page.getFiles());
             }
         } catch (IOException e) {
             System.err.println("Error listing files: " + e.getMessage());
             System.out.println("Unable to retrieve file list at this time.");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage()); // The listing cursor expired.
+        }
+    }
+
+    /**
+     * Searches the current user's locker by filename.
+     * A query ending in '*' matches filenames that start with the rest of it; any other query
+     * matches filenames that contain it.
+     */
+    private static void searchFiles() {
+        System.out.print("Enter part of a filename (end with * to match the start of the name): ");
+        String query = scanner.nextLine().trim();
+        boolean prefixOnly = query.endsWith("*");
+        if (prefixOnly) {
+            query = query.substring(0, query.length() - 1);
+        }
+        try {
+            List<FileMetadata> files = lockerService.searchFiles(currentUser, query, prefixOnly, SEARCH_RESULT_LIMIT);
+            if (files.isEmpty()) {
+                System.out.println("No files match your search.");
+            } else {
+                printFiles("Matching Files", files);
+                if (files.size() == SEARCH_RESULT_LIMIT) {
+                    System.out.println("Showing the first " + SEARCH_RESULT_LIMIT + " matches. Refine your search to see others.");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error searching files: " + e.getMessage());
+            System.out.println("Unable to search your files at this time.");
+        }
+    }
+
+    /**
+     * Prints files as a table of id, original filename, upload date and size.
+     *
+     * @param title The heading printed above the table.
+     * @param files The files to print.
+     */
+    private static void printFiles(String title, List<FileMetadata> files) {
+        System.out.println("\n--- " + title + " ---");
+        System.out.printf("%-5s %-30s %-20s %-15s%n", "ID", "Original Filename", "Upload Date", "Size (bytes)");
+        System.out.println("-------------------------------------------------------------------------");
+        for (FileMetadata file : files) {
+            System.out.printf("%-5s %-30s %-20s %-15d%n",
+                    file.getId(), file.getOriginalFilename(), file.getFormattedUploadDate(), file.getFileSize());
         }
+        System.out.println("-------------------------------------------------------------------------");
     }
 
     /**
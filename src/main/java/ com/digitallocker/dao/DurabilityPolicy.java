@@ -0,0 +1,111 @@
+// DAO class: DurabilityPolicy.java
+package com.digitallocker.dao;
+
+/**
+ * How hard the metadata files are pushed to disk.
+ * <ul>
+ *   <li>{@link #none()}: writes are left to the operating system, which flushes them when it
+ *       chooses. Fastest; a power loss can lose recent writes, a process crash cannot.</li>
+ *   <li>{@link #perWrite()}: every batch of appends is fsynced before its writes complete, so a
+ *       completed write survives a power loss. Group commit shares the fsync across the batch.</li>
+ *   <li>{@link #interval(long)}: writes complete once written, and a background task fsyncs every
+ *       file written to at most once per interval, so at most that window can be lost.</li>
+ * </ul>
+ * Files that are rewritten whole (compaction, format migration) are always fsynced before they
+ * replace the old file, except under {@link #none()}.
+ */
+public final class DurabilityPolicy {
+    private static final DurabilityPolicy NONE = new DurabilityPolicy(Mode.NONE, 0);
+    private static final DurabilityPolicy PER_WRITE = new DurabilityPolicy(Mode.PER_WRITE, 0);
+
+    private enum Mode { NONE, PER_WRITE, INTERVAL }
+
+    private final Mode mode;
+    private final long intervalMillis;
+
+    private DurabilityPolicy(Mode mode, long intervalMillis) {
+        this.mode = mode;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Returns the policy that never fsyncs.
+     */
+    public static DurabilityPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Returns the policy that fsyncs every batch of appends before it completes.
+     */
+    public static DurabilityPolicy perWrite() {
+        return PER_WRITE;
+    }
+
+    /**
+     * Returns the policy that fsyncs written files in the background at most once per interval.
+     *
+     * @param intervalMillis The longest time, in milliseconds, a completed write may stay unsynced.
+     * @return The policy.
+     */
+    public static DurabilityPolicy interval(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Sync interval must be positive.");
+        }
+        return new DurabilityPolicy(Mode.INTERVAL, intervalMillis);
+    }
+
+    /**
+     * Parses a policy as given on the command line: {@code none}, {@code write}, or an interval
+     * such as {@code 100ms}.
+     *
+     * @param value The policy name.
+     * @return The policy.
+     * @throws IllegalArgumentException If the value is not a valid policy.
+     */
+    public static DurabilityPolicy parse(String value) {
+        if (value.equals("none")) {
+            return NONE;
+        }
+        if (value.equals("write")) {
+            return PER_WRITE;
+        }
+        if (value.endsWith("ms")) {
+            return interval(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        throw new IllegalArgumentException("Unknown durability policy: " + value);
+    }
+
+    /**
+     * Returns true if every batch of appends is fsynced before it completes.
+     */
+    public boolean syncsEachWrite() {
+        return mode == Mode.PER_WRITE;
+    }
+
+    /**
+     * Returns true if appends are fsynced in the background on an interval.
+     */
+    public boolean syncsPeriodically() {
+        return mode == Mode.INTERVAL;
+    }
+
+    /**
+     * Returns true if whole-file rewrites are fsynced before they are published.
+     */
+    public boolean syncsRewrites() {
+        return mode != Mode.NONE;
+    }
+
+    /**
+     * Returns the background sync interval in milliseconds, or 0 unless the policy is an interval.
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.INTERVAL ? intervalMillis + "ms" : mode == Mode.NONE ? "none" : "write";
+    }
+}
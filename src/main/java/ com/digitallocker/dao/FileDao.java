@@ -4,97 +4,198 @@ package com.digitallocker.dao;
 import com.digitallocker.model.FileMetadata;
 import com.digitallocker.model.User;
 
-import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object (DAO) for managing FileMetadata persistence for each user.
- * Handles reading from and writing to user-specific metadata files (e.g., `username_files.txt`).
+ * Each user's metadata is kept in an append-only {@link MetadataLog} (`username_files.log`) over
+ * a memory-mapped binary {@link MetadataSnapshot} (`username_files.dat`), so saves, updates and
+ * deletes each append a single record. Appends are group-committed, so concurrent writers share
+ * one write of the log; each write queues its record and updates the {@link MetadataCache} under
+ * the log's lock, then waits for the record to be written outside it. If the write fails, the
+ * user's cached metadata is dropped so it is read back from the log. Logs with too many dead or
+ * unsnapshotted records are compacted into a new snapshot in the background by a
+ * {@link MetadataCompactor}. Filename searches use a {@link FilenameIndex}, and date and size
+ * queries a {@link FileRangeIndex}; both are held with the user's cached metadata, so they follow
+ * every save, update and delete the cache sees.
  */
-public class FileDao {
+public class FileDao implements Closeable {
     private final String dataDirectory; // Base directory for all data.
+    private final MetadataCache cache;  // Parsed metadata per user, updated on every write.
+    private final MetadataCompactor compactor; // Compacts logs into snapshots in the background.
+    private final DurabilityPolicy durability; // When log appends and rewrites are forced to disk.
+    private final ConcurrentMap<String, MetadataLog> logs = new ConcurrentHashMap<>(); // One log per user.
 
     /**
-     * Constructs a FileDao.
+     * Constructs a FileDao with a metadata cache and compactor using the default settings.
      *
      * @param dataDirectory The base directory where user-specific file metadata files are stored.
      */
     public FileDao(String dataDirectory) {
+        this(dataDirectory, new MetadataCache(), new MetadataCompactor());
+    }
+
+    /**
+     * Constructs a FileDao.
+     *
+     * @param dataDirectory The base directory where user-specific file metadata files are stored.
+     * @param cache The cache holding parsed metadata per user.
+     * @param compactor The compactor that rewrites logs in the background.
+     */
+    public FileDao(String dataDirectory, MetadataCache cache, MetadataCompactor compactor) {
+        this(dataDirectory, cache, compactor, DurabilityPolicy.none());
+    }
+
+    /**
+     * Constructs a FileDao.
+     *
+     * @param dataDirectory The base directory where user-specific file metadata files are stored.
+     * @param cache The cache holding parsed metadata per user.
+     * @param compactor The compactor that rewrites logs in the background.
+     * @param durability When metadata appends and rewrites are forced to disk.
+     */
+    public FileDao(String dataDirectory, MetadataCache cache, MetadataCompactor compactor, DurabilityPolicy durability) {
         this.dataDirectory = dataDirectory;
+        this.cache = cache;
+        this.compactor = compactor;
+        this.durability = durability;
+    }
+
+    /**
+     * Returns the metadata cache, mainly so callers can report its hit and miss counters.
+     *
+     * @return The cache used by this DAO.
+     */
+    public MetadataCache getCache() {
+        return cache;
     }
 
     /**
-     * Returns the path to the metadata file for a given user.
-     * The filename is derived from the username to ensure uniqueness.
+     * Returns the metadata log for a given user, creating the handle on first use.
      *
-     * @param user The user whose metadata file path is needed.
-     * @return The Path object for the user's metadata file.
+     * @param user The user whose metadata log is needed.
+     * @return The user's metadata log.
      */
-    private Path getUserMetadataFilePath(User user) {
-        return Paths.get(dataDirectory, user.getUsername() + "_files.txt");
+    private MetadataLog getUserMetadataLog(User user) {
+        return logs.computeIfAbsent(user.getUsername(), username -> new MetadataLog(dataDirectory, username, durability));
     }
 
     /**
      * Retrieves all file metadata for a specific user.
      *
      * @param user The user for whom to retrieve file metadata.
-     * @return A list of FileMetadata objects. Returns an empty list if no files or file doesn't exist.
+     * @return An unmodifiable list of FileMetadata objects. Returns an empty list if no files or file doesn't exist.
      * @throws IOException If an I/O error occurs while reading the file.
      */
     public List<FileMetadata> getFilesMetadata(User user) throws IOException {
-        Path userMetadataFile = getUserMetadataFilePath(user);
-        List<FileMetadata> files = new ArrayList<>();
-
-        // If the metadata file doesn't exist, return an empty list.
-        if (!Files.exists(userMetadataFile)) {
+        Optional<List<FileMetadata>> cached = cache.getFiles(user.getUsername());
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        MetadataLog log = getUserMetadataLog(user);
+        synchronized (log) {
+            List<FileMetadata> files = Collections.unmodifiableList(log.replay());
+            cache.putFiles(user.getUsername(), files);
             return files;
         }
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(userMetadataFile.toFile()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    // Parse each line into a FileMetadata object.
-                    files.add(FileMetadata.fromFileString(line));
-                } catch (IllegalArgumentException e) {
-                    System.err.println("Warning: Corrupted file metadata line for user " + user.getUsername() + ": " + line + " - " + e.getMessage());
-                }
-            }
-        }
-        return files;
+    /**
+     * Returns one page of a user's files, read from the user's metadata files rather than the cache,
+     * so a page costs the same however large the locker is.
+     *
+     * @param user The user whose files to list.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @param pageSize The maximum number of files on the page.
+     * @return The page, in upload order.
+     * @throws IOException If an I/O error occurs while reading the metadata.
+     * @throws IllegalArgumentException If the cursor is malformed or has expired.
+     */
+    public FilePage listFilesPage(User user, String cursor, int pageSize) throws IOException {
+        return getUserMetadataLog(user).openListing().page(cursor, pageSize);
+    }
+
+    /**
+     * Streams a user's files in upload order, decoding each as the stream reaches it, so the
+     * locker is never held in memory at once. The stream lists the locker as it was when this
+     * method was called.
+     *
+     * @param user The user whose files to list.
+     * @return A sequential stream of the user's files; a corrupted record fails it with an UncheckedIOException.
+     * @throws IOException If an I/O error occurs while opening the metadata.
+     */
+    public Stream<FileMetadata> streamFiles(User user) throws IOException {
+        return getUserMetadataLog(user).openListing().stream();
     }
 
     /**
-     * Saves new file metadata for a user. Appends the metadata to the user's file.
-     * Ensures the metadata file exists.
+     * Saves new file metadata for a user. Appends a put record to the user's log.
      *
      * @param user The user for whom to save the file metadata.
      * @param fileMetadata The FileMetadata object to save.
      * @throws IOException If an I/O error occurs while writing to the file.
      */
     public void saveFileMetadata(User user, FileMetadata fileMetadata) throws IOException {
-        Path userMetadataFile = getUserMetadataFilePath(user);
+        GroupCommitWriter.await(saveFileMetadataAsync(user, fileMetadata));
+    }
 
-        // Ensure the metadata file exists.
-        if (!Files.exists(userMetadataFile)) {
-            Files.createFile(userMetadataFile);
+    /**
+     * Queues new file metadata for a user and returns without waiting for it to be written.
+     * The metadata is visible to reads of this DAO at once.
+     *
+     * @param user The user for whom to save the file metadata.
+     * @param fileMetadata The FileMetadata object to save.
+     * @return A future that completes once the record is written to the user's log.
+     * @throws IOException If the user's log cannot be prepared for appending.
+     */
+    public CompletableFuture<Void> saveFileMetadataAsync(User user, FileMetadata fileMetadata) throws IOException {
+        MetadataLog log = getUserMetadataLog(user);
+        CompletableFuture<Void> durable;
+        synchronized (log) {
+            durable = log.appendPut(fileMetadata, true);
+            cache.put(user.getUsername(), fileMetadata);
         }
+        compactor.maybeCompact(log);
+        return invalidateOnFailure(user, durable);
+    }
 
-        // Append the new file metadata to the user's metadata file.
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(userMetadataFile.toFile(), true))) {
-            writer.write(fileMetadata.toFileString());
-            writer.newLine();
+    /**
+     * Saves metadata for several new files of one user with a single append to the user's log.
+     *
+     * @param user The user for whom to save the file metadata.
+     * @param files The FileMetadata objects to save, in upload order.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public void saveFilesMetadata(User user, Collection<FileMetadata> files) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+        MetadataLog log = getUserMetadataLog(user);
+        CompletableFuture<Void> durable;
+        synchronized (log) {
+            durable = log.appendPuts(files);
+            for (FileMetadata file : files) {
+                cache.put(user.getUsername(), file);
+            }
         }
+        GroupCommitWriter.await(invalidateOnFailure(user, durable));
+        compactor.maybeCompact(log);
     }
 
     /**
      * Finds a specific file's metadata by its ID for a given user.
+     * If the user's metadata is not cached, the id is looked up in the log and the snapshot's
+     * index without loading the rest of the locker.
      *
      * @param user The user who owns the file.
      * @param fileId The unique ID of the file to find.
@@ -102,40 +203,138 @@ public class FileDao {
      * @throws IOException If an I/O error occurs while reading the file.
      */
     public Optional<FileMetadata> findFileById(User user, String fileId) throws IOException {
-        return getFilesMetadata(user).stream()
-                .filter(file -> file.getId().equals(fileId))
-                .findFirst();
+        MetadataCache.Lookup cached = cache.findFile(user.getUsername(), fileId);
+        if (cached.isCached()) {
+            return cached.getFile();
+        }
+        return getUserMetadataLog(user).find(fileId);
+    }
+
+    /**
+     * Finds a user's files whose original filename starts with the given text, ignoring case.
+     * The user's filename index is built on the first search.
+     *
+     * @param user The user whose files to search.
+     * @param prefix The start of the filename.
+     * @param limit The maximum number of files to return.
+     * @return The matching files, ordered by filename.
+     * @throws IOException If the user's metadata cannot be read.
+     */
+    public List<FileMetadata> findFilesByNamePrefix(User user, String prefix, int limit) throws IOException {
+        return getIndex(user, FilenameIndex.class, FilenameIndex::new).findByPrefix(prefix, limit);
+    }
+
+    /**
+     * Finds a user's files whose original filename contains the given text, ignoring case.
+     * The user's filename index is built on the first search.
+     *
+     * @param user The user whose files to search.
+     * @param text The text to look for.
+     * @param limit The maximum number of files to return.
+     * @return The matching files, in upload order.
+     * @throws IOException If the user's metadata cannot be read.
+     */
+    public List<FileMetadata> findFilesByNameContaining(User user, String text, int limit) throws IOException {
+        return getIndex(user, FilenameIndex.class, FilenameIndex::new).findContaining(text, limit);
+    }
+
+    /**
+     * Finds a user's files uploaded in {@code [from, to)}, ordered by upload date.
+     * The user's date and size index is built on the first such query.
+     *
+     * @param user The user whose files to query.
+     * @param from The earliest upload time, in epoch milliseconds, inclusive.
+     * @param to The latest upload time, in epoch milliseconds, exclusive.
+     * @param newestFirst true to return the newest files of the range first.
+     * @param limit The maximum number of files to return.
+     * @return The matching files.
+     * @throws IOException If the user's metadata cannot be read.
+     */
+    public List<FileMetadata> findFilesByUploadDate(User user, long from, long to, boolean newestFirst, int limit)
+            throws IOException {
+        return getIndex(user, FileRangeIndex.class, FileRangeIndex::new).findByUploadDate(from, to, newestFirst, limit);
+    }
+
+    /**
+     * Finds a user's files whose size is in {@code [min, max)}, ordered by size.
+     * The user's date and size index is built on the first such query.
+     *
+     * @param user The user whose files to query.
+     * @param min The smallest size, in bytes, inclusive.
+     * @param max The largest size, in bytes, exclusive.
+     * @param largestFirst true to return the largest files of the range first.
+     * @param limit The maximum number of files to return.
+     * @return The matching files.
+     * @throws IOException If the user's metadata cannot be read.
+     */
+    public List<FileMetadata> findFilesBySize(User user, long min, long max, boolean largestFirst, int limit)
+            throws IOException {
+        return getIndex(user, FileRangeIndex.class, FileRangeIndex::new).findByFileSize(min, max, largestFirst, limit);
     }
 
     /**
-     * Updates a file's metadata for a user by rewriting the entire metadata file.
-     * This method is less efficient for frequent updates but simpler for file-based storage.
+     * Returns a user's most recently uploaded files, newest first.
+     *
+     * @param user The user whose files to query.
+     * @param limit The maximum number of files to return.
+     * @return Up to {@code limit} files.
+     * @throws IOException If the user's metadata cannot be read.
+     */
+    public List<FileMetadata> findNewestFiles(User user, int limit) throws IOException {
+        return getIndex(user, FileRangeIndex.class, FileRangeIndex::new).findNewest(limit);
+    }
+
+    /**
+     * Returns a user's largest files, largest first.
+     *
+     * @param user The user whose files to query.
+     * @param limit The maximum number of files to return.
+     * @return Up to {@code limit} files.
+     * @throws IOException If the user's metadata cannot be read.
+     */
+    public List<FileMetadata> findLargestFiles(User user, int limit) throws IOException {
+        return getIndex(user, FileRangeIndex.class, FileRangeIndex::new).findLargest(limit);
+    }
+
+    /**
+     * Returns one of the user's indexes, building it from the user's metadata if the cache holds none.
+     * If the cache cannot keep the index, it is still used for the query at hand.
+     */
+    private <T extends LockerIndex> T getIndex(User user, Class<T> type, Function<List<FileMetadata>, T> builder)
+            throws IOException {
+        T index = cache.getIndex(user.getUsername(), type);
+        if (index == null) {
+            List<FileMetadata> files = getFilesMetadata(user);
+            index = builder.apply(files);
+            cache.putIndex(user.getUsername(), files, index);
+        }
+        return index;
+    }
+
+    /**
+     * Updates a file's metadata for a user by appending a new version of the record.
+     * Does nothing if the user has no file with the given ID.
      *
      * @param user The user who owns the file.
      * @param updatedMetadata The updated FileMetadata object.
      * @throws IOException If an I/O error occurs while writing to the file.
      */
     public void updateFileMetadata(User user, FileMetadata updatedMetadata) throws IOException {
-        Path userMetadataFile = getUserMetadataFilePath(user);
-        List<FileMetadata> currentFiles = getFilesMetadata(user);
-
-        // Remove the old metadata and add the updated one.
-        List<FileMetadata> updatedList = currentFiles.stream()
-                .map(f -> f.getId().equals(updatedMetadata.getId()) ? updatedMetadata : f)
-                .collect(Collectors.toList());
-
-        // Rewrite the entire file with the updated list.
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(userMetadataFile.toFile()))) {
-            for (FileMetadata file : updatedList) {
-                writer.write(file.toFileString());
-                writer.newLine();
+        MetadataLog log = getUserMetadataLog(user);
+        CompletableFuture<Void> durable;
+        synchronized (log) {
+            if (findFileById(user, updatedMetadata.getId()).isEmpty()) {
+                return;
             }
+            durable = log.appendPut(updatedMetadata, false);
+            cache.put(user.getUsername(), updatedMetadata);
         }
+        GroupCommitWriter.await(invalidateOnFailure(user, durable));
+        compactor.maybeCompact(log);
     }
 
     /**
-     * Deletes a file's metadata for a user.
-     * This involves rewriting the entire metadata file without the deleted entry.
+     * Deletes a file's metadata for a user by appending a tombstone for it.
      *
      * @param user The user who owns the file.
      * @param fileId The ID of the file to delete metadata for.
@@ -143,24 +342,42 @@ public class FileDao {
      * @throws IOException If an I/O error occurs while writing to the file.
      */
     public boolean deleteFileMetadata(User user, String fileId) throws IOException {
-        Path userMetadataFile = getUserMetadataFilePath(user);
-        List<FileMetadata> currentFiles = getFilesMetadata(user);
-
-        long initialSize = currentFiles.size();
-        List<FileMetadata> remainingFiles = currentFiles.stream()
-                .filter(f -> !f.getId().equals(fileId))
-                .collect(Collectors.toList());
-
-        // If the size is different, it means a file was removed, so rewrite the file.
-        if (remainingFiles.size() < initialSize) {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(userMetadataFile.toFile()))) {
-                for (FileMetadata file : remainingFiles) {
-                    writer.write(file.toFileString());
-                    writer.newLine();
-                }
+        MetadataLog log = getUserMetadataLog(user);
+        CompletableFuture<Void> durable;
+        synchronized (log) {
+            if (findFileById(user, fileId).isEmpty()) {
+                return false; // File metadata not found.
             }
-            return true;
+            durable = log.appendDelete(fileId);
+            cache.remove(user.getUsername(), fileId);
         }
-        return false; // File metadata not found.
+        GroupCommitWriter.await(invalidateOnFailure(user, durable));
+        compactor.maybeCompact(log);
+        return true;
+    }
+
+    /**
+     * Stops the compactor once the compactions already queued have run, then writes the queued
+     * records of every log and closes it.
+     *
+     * @throws IOException If a log cannot be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        for (MetadataLog log : logs.values()) {
+            log.close();
+        }
+    }
+
+    /**
+     * Drops the user's cached metadata if the write fails, since the cache already reflects it.
+     */
+    private CompletableFuture<Void> invalidateOnFailure(User user, CompletableFuture<Void> durable) {
+        return durable.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                cache.invalidate(user.getUsername());
+            }
+        });
     }
 }
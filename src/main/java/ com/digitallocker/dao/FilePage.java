@@ -0,0 +1,33 @@
+// DAO class: FilePage.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+
+import java.util.List;
+
+/**
+ * One page of a locker listing, with the cursor that continues it.
+ */
+public final class FilePage {
+    private final List<FileMetadata> files;
+    private final String nextCursor;
+
+    public FilePage(List<FileMetadata> files, String nextCursor) {
+        this.files = files;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Returns the files on this page, in upload order.
+     */
+    public List<FileMetadata> getFiles() {
+        return files;
+    }
+
+    /**
+     * Returns the opaque cursor for the next page, or null if this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
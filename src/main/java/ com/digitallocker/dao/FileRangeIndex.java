@@ -0,0 +1,149 @@
+// DAO class: FileRangeIndex.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Index of one user's locker by upload date and by file size, for range and top-K queries.
+ * <p>
+ * Each order is a concurrent skip list of the entries, sorted by the attribute and then by id, so
+ * a query seeks to the start of its range and reads entries in order until the range or the limit
+ * ends, without a scan or a sort. Changes are serialized, while queries read the skip lists
+ * without locking, so a query that runs alongside an update of a file may miss that file.
+ */
+public class FileRangeIndex implements LockerIndex {
+    private static final Comparator<FileMetadata> BY_UPLOAD_DATE =
+            Comparator.comparingLong(FileMetadata::getUploadDate).thenComparing(FileMetadata::getId);
+    private static final Comparator<FileMetadata> BY_FILE_SIZE =
+            Comparator.comparingLong(FileMetadata::getFileSize).thenComparing(FileMetadata::getId);
+    // Rough per-entry cost of a node in each skip list and in the id map.
+    private static final long ENTRY_BYTES = 160;
+
+    private final NavigableSet<FileMetadata> byUploadDate = new ConcurrentSkipListSet<>(BY_UPLOAD_DATE);
+    private final NavigableSet<FileMetadata> byFileSize = new ConcurrentSkipListSet<>(BY_FILE_SIZE);
+    private final Map<String, FileMetadata> filesById = new HashMap<>(); // Guarded by this.
+
+    /**
+     * Constructs a FileRangeIndex over the given entries.
+     *
+     * @param files The user's file metadata.
+     */
+    public FileRangeIndex(Collection<FileMetadata> files) {
+        for (FileMetadata file : files) {
+            put(file);
+        }
+    }
+
+    @Override
+    public synchronized void put(FileMetadata file) {
+        FileMetadata previous = filesById.put(file.getId(), file);
+        if (previous != null) {
+            byUploadDate.remove(previous);
+            byFileSize.remove(previous);
+        }
+        byUploadDate.add(file);
+        byFileSize.add(file);
+    }
+
+    @Override
+    public synchronized void remove(String fileId) {
+        FileMetadata previous = filesById.remove(fileId);
+        if (previous != null) {
+            byUploadDate.remove(previous);
+            byFileSize.remove(previous);
+        }
+    }
+
+    @Override
+    public long estimateBytes(FileMetadata file) {
+        return ENTRY_BYTES;
+    }
+
+    /**
+     * Finds the entries uploaded in {@code [from, to)}, ordered by upload date.
+     *
+     * @param from The earliest upload time, in epoch milliseconds, inclusive.
+     * @param to The latest upload time, in epoch milliseconds, exclusive.
+     * @param newestFirst true to return the newest entries of the range first.
+     * @param limit The maximum number of entries to return.
+     * @return The matching entries.
+     */
+    public List<FileMetadata> findByUploadDate(long from, long to, boolean newestFirst, int limit) {
+        return range(byUploadDate, probe(from, 0), probe(to, 0), newestFirst, limit);
+    }
+
+    /**
+     * Finds the entries whose size is in {@code [min, max)}, ordered by size.
+     *
+     * @param min The smallest size, in bytes, inclusive.
+     * @param max The largest size, in bytes, exclusive.
+     * @param largestFirst true to return the largest entries of the range first.
+     * @param limit The maximum number of entries to return.
+     * @return The matching entries.
+     */
+    public List<FileMetadata> findByFileSize(long min, long max, boolean largestFirst, int limit) {
+        return range(byFileSize, probe(0, min), probe(0, max), largestFirst, limit);
+    }
+
+    /**
+     * Returns the most recently uploaded entries, newest first.
+     *
+     * @param limit The maximum number of entries to return.
+     * @return Up to {@code limit} entries.
+     */
+    public List<FileMetadata> findNewest(int limit) {
+        return first(byUploadDate.descendingSet(), limit);
+    }
+
+    /**
+     * Returns the largest entries, largest first.
+     *
+     * @param limit The maximum number of entries to return.
+     * @return Up to {@code limit} entries.
+     */
+    public List<FileMetadata> findLargest(int limit) {
+        return first(byFileSize.descendingSet(), limit);
+    }
+
+    private static List<FileMetadata> range(NavigableSet<FileMetadata> set, FileMetadata low, FileMetadata high,
+                                            boolean descending, int limit) {
+        checkLimit(limit);
+        if (set.comparator().compare(low, high) >= 0) {
+            return new ArrayList<>();
+        }
+        // The probes have the empty id, which sorts before every real id with the same value.
+        NavigableSet<FileMetadata> range = set.subSet(low, true, high, false);
+        return first(descending ? range.descendingSet() : range, limit);
+    }
+
+    private static List<FileMetadata> first(NavigableSet<FileMetadata> set, int limit) {
+        checkLimit(limit);
+        List<FileMetadata> files = new ArrayList<>(Math.min(limit, 64));
+        for (FileMetadata file : set) {
+            if (files.size() == limit) {
+                break;
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static FileMetadata probe(long uploadDate, long fileSize) {
+        return new FileMetadata("", "", "", uploadDate, fileSize);
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Query limit must be positive.");
+        }
+    }
+}
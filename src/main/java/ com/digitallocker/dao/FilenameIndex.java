@@ -0,0 +1,273 @@
+// DAO class: FilenameIndex.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Case-insensitive search index over the original filenames of one user's locker.
+ * <p>
+ * Each entry occupies a slot, numbered in the order entries were added. Prefix queries walk a
+ * sorted map from lowercased filename to slots. Substring queries look up every trigram (three
+ * consecutive characters) of the query in an inverted index from trigram to the ascending list of
+ * slots whose filename contains it, intersect the lists starting from the shortest, and confirm
+ * each candidate against its filename, since containing every trigram of the query does not make
+ * a name contain the query itself. Queries shorter than a trigram scan the filenames instead.
+ * <p>
+ * The index is kept up to date with {@link #put} and {@link #remove}. A removed entry's slot is
+ * left in the trigram lists and skipped by queries; once dead slots outnumber live ones, the index
+ * is rebuilt from the live entries. All methods are thread-safe.
+ */
+public class FilenameIndex implements LockerIndex {
+    // Below this many slots, dead ones are never worth a rebuild.
+    private static final int MIN_REBUILD_SLOTS = 1024;
+    // Rough per-entry cost of the slot, the name map node and the id map node.
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private FileMetadata[] entries = new FileMetadata[16]; // Indexed by slot; null once removed.
+    private String[] names = new String[16]; // Lowercased filename by slot.
+    private int slotCount;
+    private int liveCount;
+    private final Map<String, Integer> slotsById = new HashMap<>();
+    private final Map<Long, SlotList> slotsByTrigram = new HashMap<>();
+    private final TreeMap<String, SlotList> slotsByName = new TreeMap<>();
+
+    /**
+     * Constructs a FilenameIndex over the given entries.
+     *
+     * @param files The user's file metadata, in upload order.
+     */
+    public FilenameIndex(Collection<FileMetadata> files) {
+        for (FileMetadata file : files) {
+            put(file);
+        }
+    }
+
+    @Override
+    public synchronized void put(FileMetadata file) {
+        String name = normalize(file.getOriginalFilename());
+        Integer existing = slotsById.get(file.getId());
+        if (existing != null) {
+            if (names[existing].equals(name)) {
+                entries[existing] = file; // Same name, so the slot's postings still hold.
+                return;
+            }
+            remove(file.getId());
+        }
+        if (slotCount == entries.length) {
+            entries = Arrays.copyOf(entries, slotCount * 2);
+            names = Arrays.copyOf(names, slotCount * 2);
+        }
+        int slot = slotCount++;
+        entries[slot] = file;
+        names[slot] = name;
+        liveCount++;
+        slotsById.put(file.getId(), slot);
+        slotsByName.computeIfAbsent(name, key -> new SlotList()).add(slot);
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            SlotList slots = slotsByTrigram.computeIfAbsent(trigram(name, i), key -> new SlotList());
+            if (slots.last() != slot) { // A name repeating a trigram is listed once.
+                slots.add(slot);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void remove(String fileId) {
+        Integer slot = slotsById.remove(fileId);
+        if (slot == null) {
+            return;
+        }
+        entries[slot] = null;
+        liveCount--;
+        SlotList sameName = slotsByName.get(names[slot]);
+        sameName.remove(slot);
+        if (sameName.size == 0) {
+            slotsByName.remove(names[slot]);
+        }
+        if (slotCount - liveCount > Math.max(MIN_REBUILD_SLOTS, liveCount)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Finds the entries whose original filename starts with the given text, ignoring case.
+     *
+     * @param prefix The start of the filename.
+     * @param limit The maximum number of entries to return.
+     * @return The matching entries, ordered by filename.
+     */
+    public synchronized List<FileMetadata> findByPrefix(String prefix, int limit) {
+        checkLimit(limit);
+        String key = normalize(prefix);
+        List<FileMetadata> matches = new ArrayList<>();
+        for (Map.Entry<String, SlotList> entry : slotsByName.tailMap(key, true).entrySet()) {
+            if (!entry.getKey().startsWith(key)) {
+                break;
+            }
+            SlotList slots = entry.getValue();
+            for (int i = 0; i < slots.size; i++) {
+                if (matches.size() == limit) {
+                    return matches;
+                }
+                matches.add(entries[slots.slots[i]]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the entries whose original filename contains the given text, ignoring case.
+     *
+     * @param text The text to look for.
+     * @param limit The maximum number of entries to return.
+     * @return The matching entries, in the order they were indexed.
+     */
+    public synchronized List<FileMetadata> findContaining(String text, int limit) {
+        checkLimit(limit);
+        String key = normalize(text);
+        List<FileMetadata> matches = new ArrayList<>();
+        if (key.length() < 3) {
+            for (int slot = 0; slot < slotCount && matches.size() < limit; slot++) {
+                if (entries[slot] != null && names[slot].contains(key)) {
+                    matches.add(entries[slot]);
+                }
+            }
+            return matches;
+        }
+        List<SlotList> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= key.length(); i++) {
+            SlotList slots = slotsByTrigram.get(trigram(key, i));
+            if (slots == null) {
+                return matches; // No filename contains this trigram.
+            }
+            if (!lists.contains(slots)) {
+                lists.add(slots);
+            }
+        }
+        lists.sort(Comparator.comparingInt(slots -> slots.size));
+        SlotList shortest = lists.get(0);
+        int[] cursors = new int[lists.size()];
+        candidates:
+        for (int i = 0; i < shortest.size && matches.size() < limit; i++) {
+            int slot = shortest.slots[i];
+            if (entries[slot] == null) {
+                continue;
+            }
+            for (int j = 1; j < lists.size(); j++) {
+                SlotList other = lists.get(j);
+                cursors[j] = other.seek(slot, cursors[j]);
+                if (cursors[j] == other.size) {
+                    break candidates; // Every later candidate is beyond this list too.
+                }
+                if (other.slots[cursors[j]] != slot) {
+                    continue candidates;
+                }
+            }
+            if (names[slot].contains(key)) {
+                matches.add(entries[slot]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the number of entries in the index.
+     */
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    @Override
+    public long estimateBytes(FileMetadata file) {
+        // The slot, the lowercased name and about one trigram posting per character.
+        return ENTRY_OVERHEAD_BYTES + 6L * file.getOriginalFilename().length();
+    }
+
+    private void rebuild() {
+        FileMetadata[] live = new FileMetadata[liveCount];
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (entries[slot] != null) {
+                live[count++] = entries[slot];
+            }
+        }
+        entries = new FileMetadata[Math.max(16, live.length)];
+        names = new String[entries.length];
+        slotCount = 0;
+        liveCount = 0;
+        slotsById.clear();
+        slotsByTrigram.clear();
+        slotsByName.clear();
+        for (FileMetadata file : live) {
+            put(file);
+        }
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Search limit must be positive.");
+        }
+    }
+
+    private static String normalize(String filename) {
+        return filename.toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(String name, int start) {
+        return ((long) name.charAt(start) << 32) | ((long) name.charAt(start + 1) << 16) | name.charAt(start + 2);
+    }
+
+    /**
+     * A growable, ascending list of slots.
+     */
+    private static class SlotList {
+        int[] slots = new int[2];
+        int size;
+
+        int last() {
+            return size == 0 ? -1 : slots[size - 1];
+        }
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        void remove(int slot) {
+            int index = Arrays.binarySearch(slots, 0, size, slot);
+            if (index >= 0) {
+                System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+                size--;
+            }
+        }
+
+        /**
+         * Returns the index of the first slot at or after {@code from} that is not less than
+         * {@code slot}, or size if there is none. Gallops ahead, then binary-searches.
+         */
+        int seek(int slot, int from) {
+            int step = 1;
+            int low = from;
+            int high = from;
+            while (high < size && slots[high] < slot) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int index = Arrays.binarySearch(slots, low, Math.min(high + 1, size), slot);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
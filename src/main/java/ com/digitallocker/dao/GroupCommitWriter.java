@@ -0,0 +1,268 @@
+// DAO class: GroupCommitWriter.java
+package com.digitallocker.dao;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Appends lines to one file, combining the appends of many threads into a single write.
+ * <p>
+ * {@link #append} queues a record and returns a future at once. A committer task, started on a
+ * shared pool of daemon threads whenever records are queued and none is running, takes everything
+ * queued, writes it with one call to a file channel that stays open between batches, forces it to
+ * disk if the {@link DurabilityPolicy} syncs each write, and then completes the futures of the
+ * whole batch. Records that arrive while a batch is being written or forced go into the next one,
+ * so under load the cost of a write and an fsync is shared by every record in the batch. Under an
+ * interval policy, the first batch after a sync schedules the next one on a shared timer thread.
+ * Records are written in the order they were queued, in UTF-8.
+ * <p>
+ * If a batch cannot be written, the file is truncated back to where the batch started, so no
+ * partial line is left for the next batch to follow, and every future of the batch fails.
+ */
+public class GroupCommitWriter {
+    private static final Executor COMMITTERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "group-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ScheduledExecutorService SYNC_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "group-commit-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int MAX_BATCH_RECORDS = 4096; // Bounds the memory one batch holds.
+
+    private final Path file;
+    private final DurabilityPolicy durability;
+    private final ConcurrentLinkedQueue<PendingRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean committerScheduled = new AtomicBoolean();
+    private final AtomicBoolean syncScheduled = new AtomicBoolean(); // Set while an interval sync is pending.
+    private final ReentrantLock writeLock = new ReentrantLock(); // Held while a batch is written.
+    private final StringBuilder batchBuffer = new StringBuilder(); // Guarded by writeLock.
+    private FileChannel channel; // Opened on the first batch; guarded by writeLock.
+
+    /**
+     * Constructs a GroupCommitWriter. The file is created on the first write if it does not exist.
+     *
+     * @param file The file to append to.
+     * @param durability When written batches are forced to disk.
+     */
+    public GroupCommitWriter(Path file, DurabilityPolicy durability) {
+        this.file = file;
+        this.durability = durability;
+    }
+
+    /**
+     * Queues one line to be appended. A line separator is added after it.
+     *
+     * @param record The line, which is copied before this method returns.
+     * @return A future that completes once the line is written (and forced, if the policy syncs
+     *         each write), or fails with the IOException that stopped it.
+     */
+    public CompletableFuture<Void> append(CharSequence record) {
+        PendingRecord pending = new PendingRecord(record.toString());
+        queue.add(pending);
+        scheduleCommitter();
+        return pending.durable;
+    }
+
+    /**
+     * Queues several lines to be appended together, in order, in the same batch.
+     *
+     * @param records The lines, which are copied before this method returns.
+     * @return A future that completes once all the lines are written.
+     */
+    public CompletableFuture<Void> appendAll(Collection<? extends CharSequence> records) {
+        StringBuilder lines = new StringBuilder();
+        for (CharSequence record : records) {
+            if (lines.length() > 0) {
+                lines.append(LINE_SEPARATOR);
+            }
+            lines.append(record);
+        }
+        return records.isEmpty() ? CompletableFuture.completedFuture(null) : append(lines);
+    }
+
+    /**
+     * Writes everything queued so far on the calling thread, and returns once it is written.
+     * Used before the file is read directly, so the reader sees every record already appended.
+     *
+     * @throws IOException If the queued records cannot be written.
+     */
+    public void flush() throws IOException {
+        writeLock.lock();
+        try {
+            commitQueued();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes everything queued so far, forces it to disk unless the policy never syncs, and closes
+     * the file. A later append opens it again, so this is also how the file is released before it
+     * is replaced, e.g. by compaction.
+     *
+     * @throws IOException If the queued records cannot be written or the file cannot be closed.
+     */
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            commitQueued();
+            if (channel != null && durability.syncsRewrites()) {
+                channel.force(false);
+            }
+            closeChannel();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for an append to become durable, unwrapping the IOException it failed with.
+     *
+     * @param durable A future returned by {@link #append} or {@link #appendAll}.
+     * @throws IOException If the append failed.
+     */
+    public static void await(CompletableFuture<Void> durable) throws IOException {
+        try {
+            durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a write to complete.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Write failed.", cause);
+        }
+    }
+
+    private void scheduleCommitter() {
+        if (committerScheduled.compareAndSet(false, true)) {
+            COMMITTERS.execute(this::runCommitter);
+        }
+    }
+
+    private void runCommitter() {
+        writeLock.lock();
+        try {
+            commitQueued();
+        } catch (IOException e) {
+            // Already reported to the futures of the failed batch.
+        } finally {
+            writeLock.unlock();
+            committerScheduled.set(false);
+        }
+        // A record queued after the last poll but before the flag was cleared found a committer
+        // already scheduled, so it is picked up here.
+        if (!queue.isEmpty()) {
+            scheduleCommitter();
+        }
+    }
+
+    /**
+     * Writes batches until the queue is empty. Must be called with writeLock held.
+     */
+    private void commitQueued() throws IOException {
+        IOException failure = null;
+        List<PendingRecord> batch = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            batchBuffer.setLength(0);
+            PendingRecord pending;
+            while (batch.size() < MAX_BATCH_RECORDS && (pending = queue.poll()) != null) {
+                batch.add(pending);
+                batchBuffer.append(pending.record).append(LINE_SEPARATOR);
+            }
+            try {
+                writeBatch(StandardCharsets.UTF_8.encode(CharBuffer.wrap(batchBuffer)));
+                batch.forEach(record -> record.durable.complete(null));
+            } catch (IOException e) {
+                batch.forEach(record -> record.durable.completeExceptionally(e));
+                failure = e;
+            }
+            batch.clear();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeBatch(ByteBuffer bytes) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        long start = channel.size();
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            if (durability.syncsEachWrite()) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                closeChannel();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+                channel = null;
+            }
+            throw e;
+        }
+        if (durability.syncsPeriodically() && syncScheduled.compareAndSet(false, true)) {
+            SYNC_TIMER.schedule(this::syncWritten, durability.getIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void syncWritten() {
+        writeLock.lock();
+        try {
+            syncScheduled.set(false); // Batches written from here on schedule the next sync.
+            if (channel != null) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            System.err.println("Error syncing " + file + ": " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            FileChannel closing = channel;
+            channel = null;
+            closing.close();
+        }
+    }
+
+    private static class PendingRecord {
+        final String record;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        PendingRecord(String record) {
+            this.record = record;
+        }
+    }
+}
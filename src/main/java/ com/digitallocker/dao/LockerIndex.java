@@ -0,0 +1,33 @@
+// DAO interface: LockerIndex.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+
+/**
+ * A secondary index over one user's locker, held by the {@link MetadataCache} with the locker's
+ * entries. The cache passes every change to the locker on to its indexes, and evicts them with it.
+ */
+public interface LockerIndex {
+
+    /**
+     * Adds an entry, or replaces the entry with the same id.
+     *
+     * @param file The file metadata to index.
+     */
+    void put(FileMetadata file);
+
+    /**
+     * Removes the entry with the given id. Does nothing if there is none.
+     *
+     * @param fileId The id of the file to remove.
+     */
+    void remove(String fileId);
+
+    /**
+     * Estimates the memory, in bytes, one entry adds to the index; counted against the cache's budget.
+     *
+     * @param file The file metadata.
+     * @return The estimated size of its entry.
+     */
+    long estimateBytes(FileMetadata file);
+}
@@ -0,0 +1,320 @@
+// DAO class: MetadataCache.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded, least-recently-used cache of parsed file metadata, keyed by username.
+ * Each cached locker keeps its entries in upload order together with an id lookup map,
+ * so listing and id lookups avoid re-reading the user's metadata file. A cached locker can also
+ * hold {@link LockerIndex secondary indexes}, each built on first use and kept up to date by
+ * every change to the locker until the locker is evicted.
+ * <p>
+ * The cache is bounded both by the total number of cached entries and by an estimate of
+ * their size in bytes. All methods are thread-safe.
+ */
+public class MetadataCache {
+    public static final long DEFAULT_MAX_ENTRIES = 1_000_000;
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    // Rough per-entry cost of the FileMetadata object, its strings and the map node.
+    private static final long ENTRY_OVERHEAD_BYTES = 160;
+
+    private final long maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedLocker> lockers = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedEntries;
+    private long cachedBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Constructs a MetadataCache with the default entry and byte budgets.
+     */
+    public MetadataCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructs a MetadataCache.
+     *
+     * @param maxEntries The maximum number of metadata entries held across all users.
+     * @param maxBytes The maximum estimated size in bytes of all cached entries.
+     */
+    public MetadataCache(long maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache budgets must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached file list for a user, in upload order.
+     * The list is an unmodifiable snapshot shared between readers until the locker next changes,
+     * so repeated listings do not copy it.
+     *
+     * @param username The owner of the locker.
+     * @return The cached entries, or empty if the user's locker is not cached.
+     */
+    public synchronized Optional<List<FileMetadata>> getFiles(String username) {
+        CachedLocker locker = lockers.get(username);
+        if (locker == null) {
+            missCount++;
+            return Optional.empty();
+        }
+        hitCount++;
+        return Optional.of(locker.snapshot());
+    }
+
+    /**
+     * Looks up a single cached entry by id.
+     *
+     * @param username The owner of the locker.
+     * @param fileId The id of the file.
+     * @return The outcome of the lookup, which says whether the user's locker is cached at all.
+     */
+    public synchronized Lookup findFile(String username, String fileId) {
+        CachedLocker locker = lockers.get(username);
+        if (locker == null) {
+            missCount++;
+            return Lookup.NOT_CACHED;
+        }
+        hitCount++;
+        return new Lookup(true, locker.filesById.get(fileId));
+    }
+
+    /**
+     * Caches the full file list of a user, replacing any previous entry.
+     *
+     * @param username The owner of the locker.
+     * @param files The complete list of the user's file metadata, in upload order.
+     */
+    public synchronized void putFiles(String username, Collection<FileMetadata> files) {
+        invalidate(username);
+        CachedLocker locker = new CachedLocker();
+        for (FileMetadata file : files) {
+            locker.put(file);
+        }
+        lockers.put(username, locker);
+        cachedEntries += locker.filesById.size();
+        cachedBytes += locker.bytes;
+        evictIfNeeded();
+    }
+
+    /**
+     * Adds or replaces a single entry in a cached locker. Does nothing if the locker is not cached,
+     * since the next read will load it from disk anyway.
+     *
+     * @param username The owner of the locker.
+     * @param file The metadata that was just written to disk.
+     */
+    public synchronized void put(String username, FileMetadata file) {
+        CachedLocker locker = lockers.get(username);
+        if (locker == null) {
+            return;
+        }
+        int entriesBefore = locker.filesById.size();
+        long bytesBefore = locker.bytes;
+        locker.put(file);
+        cachedEntries += locker.filesById.size() - entriesBefore;
+        cachedBytes += locker.bytes - bytesBefore;
+        evictIfNeeded();
+    }
+
+    /**
+     * Removes a single entry from a cached locker. Does nothing if the locker is not cached.
+     *
+     * @param username The owner of the locker.
+     * @param fileId The id of the entry that was just deleted on disk.
+     */
+    public synchronized void remove(String username, String fileId) {
+        CachedLocker locker = lockers.get(username);
+        if (locker == null) {
+            return;
+        }
+        FileMetadata removed = locker.filesById.remove(fileId);
+        if (removed != null) {
+            locker.snapshot = null;
+            long bytes = locker.entryBytes(removed);
+            for (LockerIndex index : locker.indexes.values()) {
+                index.remove(fileId);
+            }
+            locker.bytes -= bytes;
+            cachedEntries--;
+            cachedBytes -= bytes;
+        }
+    }
+
+    /**
+     * Returns an index of a cached locker.
+     *
+     * @param username The owner of the locker.
+     * @param type The class of the index.
+     * @return The index, or null if the locker is not cached or has no index of that class.
+     */
+    public synchronized <T extends LockerIndex> T getIndex(String username, Class<T> type) {
+        CachedLocker locker = lockers.get(username);
+        return locker == null ? null : type.cast(locker.indexes.get(type));
+    }
+
+    /**
+     * Attaches an index to a cached locker, so later changes keep it up to date.
+     * The index is dropped instead if the locker changed or was evicted after {@code files}
+     * was read from the cache, since it would then be missing those changes, or if the locker
+     * already has an index of the same class.
+     *
+     * @param username The owner of the locker.
+     * @param files The file list returned by {@link #getFiles} that the index was built from.
+     * @param index The index built from {@code files}.
+     * @return true if the index was attached.
+     */
+    public synchronized boolean putIndex(String username, List<FileMetadata> files, LockerIndex index) {
+        CachedLocker locker = lockers.get(username);
+        if (locker == null || locker.snapshot != files || locker.indexes.containsKey(index.getClass())) {
+            return false;
+        }
+        long bytes = 0;
+        for (FileMetadata file : files) {
+            bytes += index.estimateBytes(file);
+        }
+        locker.indexes.put(index.getClass(), index);
+        locker.bytes += bytes;
+        cachedBytes += bytes;
+        evictIfNeeded();
+        return true;
+    }
+
+    /**
+     * Drops a user's locker from the cache.
+     *
+     * @param username The owner of the locker.
+     */
+    public synchronized void invalidate(String username) {
+        CachedLocker locker = lockers.remove(username);
+        if (locker != null) {
+            cachedEntries -= locker.filesById.size();
+            cachedBytes -= locker.bytes;
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getCachedEntries() {
+        return cachedEntries;
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * Evicts least-recently-used lockers until both budgets are met.
+     * The most recently used locker is always kept, even if it alone exceeds a budget.
+     */
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, CachedLocker>> eldest = lockers.entrySet().iterator();
+        while ((cachedEntries > maxEntries || cachedBytes > maxBytes) && lockers.size() > 1) {
+            CachedLocker locker = eldest.next().getValue();
+            eldest.remove();
+            cachedEntries -= locker.filesById.size();
+            cachedBytes -= locker.bytes;
+            evictionCount++;
+        }
+    }
+
+    static long estimateBytes(FileMetadata file) {
+        long chars = file.getId().length() + file.getOriginalFilename().length()
+                + file.getStoredFilename().length()
+                + (file.getStoredHash() == null ? 0 : file.getStoredHash().length())
+                + (file.getCodec() == null ? 0 : file.getCodec().length());
+        return ENTRY_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    /**
+     * The outcome of looking up one entry with {@link #findFile}.
+     */
+    public static final class Lookup {
+        private static final Lookup NOT_CACHED = new Lookup(false, null);
+
+        private final boolean cached;
+        private final FileMetadata file;
+
+        private Lookup(boolean cached, FileMetadata file) {
+            this.cached = cached;
+            this.file = file;
+        }
+
+        /**
+         * Returns true if the user's locker is cached, so the lookup answered from memory.
+         */
+        public boolean isCached() {
+            return cached;
+        }
+
+        /**
+         * Returns the entry, or empty if the locker is not cached or does not contain the id.
+         */
+        public Optional<FileMetadata> getFile() {
+            return Optional.ofNullable(file);
+        }
+    }
+
+    /**
+     * The cached contents of one user's locker.
+     */
+    private static class CachedLocker {
+        private final LinkedHashMap<String, FileMetadata> filesById = new LinkedHashMap<>();
+        private List<FileMetadata> snapshot; // Unmodifiable copy of the values, or null after a change.
+        private final Map<Class<?>, LockerIndex> indexes = new HashMap<>(2); // Attached by class.
+        private long bytes;
+
+        List<FileMetadata> snapshot() {
+            if (snapshot == null) {
+                snapshot = Collections.unmodifiableList(new ArrayList<>(filesById.values()));
+            }
+            return snapshot;
+        }
+
+        void put(FileMetadata file) {
+            snapshot = null;
+            FileMetadata previous = filesById.put(file.getId(), file);
+            if (previous != null) {
+                bytes -= entryBytes(previous);
+            }
+            bytes += entryBytes(file);
+            for (LockerIndex index : indexes.values()) {
+                index.put(file);
+            }
+        }
+
+        long entryBytes(FileMetadata file) {
+            long bytes = estimateBytes(file);
+            for (LockerIndex index : indexes.values()) {
+                bytes += index.estimateBytes(file);
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+// DAO class: MetadataCompactor.java
+package com.digitallocker.dao;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background compactor for {@link MetadataLog}s.
+ * A log is queued for compaction once its text log holds at least a minimum number of records and
+ * as many as its binary snapshot, so the text a read has to parse stays small and the snapshot is
+ * rewritten only when the locker has grown. This needs only the tail's length, which the log knows
+ * after any read or append, so lockers that are only appended to, paged or looked up by id are
+ * compacted too. Once the log has been replayed or listed, it is also queued when it holds at least
+ * the minimum number of records and its dead-record ratio reaches the configured threshold.
+ * Compaction runs on a single daemon thread.
+ */
+public class MetadataCompactor {
+    public static final double DEFAULT_DEAD_RATIO_THRESHOLD = 0.5;
+    public static final long DEFAULT_MIN_RECORDS = 64;
+
+    private final double deadRatioThreshold;
+    private final long minRecords;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet(); // Users already queued.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metadata-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a MetadataCompactor with the default threshold and minimum log size.
+     */
+    public MetadataCompactor() {
+        this(DEFAULT_DEAD_RATIO_THRESHOLD, DEFAULT_MIN_RECORDS);
+    }
+
+    /**
+     * Constructs a MetadataCompactor.
+     *
+     * @param deadRatioThreshold The dead-record ratio (0 to 1) at which a log is compacted.
+     * @param minRecords The minimum number of records a log must hold before it is compacted.
+     */
+    public MetadataCompactor(double deadRatioThreshold, long minRecords) {
+        if (deadRatioThreshold <= 0 || deadRatioThreshold > 1) {
+            throw new IllegalArgumentException("Dead ratio threshold must be in (0, 1].");
+        }
+        this.deadRatioThreshold = deadRatioThreshold;
+        this.minRecords = minRecords;
+    }
+
+    /**
+     * Queues the log for compaction if it has passed the threshold and is not already queued.
+     *
+     * @param log The log that was just appended to.
+     */
+    public void maybeCompact(MetadataLog log) {
+        boolean longTail = log.getTailRecords() >= Math.max(minRecords, log.getSnapshotRecords());
+        boolean mostlyDead = log.getTotalRecords() >= minRecords && log.getDeadRatio() >= deadRatioThreshold;
+        if (!mostlyDead && !longTail) {
+            return;
+        }
+        if (!pending.add(log.getUsername())) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                log.compact();
+            } catch (IOException e) {
+                System.err.println("Error compacting file metadata for user " + log.getUsername() + ": " + e.getMessage());
+            } finally {
+                pending.remove(log.getUsername());
+            }
+        });
+    }
+
+    /**
+     * Stops the background thread, and waits for the compactions already queued to run, so the
+     * logs can be closed afterwards.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
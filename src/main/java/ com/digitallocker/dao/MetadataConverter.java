@@ -0,0 +1,50 @@
+// DAO class: MetadataConverter.java
+package com.digitallocker.dao;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Converts every locker in a data directory from the text metadata format to a binary
+ * {@link MetadataSnapshot}: lockers in the old `username_files.txt` format are first migrated to
+ * a log, and every log is then compacted into a snapshot and an empty log.
+ * <p>
+ * Lockers are converted lazily by compaction anyway; this converts them all at once, e.g. before
+ * a deployment. Run it while the locker is not serving requests, since it opens each user's log
+ * outside any FileDao.
+ */
+public final class MetadataConverter {
+
+    private MetadataConverter() {
+    }
+
+    /**
+     * Converts all lockers in a data directory.
+     *
+     * @param dataDirectory The base directory holding the metadata files.
+     * @param durability Whether the new snapshots are fsynced before they replace the text.
+     * @return The number of lockers converted.
+     * @throws IOException If a locker cannot be read or its snapshot cannot be written.
+     */
+    public static int convert(Path dataDirectory, DurabilityPolicy durability) throws IOException {
+        Set<String> usernames = new TreeSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dataDirectory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.endsWith(MetadataLog.LOG_SUFFIX)) {
+                    usernames.add(name.substring(0, name.length() - MetadataLog.LOG_SUFFIX.length()));
+                } else if (name.endsWith(MetadataLog.LEGACY_SUFFIX)) {
+                    usernames.add(name.substring(0, name.length() - MetadataLog.LEGACY_SUFFIX.length()));
+                }
+            }
+        }
+        for (String username : usernames) {
+            new MetadataLog(dataDirectory.toString(), username, durability).compact();
+        }
+        return usernames.size();
+    }
+}
@@ -0,0 +1,243 @@
+// DAO class: MetadataListing.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A point-in-time listing of one user's locker, in upload order, that decodes entries only as
+ * they are read.
+ * <p>
+ * {@link MetadataLog#openListing} reads the text log into a summary of what it changes in the
+ * snapshot (the ids it deletes, the entries it updates, and the entries it adds after the snapshot's
+ * own), which is bounded by compaction. Listing then walks the snapshot's records one at a time
+ * through its memory map, applying that summary, so memory use and the time to the first entry
+ * do not grow with the size of the locker.
+ * <p>
+ * {@link #page} returns a page of entries with an opaque cursor for the next one. The cursor holds
+ * the position to continue from (a record offset in the snapshot, or the log line of the last
+ * entry returned from the log) together with the snapshot's stamp, so a later listing continues
+ * exactly there even if entries were added or deleted in between. If the locker was compacted in
+ * between, positions have moved, so the listing continues after the last entry returned, or at the
+ * entry that was to come next if that one was deleted, each found by id; if both were deleted, the
+ * cursor has expired. A locker without a snapshot that is compacted between pages may see entries
+ * repeated or skipped.
+ */
+public final class MetadataListing {
+    private static final char SNAPSHOT_POSITION = 'S';
+    private static final char LOG_POSITION = 'T';
+
+    private final MetadataSnapshot snapshot;
+    private final Set<String> deletedFromSnapshot;
+    private final Map<String, FileMetadata> updatedInSnapshot;
+    private final List<FileMetadata> appended; // Entries listed after the snapshot's, in order.
+    private final long[] appendedLines; // The log line that placed each appended entry, ascending.
+
+    MetadataListing(MetadataSnapshot snapshot, Set<String> deletedFromSnapshot, Map<String, FileMetadata> updatedInSnapshot,
+                    List<FileMetadata> appended, long[] appendedLines) {
+        this.snapshot = snapshot;
+        this.deletedFromSnapshot = deletedFromSnapshot;
+        this.updatedInSnapshot = updatedInSnapshot;
+        this.appended = appended;
+        this.appendedLines = appendedLines;
+    }
+
+    /**
+     * Returns an iterator over the whole listing.
+     * A corrupted snapshot record fails the iteration with an UncheckedIOException.
+     */
+    public Iterator<FileMetadata> iterator() {
+        return new ListingIterator(snapshot != null ? snapshot.firstOffset() : 0, 0);
+    }
+
+    /**
+     * Returns a sequential stream over the whole listing, read as it is consumed.
+     * A corrupted snapshot record fails the stream with an UncheckedIOException.
+     */
+    public Stream<FileMetadata> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Returns one page of the listing.
+     *
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @param pageSize The maximum number of entries to return.
+     * @return The page.
+     * @throws IOException If a snapshot record is corrupted.
+     * @throws IllegalArgumentException If the cursor is malformed or has expired.
+     */
+    public FilePage page(String cursor, int pageSize) throws IOException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        ListingIterator iterator = cursor == null ? (ListingIterator) iterator() : resume(cursor);
+        List<FileMetadata> files = new ArrayList<>(Math.min(pageSize, 1024));
+        try {
+            while (files.size() < pageSize && iterator.hasNext()) {
+                files.add(iterator.next());
+            }
+            return new FilePage(Collections.unmodifiableList(files), iterator.hasNext() ? iterator.cursor() : null);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private ListingIterator resume(String cursor) {
+        char kind;
+        int stamp;
+        long position;
+        String lastId;
+        String nextId;
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 5);
+            kind = parts[0].charAt(0);
+            stamp = Integer.parseInt(parts[1]);
+            position = Long.parseLong(parts[2]);
+            int lastIdLength = Integer.parseInt(parts[3]);
+            lastId = parts[4].substring(0, lastIdLength);
+            nextId = parts[4].substring(lastIdLength);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid listing cursor.");
+        }
+        int snapshotEnd = snapshot != null ? snapshot.endOffset() : 0;
+        int currentStamp = snapshot != null ? snapshot.getStamp() : 0;
+        if (stamp == currentStamp) {
+            if (kind == LOG_POSITION) {
+                return new ListingIterator(snapshotEnd, firstAppendedAfter(position));
+            }
+            if (kind == SNAPSHOT_POSITION && stamp != 0) {
+                if (position < snapshot.firstOffset() || position > snapshotEnd) {
+                    throw new IllegalArgumentException("Invalid listing cursor.");
+                }
+                return new ListingIterator((int) position, 0);
+            }
+        }
+        // The locker was compacted since: continue after the last entry returned, or at the next one.
+        ListingIterator iterator = seek(lastId, true);
+        if (iterator == null) {
+            iterator = seek(nextId, false);
+        }
+        if (iterator == null) {
+            throw new IllegalArgumentException("Listing cursor has expired; start the listing again.");
+        }
+        return iterator;
+    }
+
+    /**
+     * Returns an iterator positioned at, or just after, the entry with the given id, or null if the
+     * listing has no such entry.
+     */
+    private ListingIterator seek(String id, boolean after) {
+        int offset = snapshot != null ? snapshot.offsetOf(id) : -1;
+        if (offset >= 0) {
+            return new ListingIterator(after ? snapshot.nextOffset(offset) : offset, 0);
+        }
+        for (int i = 0; i < appended.size(); i++) {
+            if (appended.get(i).getId().equals(id)) {
+                return new ListingIterator(snapshot != null ? snapshot.endOffset() : 0, after ? i + 1 : i);
+            }
+        }
+        return null;
+    }
+
+    private int firstAppendedAfter(long line) {
+        int low = 0;
+        int high = appendedLines.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (appendedLines[middle] <= line) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private class ListingIterator implements Iterator<FileMetadata> {
+        private final int snapshotEnd = snapshot != null ? snapshot.endOffset() : 0;
+        private int offset;        // The next snapshot record to read.
+        private int appendedIndex; // The next appended entry, once the snapshot is exhausted.
+        private FileMetadata next;
+        private char nextKind;     // Where next came from, and the position after it.
+        private long nextPosition;
+        private char lastKind;     // The same for the last entry returned, for cursor().
+        private long lastPosition;
+        private String lastId;
+
+        ListingIterator(int offset, int appendedIndex) {
+            this.offset = offset;
+            this.appendedIndex = appendedIndex;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            while (offset < snapshotEnd) {
+                FileMetadata file;
+                try {
+                    file = snapshot.readAt(offset);
+                } catch (IllegalArgumentException e) {
+                    throw new UncheckedIOException(new IOException("Corrupted metadata snapshot: " + e.getMessage(), e));
+                }
+                offset = snapshot.nextOffset(offset);
+                if (!deletedFromSnapshot.contains(file.getId())) {
+                    next = updatedInSnapshot.getOrDefault(file.getId(), file);
+                    nextKind = SNAPSHOT_POSITION;
+                    nextPosition = offset;
+                    return true;
+                }
+            }
+            if (appendedIndex < appended.size()) {
+                next = appended.get(appendedIndex);
+                nextKind = LOG_POSITION;
+                nextPosition = appendedLines[appendedIndex];
+                appendedIndex++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public FileMetadata next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FileMetadata file = next;
+            next = null;
+            lastKind = nextKind;
+            lastPosition = nextPosition;
+            lastId = file.getId();
+            return file;
+        }
+
+        /**
+         * Returns the cursor for the entries after the last one returned by {@link #next}.
+         * Must be called after {@link #hasNext} has returned true.
+         */
+        String cursor() {
+            String value = lastKind + ":" + (snapshot != null ? snapshot.getStamp() : 0) + ":" + lastPosition + ":"
+                    + lastId.length() + ":" + lastId + next.getId();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,501 @@
+// DAO class: MetadataLog.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+import com.digitallocker.model.FileMetadataCodec;
+import com.digitallocker.util.DurableFiles;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Append-only metadata log for one user's locker (`username_files.log`), on top of an optional
+ * binary {@link MetadataSnapshot} (`username_files.dat`).
+ * <p>
+ * Every save or update appends a put record ({@code P|<metadata>}) and every delete appends a
+ * tombstone ({@code D|<fileId>}), so a mutation costs one appended line regardless of locker size.
+ * Reading starts from the snapshot and replays the log over it; later records for the same id
+ * replace earlier ones while keeping the file's original position in the listing. {@link #find}
+ * looks an id up in the log and then in the snapshot's index, without decoding anything else.
+ * {@link #openListing} summarizes the log and leaves the snapshot to be decoded as it is listed.
+ * <p>
+ * Whichever of these reads the log first records how many records it holds, so a
+ * {@link MetadataCompactor} can tell when the log has outgrown the snapshot even for lockers that
+ * are never replayed in full; if an append comes first, the log's lines are counted then, once.
+ * {@link #replay} and {@link #openListing} also record how many records are live.
+ * <p>
+ * {@link #compact()} writes all live records to a new snapshot and then empties the log, each
+ * through {@link DurableFiles}, so a crash leaves either the old snapshot and log or the new
+ * snapshot with a log whose records it already contains; replaying those again is harmless.
+ * Entries the binary format cannot hold (see {@link MetadataSnapshot#canWrite}) are compacted
+ * into the text log instead.
+ * <p>
+ * Lockers still stored in the old `username_files.txt` format are migrated on first access; the
+ * old file is kept as `username_files.txt.bak`. The log is UTF-8; the old file is read in the
+ * platform charset it was written in.
+ * <p>
+ * Records are appended through a {@link GroupCommitWriter}: the append methods queue the record
+ * and return a future that completes once it is written, so appends from several threads share one
+ * write (and one fsync, if enabled). Reads and compaction flush queued records first.
+ * <p>
+ * All methods synchronize on the log instance, which serializes mutations and compaction per user
+ * and fixes the order records are queued in.
+ */
+public class MetadataLog {
+    static final String LOG_SUFFIX = "_files.log";
+    static final String LEGACY_SUFFIX = "_files.txt";
+    static final String BACKUP_SUFFIX = ".bak";
+
+    private static final String PUT = "P";
+    private static final String DELETE = "D";
+
+    private final String username;
+    private final Path logFile;
+    private final Path legacyFile;
+    private final Path snapshotFile;
+    private final DurabilityPolicy durability;
+    private final GroupCommitWriter writer;
+    private boolean migrated;      // True once the legacy file has been checked for this log.
+    private MetadataSnapshot snapshot; // The mapped snapshot, or null if there is none.
+    private boolean snapshotOpened; // True once the snapshot file has been looked for.
+    private long totalRecords = -1; // Snapshot and log records, or -1 until the log is first replayed or listed.
+    private long tailRecords;      // Records in the text log, after the snapshot.
+    private boolean tailCounted;   // True once tailRecords counts the whole log, not just this process's appends.
+    private long liveRecords;      // Records that still describe a file in the locker.
+    private final StringBuilder recordBuffer = new StringBuilder(128); // Reused to encode appended records.
+
+    /**
+     * Constructs a MetadataLog whose appends are not forced to disk.
+     *
+     * @param dataDirectory The base directory where user-specific metadata files are stored.
+     * @param username The owner of the locker.
+     */
+    public MetadataLog(String dataDirectory, String username) {
+        this(dataDirectory, username, DurabilityPolicy.none());
+    }
+
+    /**
+     * Constructs a MetadataLog.
+     *
+     * @param dataDirectory The base directory where user-specific metadata files are stored.
+     * @param username The owner of the locker.
+     * @param durability When appends and rewrites of the log are forced to disk.
+     */
+    public MetadataLog(String dataDirectory, String username, DurabilityPolicy durability) {
+        this.username = username;
+        this.logFile = Paths.get(dataDirectory, username + LOG_SUFFIX);
+        this.legacyFile = Paths.get(dataDirectory, username + LEGACY_SUFFIX);
+        this.snapshotFile = Paths.get(dataDirectory, username + MetadataSnapshot.SNAPSHOT_SUFFIX);
+        this.durability = durability;
+        this.writer = new GroupCommitWriter(logFile, durability);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Reads the snapshot, replays the log over it, and returns the live file metadata in upload order.
+     *
+     * @return A list of FileMetadata objects. Returns an empty list if neither file exists.
+     * @throws IOException If an I/O error occurs while reading the snapshot or the log.
+     */
+    public synchronized List<FileMetadata> replay() throws IOException {
+        migrateLegacyFile();
+        writer.flush();
+        LinkedHashMap<String, FileMetadata> files = new LinkedHashMap<>();
+        long snapshotRecords = 0;
+        long records = 0;
+
+        MetadataSnapshot current = openSnapshot();
+        if (current != null) {
+            try {
+                for (FileMetadata file : current.readAll()) {
+                    files.put(file.getId(), file);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupted metadata snapshot for user " + username + ": " + e.getMessage(), e);
+            }
+            snapshotRecords = current.size();
+        }
+        if (Files.exists(logFile)) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(logFile.toFile(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    records++;
+                    try {
+                        applyRecord(files, line);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Warning: Corrupted file metadata line for user " + username + ": " + line + " - " + e.getMessage());
+                    }
+                }
+            }
+        }
+        totalRecords = snapshotRecords + records;
+        tailRecords = records;
+        tailCounted = true;
+        liveRecords = files.size();
+        return new ArrayList<>(files.values());
+    }
+
+    /**
+     * Looks up one file by id: the log is scanned for the latest record of that id, and if there
+     * is none the snapshot's index is searched.
+     *
+     * @param fileId The id to look up.
+     * @return The file's metadata, or empty if the file is not in the locker.
+     * @throws IOException If an I/O error occurs while reading the snapshot or the log.
+     */
+    public synchronized Optional<FileMetadata> find(String fileId) throws IOException {
+        migrateLegacyFile();
+        writer.flush();
+        MetadataSnapshot current = openSnapshot();
+        Optional<FileMetadata> latest = null; // Null until the log has a record for the id.
+        long records = 0;
+        if (Files.exists(logFile)) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(logFile.toFile(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    records++;
+                    // Only records that start with the id are decoded.
+                    if (!line.startsWith(fileId, 2)) {
+                        continue;
+                    }
+                    int idEnd = 2 + fileId.length();
+                    if (line.startsWith(DELETE) && line.length() == idEnd) {
+                        latest = Optional.empty();
+                    } else if (line.startsWith(PUT) && line.length() > idEnd && line.charAt(idEnd) == '|') {
+                        try {
+                            latest = Optional.of(FileMetadataCodec.decode(line, 2, line.length()));
+                        } catch (IllegalArgumentException e) {
+                            // Reported by replay(); skipped here the same way.
+                        }
+                    }
+                }
+            }
+        }
+        tailRecords = records;
+        tailCounted = true;
+        if (latest != null) {
+            return latest;
+        }
+        try {
+            return Optional.ofNullable(current != null ? current.find(fileId) : null);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted metadata snapshot for user " + username + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Opens a listing of the locker as it is now, which reads the snapshot lazily. The log is read
+     * here, so its records appended later are not part of the listing.
+     *
+     * @return The listing.
+     * @throws IOException If an I/O error occurs while reading the snapshot or the log.
+     */
+    public synchronized MetadataListing openListing() throws IOException {
+        migrateLegacyFile();
+        writer.flush();
+        MetadataSnapshot current = openSnapshot();
+        Set<String> deleted = new HashSet<>();
+        Map<String, FileMetadata> updated = new HashMap<>();
+        LinkedHashMap<String, FileMetadata> appended = new LinkedHashMap<>();
+        Map<String, Long> appendedLines = new HashMap<>();
+        long lineNumber = 0;
+        if (Files.exists(logFile)) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(logFile.toFile(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.startsWith(DELETE + "|")) {
+                        String id = line.substring(2);
+                        if (appended.remove(id) == null && inSnapshot(current, id)) {
+                            deleted.add(id);
+                            updated.remove(id);
+                        }
+                        appendedLines.remove(id);
+                    } else if (line.startsWith(PUT + "|")) {
+                        FileMetadata file;
+                        try {
+                            file = FileMetadataCodec.decode(line, 2, line.length());
+                        } catch (IllegalArgumentException e) {
+                            continue; // Reported by replay().
+                        }
+                        String id = file.getId();
+                        if (!appended.containsKey(id) && !deleted.contains(id) && inSnapshot(current, id)) {
+                            updated.put(id, file); // Listed at its place in the snapshot.
+                        } else {
+                            appended.put(id, file); // Keeps its place if it was already appended.
+                            appendedLines.putIfAbsent(id, lineNumber);
+                        }
+                    }
+                }
+            }
+        }
+        long snapshotRecords = current != null ? current.size() : 0;
+        totalRecords = snapshotRecords + lineNumber;
+        tailRecords = lineNumber;
+        tailCounted = true;
+        liveRecords = snapshotRecords - deleted.size() + appended.size();
+        List<FileMetadata> appendedFiles = new ArrayList<>(appended.values());
+        long[] lines = new long[appendedFiles.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = appendedLines.get(appendedFiles.get(i).getId());
+        }
+        return new MetadataListing(current, deleted, updated, appendedFiles, lines);
+    }
+
+    private static boolean inSnapshot(MetadataSnapshot snapshot, String id) {
+        return snapshot != null && snapshot.offsetOf(id) >= 0;
+    }
+
+    private MetadataSnapshot openSnapshot() throws IOException {
+        if (!snapshotOpened) {
+            snapshot = MetadataSnapshot.open(snapshotFile);
+            snapshotOpened = true;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Appends a put record for a new or updated file.
+     *
+     * @param fileMetadata The metadata to record.
+     * @param isNew true if the id is not already live in the locker, false if this replaces it.
+     * @return A future that completes once the record is written.
+     * @throws IOException If the legacy metadata file cannot be migrated.
+     */
+    public synchronized CompletableFuture<Void> appendPut(FileMetadata fileMetadata, boolean isNew) throws IOException {
+        recordBuffer.setLength(0);
+        FileMetadataCodec.encode(fileMetadata, recordBuffer.append(PUT).append('|'));
+        CompletableFuture<Void> durable = append(recordBuffer);
+        if (isNew) {
+            liveRecords++;
+        }
+        return durable;
+    }
+
+    /**
+     * Appends put records for several new files, all written in the same batch.
+     *
+     * @param newFiles The metadata of files not yet in the locker, in upload order.
+     * @return A future that completes once all the records are written.
+     * @throws IOException If the legacy metadata file cannot be migrated.
+     */
+    public synchronized CompletableFuture<Void> appendPuts(Collection<FileMetadata> newFiles) throws IOException {
+        migrateLegacyFile();
+        countTail();
+        List<String> records = new ArrayList<>(newFiles.size());
+        for (FileMetadata file : newFiles) {
+            recordBuffer.setLength(0);
+            FileMetadataCodec.encode(file, recordBuffer.append(PUT).append('|'));
+            records.add(recordBuffer.toString());
+        }
+        CompletableFuture<Void> durable = writer.appendAll(records);
+        if (totalRecords >= 0) {
+            totalRecords += newFiles.size();
+        }
+        tailRecords += newFiles.size();
+        liveRecords += newFiles.size();
+        return durable;
+    }
+
+    /**
+     * Appends a tombstone for a deleted file.
+     *
+     * @param fileId The id of the file that is no longer in the locker.
+     * @return A future that completes once the tombstone is written.
+     * @throws IOException If the legacy metadata file cannot be migrated.
+     */
+    public synchronized CompletableFuture<Void> appendDelete(String fileId) throws IOException {
+        recordBuffer.setLength(0);
+        CompletableFuture<Void> durable = append(recordBuffer.append(DELETE).append('|').append(fileId));
+        liveRecords--;
+        return durable;
+    }
+
+    /**
+     * Returns the number of records currently in the log, or -1 if it has not been replayed or listed yet.
+     */
+    public synchronized long getTotalRecords() {
+        return totalRecords;
+    }
+
+    /**
+     * Returns the number of records in the text log, appended since the last snapshot. Counts the
+     * whole log once it has been read or appended to.
+     */
+    public synchronized long getTailRecords() {
+        return tailRecords;
+    }
+
+    /**
+     * Returns the number of records in the snapshot, or 0 if there is none or it has not been read yet.
+     */
+    public synchronized long getSnapshotRecords() {
+        return snapshot != null ? snapshot.size() : 0;
+    }
+
+    /**
+     * Returns the fraction of log records that are superseded versions or tombstones.
+     *
+     * @return A ratio between 0 and 1, or 0 if the log has not been replayed or listed yet.
+     */
+    public synchronized double getDeadRatio() {
+        if (totalRecords <= 0) {
+            return 0;
+        }
+        return (double) (totalRecords - liveRecords) / totalRecords;
+    }
+
+    /**
+     * Writes the queued records and closes the log file. A later append opens it again.
+     *
+     * @throws IOException If the queued records cannot be written or the file cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Writes every live file to a new snapshot and empties the log. Queued records are written and
+     * the log closed first. This is also how a locker is converted from the text format.
+     * <p>
+     * If an entry cannot be stored in the binary format, the log is instead rewritten with one put
+     * record per live file, preceded by tombstones for snapshot entries deleted since, and the
+     * snapshot is then removed.
+     *
+     * @throws IOException If an I/O error occurs while reading or writing the snapshot or the log.
+     */
+    public synchronized void compact() throws IOException {
+        writer.close();
+        List<FileMetadata> liveFiles = replay();
+        boolean sync = durability.syncsRewrites();
+        if (MetadataSnapshot.canWrite(liveFiles)) {
+            MetadataSnapshot.write(snapshotFile, liveFiles, sync);
+            snapshot = MetadataSnapshot.open(snapshotFile);
+            snapshotOpened = true;
+            DurableFiles.replace(logFile, sync, writer -> {
+            });
+            tailRecords = 0;
+            totalRecords = liveFiles.size();
+        } else {
+            Set<String> liveIds = new HashSet<>();
+            liveFiles.forEach(file -> liveIds.add(file.getId()));
+            List<String> deletedIds = new ArrayList<>();
+            if (snapshot != null) {
+                snapshot.readAll().stream().map(FileMetadata::getId).filter(id -> !liveIds.contains(id)).forEach(deletedIds::add);
+            }
+            DurableFiles.replace(logFile, sync, writer -> {
+                for (String id : deletedIds) {
+                    writer.append(DELETE).append('|').append(id);
+                    writer.newLine();
+                }
+                for (FileMetadata file : liveFiles) {
+                    recordBuffer.setLength(0);
+                    FileMetadataCodec.encode(file, recordBuffer.append(PUT).append('|'));
+                    writer.append(recordBuffer);
+                    writer.newLine();
+                }
+            });
+            Files.deleteIfExists(snapshotFile);
+            snapshot = null;
+            tailRecords = deletedIds.size() + liveFiles.size();
+            totalRecords = tailRecords;
+        }
+        liveRecords = liveFiles.size();
+    }
+
+    private CompletableFuture<Void> append(CharSequence record) throws IOException {
+        migrateLegacyFile();
+        countTail();
+        CompletableFuture<Void> durable = writer.append(record);
+        if (totalRecords >= 0) {
+            totalRecords++;
+        }
+        tailRecords++;
+        return durable;
+    }
+
+    /**
+     * Counts the log's records, without decoding them, if no read has counted them yet. Called
+     * before the first append, while every record is still on disk rather than queued.
+     */
+    private void countTail() throws IOException {
+        if (tailCounted) {
+            return;
+        }
+        openSnapshot(); // So the tail can be compared with it.
+        long records = 0;
+        if (Files.exists(logFile)) {
+            try (InputStream in = Files.newInputStream(logFile)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] == '\n') {
+                            records++;
+                        }
+                    }
+                }
+            }
+        }
+        tailRecords = records;
+        tailCounted = true;
+    }
+
+    private static void applyRecord(LinkedHashMap<String, FileMetadata> files, String line) {
+        if (line.length() < 2 || line.charAt(1) != '|') {
+            throw new IllegalArgumentException("Missing record type.");
+        }
+        char type = line.charAt(0);
+        if (type == PUT.charAt(0)) {
+            FileMetadata file = FileMetadataCodec.decode(line, 2, line.length());
+            files.put(file.getId(), file);
+        } else if (type == DELETE.charAt(0)) {
+            files.remove(line.substring(2));
+        } else {
+            throw new IllegalArgumentException("Unknown record type " + type + ".");
+        }
+    }
+
+    /**
+     * Converts a locker stored in the old one-line-per-file format into a log.
+     * Each valid line becomes a put record; the old file is renamed to `.bak` afterwards.
+     */
+    private void migrateLegacyFile() throws IOException {
+        if (migrated) {
+            return;
+        }
+        if (!Files.exists(logFile) && Files.exists(legacyFile)) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(legacyFile.toFile()))) {
+                DurableFiles.replace(logFile, durability.syncsRewrites(), writer -> {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isEmpty()) {
+                            continue;
+                        }
+                        writer.write(PUT + "|" + line);
+                        writer.newLine();
+                    }
+                });
+            }
+            Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + BACKUP_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        }
+        migrated = true;
+    }
+}
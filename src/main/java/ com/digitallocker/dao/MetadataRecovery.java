@@ -0,0 +1,57 @@
+// DAO class: MetadataRecovery.java
+package com.digitallocker.dao;
+
+import com.digitallocker.util.DurableFiles;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Startup check that repairs what a crash can leave behind in the metadata files.
+ * <p>
+ * Rewrites go through {@link DurableFiles#replace}, so a crash during one leaves the old file in
+ * place next to an unfinished {@code .tmp} file, which is deleted here. Appends can be cut off
+ * mid-record, most likely when many records are batched into one write; the partial last line is
+ * truncated away so the next append does not join it into a corrupted record. Run it before the
+ * DAOs open the directory.
+ */
+public final class MetadataRecovery {
+
+    private MetadataRecovery() {
+    }
+
+    /**
+     * Repairs users.txt and every user's metadata log in a data directory.
+     *
+     * @param dataDirectory The base directory holding the metadata files.
+     * @return The number of files that needed repair.
+     * @throws IOException If the directory cannot be listed or a file cannot be repaired.
+     */
+    public static int recover(Path dataDirectory) throws IOException {
+        if (!Files.isDirectory(dataDirectory)) {
+            return 0;
+        }
+        int repaired = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dataDirectory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.equals(UserDao.USERS_FILE + DurableFiles.TEMP_SUFFIX)
+                        || name.endsWith(MetadataLog.LOG_SUFFIX + DurableFiles.TEMP_SUFFIX)
+                        || name.endsWith(MetadataSnapshot.SNAPSHOT_SUFFIX + DurableFiles.TEMP_SUFFIX)) {
+                    Files.delete(entry);
+                    System.err.println("Warning: Removed unfinished rewrite " + entry + ".");
+                    repaired++;
+                } else if (name.equals(UserDao.USERS_FILE) || name.endsWith(MetadataLog.LOG_SUFFIX)) {
+                    long removed = DurableFiles.truncatePartialLine(entry);
+                    if (removed > 0) {
+                        System.err.println("Warning: Removed a partial record of " + removed + " bytes from the end of " + entry + ".");
+                        repaired++;
+                    }
+                }
+            }
+        }
+        return repaired;
+    }
+}
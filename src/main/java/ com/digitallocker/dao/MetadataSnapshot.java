@@ -0,0 +1,245 @@
+// DAO class: MetadataSnapshot.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+import com.digitallocker.model.FileMetadataBinaryCodec;
+import com.digitallocker.util.DurableFiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Binary snapshot of one user's file metadata (`username_files.dat`), read through a memory map.
+ * <p>
+ * Layout, version 1:
+ * <pre>
+ * int    magic "DLMS"
+ * short  version
+ * short  reserved (0)
+ * int    record count
+ * int    stamp, a random non-zero number identifying this snapshot (0 in older snapshots)
+ * index  one entry per record, sorted by id: the fixed-width id, then the int offset of the record
+ * data   the records, in upload order, as written by {@link FileMetadataBinaryCodec}
+ * </pre>
+ * Listing reads the records in order; looking up an id is a binary search of the index followed
+ * by decoding the single record it points to. Records can also be read one at a time by offset,
+ * which is how listings stream a locker without decoding all of it. Snapshots are immutable:
+ * {@link MetadataLog} writes a new one on compaction and keeps the records appended since in its
+ * text log.
+ */
+public final class MetadataSnapshot {
+    static final String SNAPSHOT_SUFFIX = "_files.dat";
+
+    private static final int MAGIC = 0x444C4D53; // "DLMS"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int INDEX_ENTRY_SIZE = FileMetadataBinaryCodec.ID_SIZE + Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+    private final int stamp;
+
+    private MetadataSnapshot(MappedByteBuffer buffer, int recordCount, int stamp) {
+        this.buffer = buffer;
+        this.recordCount = recordCount;
+        this.stamp = stamp;
+    }
+
+    /**
+     * Maps a snapshot file and checks its header.
+     *
+     * @param file The snapshot file.
+     * @return The snapshot, or null if the file does not exist.
+     * @throws IOException If the file cannot be mapped or is not a version 1 snapshot.
+     */
+    public static MetadataSnapshot open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a metadata snapshot: " + file);
+            }
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a metadata snapshot: " + file);
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported metadata snapshot version " + buffer.getShort(4) + ": " + file);
+        }
+        int recordCount = buffer.getInt(8);
+        if (recordCount < 0 || HEADER_SIZE + (long) recordCount * INDEX_ENTRY_SIZE > buffer.limit()) {
+            throw new IOException("Corrupted metadata snapshot header: " + file);
+        }
+        return new MetadataSnapshot(buffer, recordCount, buffer.getInt(12));
+    }
+
+    /**
+     * Returns true if every entry can be written to a snapshot (see {@link FileMetadataBinaryCodec#canEncode}).
+     */
+    public static boolean canWrite(List<FileMetadata> files) {
+        return files.stream().allMatch(FileMetadataBinaryCodec::canEncode);
+    }
+
+    /**
+     * Writes a snapshot of the given metadata, replacing any existing one atomically.
+     *
+     * @param file The snapshot file.
+     * @param files The live file metadata, in upload order, with unique ids.
+     * @param sync true to fsync the snapshot before it replaces the old one.
+     * @throws IOException If the snapshot cannot be written or would exceed 2 GB.
+     * @throws IllegalArgumentException If an entry cannot be encoded.
+     */
+    public static void write(Path file, List<FileMetadata> files, boolean sync) throws IOException {
+        int count = files.size();
+        int[] offsets = new int[count];
+        long position = HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE;
+        int largestRecord = 0;
+        for (int i = 0; i < count; i++) {
+            int size = FileMetadataBinaryCodec.encodedSize(files.get(i));
+            if (position + size > Integer.MAX_VALUE) {
+                throw new IOException("Metadata snapshot would exceed 2 GB: " + file);
+            }
+            offsets[i] = (int) position;
+            position += size;
+            largestRecord = Math.max(largestRecord, size);
+        }
+        Integer[] byId = new Integer[count];
+        Arrays.setAll(byId, i -> i);
+        Arrays.sort(byId, Comparator.comparing(i -> files.get(i).getId()));
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + count * INDEX_ENTRY_SIZE);
+        int stamp = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(count).putInt(stamp);
+        for (int i : byId) {
+            FileMetadataBinaryCodec.putId(files.get(i).getId(), header);
+            header.putInt(offsets[i]);
+        }
+        ByteBuffer record = ByteBuffer.allocate(largestRecord);
+        DurableFiles.replaceBinary(file, sync, out -> {
+            out.write(header.array());
+            for (FileMetadata metadata : files) {
+                record.clear();
+                FileMetadataBinaryCodec.encode(metadata, record);
+                out.write(record.array(), 0, record.position());
+            }
+        });
+    }
+
+    /**
+     * Returns the number of records in the snapshot.
+     */
+    public int size() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number that identifies this snapshot among the snapshots of its locker, or 0 if
+     * it was written before snapshots were stamped.
+     */
+    public int getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Returns the offset of the first record, or {@link #endOffset()} if there are none.
+     */
+    public int firstOffset() {
+        return HEADER_SIZE + recordCount * INDEX_ENTRY_SIZE;
+    }
+
+    /**
+     * Returns the offset just past the last record.
+     */
+    public int endOffset() {
+        return buffer.limit();
+    }
+
+    /**
+     * Returns the offset of the record after the one at {@code offset}.
+     */
+    public int nextOffset(int offset) {
+        return offset + Integer.BYTES + buffer.getInt(offset);
+    }
+
+    /**
+     * Decodes the record at an offset.
+     *
+     * @param offset The offset of a record, from {@link #firstOffset}, {@link #nextOffset} or {@link #offsetOf}.
+     * @return The record's metadata.
+     * @throws IllegalArgumentException If the record is malformed.
+     */
+    public FileMetadata readAt(int offset) {
+        return FileMetadataBinaryCodec.decode(buffer, offset);
+    }
+
+    /**
+     * Decodes every record, in upload order.
+     *
+     * @return The file metadata in the snapshot.
+     * @throws IllegalArgumentException If a record is malformed.
+     */
+    public List<FileMetadata> readAll() {
+        List<FileMetadata> files = new ArrayList<>(recordCount);
+        int position = firstOffset();
+        for (int i = 0; i < recordCount; i++) {
+            files.add(readAt(position));
+            position = nextOffset(position);
+        }
+        return files;
+    }
+
+    /**
+     * Looks up one record by id through the index.
+     *
+     * @param id The file id.
+     * @return The metadata, or null if the snapshot has no record with that id.
+     * @throws IllegalArgumentException If the record is malformed.
+     */
+    public FileMetadata find(String id) {
+        int offset = offsetOf(id);
+        return offset < 0 ? null : readAt(offset);
+    }
+
+    /**
+     * Looks up the offset of one record by id through the index.
+     *
+     * @param id The file id.
+     * @return The offset of the record, or -1 if the snapshot has no record with that id.
+     */
+    public int offsetOf(String id) {
+        byte[] paddedId = FileMetadataBinaryCodec.paddedId(id);
+        if (paddedId == null) {
+            return -1; // Such an id could never have been written.
+        }
+        int low = 0;
+        int high = recordCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_SIZE + middle * INDEX_ENTRY_SIZE;
+            int comparison = FileMetadataBinaryCodec.compareId(buffer, entry, paddedId);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(entry + FileMetadataBinaryCodec.ID_SIZE);
+            }
+        }
+        return -1;
+    }
+}
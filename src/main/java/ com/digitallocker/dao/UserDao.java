@@ -2,33 +2,62 @@
 package com.digitallocker.dao;
 
 import com.digitallocker.model.User;
-import com.digitallocker.util.PasswordHasher;
+import com.digitallocker.util.DurableFiles;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Data Access Object (DAO) for managing User data persistence.
  * Handles reading from and writing to the `users.txt` file.
+ * <p>
+ * The file is loaded once into an in-memory concurrent index when the DAO is constructed.
+ * Lookups are answered from the index, and new or updated users are appended to the file, so
+ * the file is never scanned again after startup. When a username appears on several lines,
+ * the last one is current. Appends go through a {@link GroupCommitWriter}, so concurrent
+ * registrations share one write of the file.
  */
-public class UserDao {
+public class UserDao implements Closeable {
+    static final String USERS_FILE = "users.txt";
+
     private final Path usersFilePath; // Path to the file storing user credentials.
+    private final ConcurrentMap<String, User> usersByName = new ConcurrentHashMap<>(); // In-memory index of users.txt.
+    private final Set<String> pendingNames = ConcurrentHashMap.newKeySet(); // Names whose first append is not yet durable.
+    private final GroupCommitWriter writer; // Batches appends to users.txt.
+    private final Object appendLock = new Object(); // Orders updates of the index and the file.
 
     /**
-     * Constructs a UserDao.
+     * Constructs a UserDao whose appends are not forced to disk.
      *
      * @param dataDirectory The base directory where user data files are stored.
      */
     public UserDao(String dataDirectory) {
-        this.usersFilePath = Paths.get(dataDirectory, "users.txt");
+        this(dataDirectory, DurabilityPolicy.none());
+    }
+
+    /**
+     * Constructs a UserDao.
+     *
+     * @param dataDirectory The base directory where user data files are stored.
+     * @param durability When appends to users.txt are forced to disk.
+     */
+    public UserDao(String dataDirectory, DurabilityPolicy durability) {
+        this.usersFilePath = Paths.get(dataDirectory, USERS_FILE);
+        this.writer = new GroupCommitWriter(usersFilePath, durability);
         // Ensure the users.txt file exists. If not, create it.
         try {
             if (!Files.exists(usersFilePath)) {
                 Files.createFile(usersFilePath);
             }
+            loadUsers();
         } catch (IOException e) {
             System.err.println("Error ensuring users.txt file exists: " + e.getMessage());
             // In a real application, you might throw a runtime exception or handle this more robustly.
@@ -36,43 +65,125 @@ public class UserDao {
     }
 
     /**
-     * Finds a user by their username.
+     * Loads every line of users.txt into the in-memory index.
+     * If a username appears more than once, the last entry wins, since updates are appended.
      *
-     * @param username The username to search for.
-     * @return An Optional containing the User object if found, or empty if not found.
      * @throws IOException If an I/O error occurs while reading the file.
      */
-    public Optional<User> findUserByUsername(String username) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(usersFilePath.toFile()))) {
+    private void loadUsers() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(usersFilePath.toFile(), StandardCharsets.UTF_8))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 String[] parts = line.split("\\|");
-                if (parts.length == 2 && parts[0].equals(username)) {
-                    return Optional.of(new User(parts[0], parts[1]));
+                if (parts.length == 2) {
+                    usersByName.put(parts[0], new User(parts[0], parts[1]));
                 }
             }
         }
-        return Optional.empty(); // User not found.
+    }
+
+    /**
+     * Returns true if a name can be used as a username. Usernames are written to pipe-delimited
+     * lines, sent in HTTP Basic credentials (split at the first ':') and used in the names of files
+     * in the data directory, so they cannot contain '|', ':', path separators or control
+     * characters, cannot start with '.' like the store's own directories (.blobs, .uploads, ...),
+     * and cannot be, or end like, the name of a metadata file.
+     *
+     * @param username The name to check.
+     * @return true if the name is a valid username.
+     */
+    public static boolean isValidUsername(String username) {
+        if (username.isEmpty() || username.startsWith(".")) {
+            return false;
+        }
+        for (int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+            if (c == '|' || c == ':' || c == '/' || c == '\\' || c < ' ' || c == 0x7f) {
+                return false;
+            }
+        }
+        return !username.equals(USERS_FILE)
+                && !username.endsWith(MetadataLog.LOG_SUFFIX)
+                && !username.endsWith(MetadataLog.LEGACY_SUFFIX)
+                && !username.endsWith(MetadataSnapshot.SNAPSHOT_SUFFIX)
+                && !username.endsWith(MetadataLog.BACKUP_SUFFIX)
+                && !username.endsWith(DurableFiles.TEMP_SUFFIX);
+    }
+
+    /**
+     * Finds a user by their username.
+     *
+     * @param username The username to search for.
+     * @return An Optional containing the User object if found, or empty if not found.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    public Optional<User> findUserByUsername(String username) throws IOException {
+        return Optional.ofNullable(usersByName.get(username));
     }
 
     /**
      * Saves a new user to the users file.
+     * The username is reserved and appended under the append lock, so concurrent registrations of
+     * the same name cannot both succeed. The user is published to the index only once the append is
+     * durable, so a lookup never finds a user that a crash could still lose.
      *
      * @param user The User object to save.
      * @return true if the user was saved successfully, false if a user with that username already exists.
      * @throws IOException If an I/O error occurs while writing to the file.
      */
     public boolean saveUser(User user) throws IOException {
-        // Check if user already exists to prevent duplicates.
-        if (findUserByUsername(user.getUsername()).isPresent()) {
-            return false; // User with this username already exists.
+        String username = user.getUsername();
+        CompletableFuture<Void> durable;
+        synchronized (appendLock) {
+            // Check if user already exists, or is being saved, to prevent duplicates.
+            if (usersByName.containsKey(username) || !pendingNames.add(username)) {
+                return false; // User with this username already exists.
+            }
+            durable = appendUser(user);
         }
-
-        // Append the new user's data to the users file.
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(usersFilePath.toFile(), true))) {
-            writer.write(user.getUsername() + "|" + user.getHashedPassword());
-            writer.newLine();
+        try {
+            GroupCommitWriter.await(durable);
+            usersByName.put(username, user);
+        } finally {
+            pendingNames.remove(username);
         }
         return true; // User saved successfully.
     }
+
+    /**
+     * Replaces an existing user's record, e.g. after their password hash has been upgraded.
+     * The new record is appended and supersedes the old one on the next load.
+     *
+     * @param user The User object with updated data.
+     * @return true if the user was updated, false if no user with that username exists.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public boolean updateUser(User user) throws IOException {
+        CompletableFuture<Void> durable;
+        synchronized (appendLock) {
+            if (!usersByName.containsKey(user.getUsername())) {
+                return false;
+            }
+            durable = appendUser(user);
+            usersByName.put(user.getUsername(), user); // In the same order as the appends.
+        }
+        GroupCommitWriter.await(durable);
+        return true;
+    }
+
+    /**
+     * Writes the queued appends and closes users.txt.
+     *
+     * @throws IOException If the queued appends cannot be written or the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private CompletableFuture<Void> appendUser(User user) {
+        synchronized (appendLock) {
+            return writer.append(user.getUsername() + "|" + user.getHashedPassword());
+        }
+    }
 }
@@ -0,0 +1,639 @@
+// Server class: LockerHttpServer.java
+package com.digitallocker.server;
+
+import com.digitallocker.dao.FilePage;
+import com.digitallocker.dao.UserDao;
+import com.digitallocker.model.FileMetadata;
+import com.digitallocker.model.User;
+import com.digitallocker.service.ChunkedUploadManager;
+import com.digitallocker.service.LockerService;
+import com.digitallocker.util.VirtualThreads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * HTTP front end for the LockerService, built on the JDK's {@code com.sun.net.httpserver}.
+ * <p>
+ * Endpoints:
+ * <ul>
+ *     <li>{@code POST /register} with form fields {@code username} and {@code password}</li>
+ *     <li>{@code POST /login} with HTTP Basic credentials returns a session token</li>
+ *     <li>{@code POST /logout} ends the session of the presented token</li>
+ *     <li>{@code GET /files} lists the caller's files as JSON, streamed as the locker is read;
+ *     {@code pageSize=<n>} returns one page instead, as {@code {"files":[...],"nextCursor":...}},
+ *     and {@code cursor=<nextCursor>} the page after it. One of these, with an optional
+ *     {@code limit} (default 100, at most 1000), narrows the listing instead:
+ *     {@code prefix=<text>} or {@code contains=<text>} matches filenames, ignoring case;
+ *     {@code sort=newest} or {@code sort=largest} lists the newest or largest files first;
+ *     {@code from=<millis>&to=<millis>} lists files uploaded in that range, and
+ *     {@code minSize=<bytes>&maxSize=<bytes>} files of that size, in ascending order</li>
+ *     <li>{@code POST /files?name=<filename>} uploads the request body</li>
+ *     <li>{@code GET /files/<id>} downloads a file; a single {@code Range: bytes=...} header
+ *     returns just that part with {@code 206 Partial Content}</li>
+ *     <li>{@code POST /uploads?name=<filename>&size=<bytes>&chunkSize=<bytes>} starts a chunked upload</li>
+ *     <li>{@code PUT /uploads/<uploadId>/chunks/<index>} sends one chunk, optionally with an
+ *     {@code X-Chunk-Checksum} header holding its CRC32C in hex</li>
+ *     <li>{@code GET /uploads/<uploadId>} reports the chunks still missing</li>
+ *     <li>{@code POST /uploads/<uploadId>/commit} publishes the upload as a file</li>
+ *     <li>{@code DELETE /uploads/<uploadId>} abandons the upload</li>
+ * </ul>
+ * Every endpoint except {@code /register} requires credentials: preferably {@code Authorization: Bearer <token>}
+ * with a token from {@code /login}, which is checked with one map lookup, or HTTP Basic credentials,
+ * which are re-verified on every request. Upload and download
+ * bodies are streamed straight to and from the LockerService without being buffered in memory.
+ * <p>
+ * Each request runs on its own virtual thread when the JVM supports them (Java 21+); on older
+ * JVMs a cached thread pool is used instead.
+ */
+public class LockerHttpServer {
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int DEFAULT_QUERY_LIMIT = 100;
+    private static final int MAX_QUERY_LIMIT = 1000;
+
+    private final LockerService lockerService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a LockerHttpServer bound to the given port. Call {@link #start()} to begin serving.
+     *
+     * @param lockerService The service that handles every request.
+     * @param port The TCP port to listen on.
+     * @throws IOException If the port cannot be bound.
+     */
+    public LockerHttpServer(LockerService lockerService, int port) throws IOException {
+        this.lockerService = lockerService;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = VirtualThreads.newPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/register", this::handleRegister);
+        server.createContext("/login", this::handleLogin);
+        server.createContext("/logout", this::handleLogout);
+        server.createContext("/files", this::handleFiles);
+        server.createContext("/uploads", this::handleUploads);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to the given delay for running exchanges, and stops the executor.
+     *
+     * @param delaySeconds The maximum time to wait for running exchanges to finish.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleRegister(HttpExchange exchange) throws IOException {
+        try {
+            if (!requireMethod(exchange, "POST")) {
+                return;
+            }
+            Map<String, String> form = parseForm(readSmallBody(exchange.getRequestBody()));
+            String username = form.getOrDefault("username", "");
+            String password = form.getOrDefault("password", "");
+            // Basic input validation for username and password, as in the console app.
+            if (username.trim().isEmpty() || password.trim().isEmpty()) {
+                sendError(exchange, 400, "Username and password cannot be empty.");
+                return;
+            }
+            if (!UserDao.isValidUsername(username)) {
+                sendError(exchange, 400, "Username contains invalid characters or is reserved.");
+                return;
+            }
+            if (lockerService.registerUser(username, password)) {
+                sendJson(exchange, 201, "{\"username\":" + quote(username) + "}");
+            } else {
+                sendError(exchange, 409, "Username already exists.");
+            }
+        } catch (RejectedExecutionException e) {
+            sendBusy(exchange);
+        } catch (IOException e) {
+            sendServerError(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleLogin(HttpExchange exchange) throws IOException {
+        try {
+            if (!requireMethod(exchange, "POST")) {
+                return;
+            }
+            String[] credentials = parseBasicCredentials(exchange);
+            String token = credentials == null ? null : lockerService.login(credentials[0], credentials[1]);
+            if (token == null) {
+                sendUnauthorized(exchange);
+                return;
+            }
+            sendJson(exchange, 200, "{\"username\":" + quote(credentials[0]) + ",\"token\":" + quote(token) + "}");
+        } catch (RejectedExecutionException e) {
+            sendBusy(exchange);
+        } catch (IOException e) {
+            sendServerError(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleLogout(HttpExchange exchange) throws IOException {
+        try {
+            if (!requireMethod(exchange, "POST")) {
+                return;
+            }
+            if (lockerService.logout(parseBearerToken(exchange))) {
+                sendJson(exchange, 200, "{}");
+            } else {
+                sendUnauthorized(exchange);
+            }
+        } catch (RejectedExecutionException e) {
+            sendBusy(exchange);
+        } catch (IOException e) {
+            sendServerError(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleFiles(HttpExchange exchange) throws IOException {
+        try {
+            User user = authenticate(exchange);
+            if (user == null) {
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/files") || path.equals("/files/")) {
+                if (method.equals("GET")) {
+                    listFiles(exchange, user);
+                } else if (method.equals("POST")) {
+                    uploadFile(exchange, user);
+                } else {
+                    sendError(exchange, 405, "Method not allowed.");
+                }
+            } else if (method.equals("GET")) {
+                downloadFile(exchange, user, path.substring("/files/".length()));
+            } else {
+                sendError(exchange, 405, "Method not allowed.");
+            }
+        } catch (IllegalArgumentException e) {
+            // A download checks the file before sending headers; anything later can only cut the body short.
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 404, e.getMessage());
+            }
+        } catch (RejectedExecutionException e) {
+            sendBusy(exchange);
+        } catch (IOException e) {
+            sendServerError(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleUploads(HttpExchange exchange) throws IOException {
+        try {
+            User user = authenticate(exchange);
+            if (user == null) {
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            String[] segments = exchange.getRequestURI().getPath().replaceAll("^/uploads/?|/$", "").split("/");
+            if (segments.length == 1 && segments[0].isEmpty() && method.equals("POST")) {
+                beginUpload(exchange, user);
+            } else if (segments.length == 1 && method.equals("GET")) {
+                sendUploadStatus(exchange, 200, lockerService.getUpload(user, segments[0]));
+            } else if (segments.length == 1 && method.equals("DELETE")) {
+                lockerService.abortUpload(user, segments[0]);
+                sendJson(exchange, 200, "{}");
+            } else if (segments.length == 2 && segments[1].equals("commit") && method.equals("POST")) {
+                FileMetadata metadata = lockerService.commitUpload(user, segments[0]);
+                sendJson(exchange, 201, appendFileJson(new StringBuilder(), metadata).toString());
+            } else if (segments.length == 3 && segments[1].equals("chunks") && method.equals("PUT")) {
+                int chunkIndex = Integer.parseInt(segments[2]);
+                String checksum = lockerService.putUploadChunk(user, segments[0], chunkIndex,
+                        Channels.newChannel(exchange.getRequestBody()),
+                        exchange.getRequestHeaders().getFirst("X-Chunk-Checksum"));
+                sendJson(exchange, 200, "{\"chunk\":" + chunkIndex + ",\"checksum\":" + quote(checksum) + "}");
+            } else {
+                sendError(exchange, 404, "Not found.");
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            sendError(exchange, 409, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            sendBusy(exchange);
+        } catch (IOException e) {
+            sendServerError(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void beginUpload(HttpExchange exchange, User user) throws IOException {
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        String name = query.get("name");
+        if (name == null || name.isBlank() || !isSafeName(name) || query.get("size") == null || query.get("chunkSize") == null) {
+            sendError(exchange, 400, "Valid 'name', 'size' and 'chunkSize' query parameters are required.");
+            return;
+        }
+        String uploadId = lockerService.beginUpload(user, name, Long.parseLong(query.get("size")),
+                Integer.parseInt(query.get("chunkSize")));
+        sendUploadStatus(exchange, 201, lockerService.getUpload(user, uploadId));
+    }
+
+    private static void sendUploadStatus(HttpExchange exchange, int status, ChunkedUploadManager.Upload upload) throws IOException {
+        StringBuilder json = new StringBuilder("{\"uploadId\":").append(quote(upload.getUploadId()))
+                .append(",\"chunkCount\":").append(upload.getChunkCount())
+                .append(",\"missingChunks\":[");
+        List<Integer> missing = upload.getMissingChunks();
+        for (int i = 0; i < missing.size(); i++) {
+            json.append(i > 0 ? "," : "").append(missing.get(i));
+        }
+        sendJson(exchange, status, json.append("]}").toString());
+    }
+
+    private void listFiles(HttpExchange exchange, User user) throws IOException {
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        if (query.isEmpty()) {
+            streamFileList(exchange, user);
+            return;
+        }
+        if (query.containsKey("pageSize") || query.containsKey("cursor")) {
+            listFilesPage(exchange, user, query);
+            return;
+        }
+        List<FileMetadata> files;
+        try {
+            files = queryFiles(user, query);
+        } catch (NumberFormatException e) {
+            files = null;
+        }
+        if (files == null) {
+            sendError(exchange, 400, "Give exactly one of 'prefix', 'contains', 'sort' (newest or largest), "
+                    + "'from'/'to' or 'minSize'/'maxSize', as whole numbers where numeric, and a 'limit' from 1 to "
+                    + MAX_QUERY_LIMIT + ".");
+            return;
+        }
+        sendJson(exchange, 200, appendFilesJson(new StringBuilder(64 + files.size() * 128), files).toString());
+    }
+
+    /**
+     * Sends the whole locker as a JSON array, written as the listing is read, so the response is
+     * never held in memory.
+     */
+    private void streamFileList(HttpExchange exchange, User user) throws IOException {
+        try (Stream<FileMetadata> files = lockerService.streamFiles(user)) {
+            exchange.getResponseHeaders().set("Content-Type", JSON);
+            exchange.sendResponseHeaders(200, 0); // Chunked, since the length is not known in advance.
+            try (Writer body = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                StringBuilder json = new StringBuilder(256).append('[');
+                Iterator<FileMetadata> iterator = files.iterator();
+                while (iterator.hasNext()) {
+                    appendFileJson(json, iterator.next());
+                    if (iterator.hasNext()) {
+                        json.append(',');
+                    }
+                    body.append(json);
+                    json.setLength(0);
+                }
+                body.append(json.append(']'));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void listFilesPage(HttpExchange exchange, User user, Map<String, String> query) throws IOException {
+        int pageSize;
+        try {
+            pageSize = query.containsKey("pageSize") ? Integer.parseInt(query.get("pageSize")) : DEFAULT_QUERY_LIMIT;
+        } catch (NumberFormatException e) {
+            pageSize = -1;
+        }
+        if (pageSize <= 0 || pageSize > MAX_QUERY_LIMIT) {
+            sendError(exchange, 400, "A 'pageSize' from 1 to " + MAX_QUERY_LIMIT + " is required.");
+            return;
+        }
+        FilePage page;
+        try {
+            page = lockerService.listFilesPage(user, query.get("cursor"), pageSize);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage()); // A malformed or expired cursor.
+            return;
+        }
+        StringBuilder json = new StringBuilder(64 + page.getFiles().size() * 128).append("{\"files\":");
+        appendFilesJson(json, page.getFiles()).append(",\"nextCursor\":")
+                .append(page.getNextCursor() == null ? "null" : quote(page.getNextCursor())).append('}');
+        sendJson(exchange, 200, json.toString());
+    }
+
+    /**
+     * Runs the query the parameters of {@code GET /files} ask for.
+     *
+     * @return The files, or null if the parameters are invalid.
+     * @throws NumberFormatException If a numeric parameter is not a number.
+     */
+    private List<FileMetadata> queryFiles(User user, Map<String, String> query) throws IOException {
+        String prefix = query.get("prefix");
+        String contains = query.get("contains");
+        String sort = query.get("sort");
+        boolean byDate = query.containsKey("from") || query.containsKey("to");
+        boolean bySize = query.containsKey("minSize") || query.containsKey("maxSize");
+        int selectors = (prefix != null ? 1 : 0) + (contains != null ? 1 : 0) + (sort != null ? 1 : 0)
+                + (byDate ? 1 : 0) + (bySize ? 1 : 0);
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_QUERY_LIMIT;
+        // The whole locker is only ever streamed (plain GET /files), never collected under a limit it would ignore.
+        if (selectors != 1 || limit <= 0 || limit > MAX_QUERY_LIMIT) {
+            return null;
+        }
+        if (prefix != null || contains != null) {
+            return lockerService.searchFiles(user, prefix != null ? prefix : contains, prefix != null, limit);
+        }
+        if (sort != null) {
+            switch (sort) {
+                case "newest":
+                    return lockerService.listNewestFiles(user, limit);
+                case "largest":
+                    return lockerService.listLargestFiles(user, limit);
+                default:
+                    return null;
+            }
+        }
+        if (byDate) {
+            return lockerService.listFilesUploadedBetween(user, parseLong(query.get("from"), Long.MIN_VALUE),
+                    parseLong(query.get("to"), Long.MAX_VALUE), false, limit);
+        }
+        return lockerService.listFilesSizedBetween(user, parseLong(query.get("minSize"), 0),
+                parseLong(query.get("maxSize"), Long.MAX_VALUE), false, limit);
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    private void uploadFile(HttpExchange exchange, User user) throws IOException {
+        String name = parseForm(exchange.getRequestURI().getRawQuery()).get("name");
+        if (name == null || name.isBlank() || !isSafeName(name)) {
+            sendError(exchange, 400, "A valid 'name' query parameter is required.");
+            return;
+        }
+        FileMetadata metadata = lockerService.uploadFile(user, name, Channels.newChannel(exchange.getRequestBody()));
+        sendJson(exchange, 201, appendFileJson(new StringBuilder(), metadata).toString());
+    }
+
+    private void downloadFile(HttpExchange exchange, User user, String fileId) throws IOException {
+        FileMetadata metadata = lockerService.getFile(user, fileId);
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().set("Content-Disposition",
+                "attachment; filename=\"" + metadata.getOriginalFilename().replace("\"", "") + "\"");
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        long fileSize = metadata.getFileSize();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        long[] bounds = range == null ? null : parseRange(range, fileSize);
+        if (bounds == null) {
+            exchange.sendResponseHeaders(200, fileSize == 0 ? -1 : fileSize);
+            try (OutputStream body = exchange.getResponseBody()) {
+                lockerService.downloadFile(user, fileId, Channels.newChannel(body));
+            }
+        } else if (bounds.length == 0) {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + fileSize);
+            sendError(exchange, 416, "Requested range not satisfiable.");
+        } else {
+            long length = bounds[1] - bounds[0] + 1;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + fileSize);
+            exchange.sendResponseHeaders(206, length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                lockerService.downloadRange(user, fileId, bounds[0], length, body);
+            }
+        }
+    }
+
+    /**
+     * Parses a single-range {@code Range} header ({@code bytes=a-b}, {@code bytes=a-} or
+     * {@code bytes=-n}) against a file of the given size.
+     *
+     * @return The inclusive first and last byte positions; an empty array if the range cannot be
+     * satisfied; or null if the header should be ignored and the whole file sent, which is what
+     * happens for multiple ranges and for headers that do not parse.
+     */
+    private static long[] parseRange(String header, long fileSize) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        long first;
+        long last;
+        try {
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return suffix == 0 ? new long[0] : null;
+                }
+                first = Math.max(0, fileSize - suffix);
+                last = fileSize - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, dash));
+                last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                if (last < first) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (first < 0 || first >= fileSize) {
+            return new long[0];
+        }
+        return new long[] {first, Math.min(last, fileSize - 1)};
+    }
+
+    /**
+     * Checks the request's session token or HTTP Basic credentials, sending a 401 response if
+     * they are missing or wrong.
+     *
+     * @return The authenticated user, or null if a 401 response has been sent.
+     */
+    private User authenticate(HttpExchange exchange) throws IOException {
+        User user = null;
+        String token = parseBearerToken(exchange);
+        if (token != null) {
+            user = lockerService.findSessionUser(token);
+        } else {
+            String[] credentials = parseBasicCredentials(exchange);
+            if (credentials != null) {
+                user = lockerService.authenticateUser(credentials[0], credentials[1]);
+            }
+        }
+        if (user == null) {
+            sendUnauthorized(exchange);
+        }
+        return user;
+    }
+
+    private static String parseBearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header != null && header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return header.substring(7).trim();
+        }
+        return null;
+    }
+
+    /**
+     * @return The username and password from an HTTP Basic header, or null if there is none.
+     */
+    private static String[] parseBasicCredentials(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) {
+            return null;
+        }
+        try {
+            String credentials = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+            int colon = credentials.indexOf(':');
+            return colon > 0 ? new String[] {credentials.substring(0, colon), credentials.substring(colon + 1)} : null;
+        } catch (IllegalArgumentException e) {
+            return null; // Malformed Base64; treated as missing credentials.
+        }
+    }
+
+    private static void sendUnauthorized(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"digital-locker\"");
+        sendError(exchange, 401, "Invalid or expired credentials.");
+    }
+
+    private static boolean requireMethod(HttpExchange exchange, String method) throws IOException {
+        if (exchange.getRequestMethod().equals(method)) {
+            return true;
+        }
+        sendError(exchange, 405, "Method not allowed.");
+        return false;
+    }
+
+    /**
+     * Names end up in pipe-delimited metadata and in paths, so reject delimiters and separators.
+     */
+    private static boolean isSafeName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '|' || c == '/' || c == '\\' || c < ' ') {
+                return false;
+            }
+        }
+        return !name.equals(".") && !name.equals("..");
+    }
+
+    private static StringBuilder appendFilesJson(StringBuilder json, List<FileMetadata> files) {
+        json.append('[');
+        for (int i = 0; i < files.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendFileJson(json, files.get(i));
+        }
+        return json.append(']');
+    }
+
+    private static StringBuilder appendFileJson(StringBuilder json, FileMetadata file) {
+        return json.append("{\"id\":").append(quote(file.getId()))
+                .append(",\"originalFilename\":").append(quote(file.getOriginalFilename()))
+                .append(",\"uploadDate\":").append(quote(file.getFormattedUploadDate()))
+                .append(",\"uploadTime\":").append(file.getUploadDate())
+                .append(",\"fileSize\":").append(file.getFileSize())
+                .append('}');
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static Map<String, String> parseForm(String encoded) {
+        Map<String, String> values = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return values;
+        }
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            values.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    // Form bodies are tiny; cap them so a client cannot make us buffer an arbitrary amount.
+    private static String readSmallBody(InputStream body) throws IOException {
+        byte[] bytes = body.readNBytes(8 * 1024);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":" + quote(message) + "}");
+    }
+
+    /**
+     * Tells the client that password checks are saturated and it should retry shortly.
+     */
+    private static void sendBusy(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendError(exchange, 503, "Server busy. Please retry.");
+    }
+
+    private static void sendServerError(HttpExchange exchange, IOException e) throws IOException {
+        System.err.println("Error handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + e.getMessage());
+        // Headers may already be sent if the failure happened while streaming a body.
+        if (exchange.getResponseCode() == -1) {
+            sendError(exchange, 500, "Internal server error.");
+        }
+    }
+}
@@ -0,0 +1,436 @@
+// Service class: ChunkedUploadManager.java
+package com.digitallocker.service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Staging area for chunked, resumable uploads.
+ * <p>
+ * Each upload gets a directory under the staging root holding a data file, into which chunks are
+ * written at their own offsets, and a manifest. The manifest starts with the upload's owner,
+ * filename, total size and chunk size, and gains a {@code chunk|<index>|<crc32c>} line once a chunk
+ * has been fully written, checked and forced to disk. Chunks can therefore arrive in any order and
+ * in parallel, and after an interruption or restart the client only resends the chunks the manifest
+ * does not list.
+ * <p>
+ * Resending a chunk that was already received first records a {@code drop|<index>} line, so the
+ * chunk counts as missing until its new bytes have been checked; a short or corrupt resend leaves it
+ * to be sent again rather than listed over damaged bytes. Committing re-reads every chunk against its
+ * recorded CRC32C while holding the upload exclusively, so bytes damaged on disk, or by a resend
+ * interrupted by a crash, are caught before they are published.
+ */
+public class ChunkedUploadManager {
+    public static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final String MANIFEST = "manifest";
+    private static final String DATA = "data";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path stagingRoot;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>(); // Uploads loaded in this process.
+
+    /**
+     * Constructs a ChunkedUploadManager.
+     *
+     * @param stagingRoot The directory that holds one subdirectory per upload in progress.
+     * @throws IOException If the staging root cannot be created.
+     */
+    public ChunkedUploadManager(Path stagingRoot) throws IOException {
+        this.stagingRoot = stagingRoot;
+        Files.createDirectories(stagingRoot);
+    }
+
+    /**
+     * Starts a new upload and persists its manifest.
+     *
+     * @param username The owner of the upload.
+     * @param originalFilename The name the file will be listed under.
+     * @param totalSize The total size of the file in bytes.
+     * @param chunkSize The size of every chunk except possibly the last.
+     * @return The upload's ID.
+     * @throws IOException If the staging files cannot be created.
+     */
+    public String begin(String username, String originalFilename, long totalSize, int chunkSize) throws IOException {
+        if (totalSize < 0 || chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Invalid upload size or chunk size.");
+        }
+        String uploadId = UUID.randomUUID().toString();
+        Path directory = Files.createDirectories(stagingRoot.resolve(uploadId));
+        try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve(MANIFEST))) {
+            writer.write("username|" + username);
+            writer.newLine();
+            writer.write("filename|" + originalFilename);
+            writer.newLine();
+            writer.write("size|" + totalSize);
+            writer.newLine();
+            writer.write("chunkSize|" + chunkSize);
+            writer.newLine();
+        }
+        Files.createFile(directory.resolve(DATA));
+        uploads.put(uploadId, new Upload(uploadId, directory, username, originalFilename, totalSize, chunkSize, new HashMap<>()));
+        return uploadId;
+    }
+
+    /**
+     * Writes one chunk of an upload. Chunks may be written in any order and from several threads at once.
+     * Rewriting a chunk that was already received replaces it; the chunk counts as missing until the
+     * new bytes have been received in full and checked.
+     *
+     * @param username The user writing the chunk; must own the upload.
+     * @param uploadId The upload's ID.
+     * @param chunkIndex The zero-based index of the chunk.
+     * @param content A channel supplying exactly the chunk's bytes.
+     * @param expectedChecksum The CRC32C of the chunk as hex, or null to skip the check.
+     * @return The CRC32C of the received chunk as hex.
+     * @throws IOException If an I/O error occurs, or the content is not exactly the chunk's length.
+     * @throws IllegalArgumentException If the upload or chunk index is unknown, or the checksum does not match.
+     * @throws IllegalStateException If the same chunk is being written by another request.
+     */
+    public String putChunk(String username, String uploadId, int chunkIndex, ReadableByteChannel content,
+                           String expectedChecksum) throws IOException {
+        Upload upload = getUpload(username, uploadId);
+        if (chunkIndex < 0 || chunkIndex >= upload.getChunkCount()) {
+            throw new IllegalArgumentException("Chunk " + chunkIndex + " is out of range.");
+        }
+        long offset = (long) chunkIndex * upload.chunkSize;
+        long length = Math.min(upload.chunkSize, upload.totalSize - offset);
+
+        Lock lock = upload.lock.readLock(); // Shared with other chunks, exclusive of a commit.
+        lock.lock();
+        try {
+            upload.startChunk(chunkIndex);
+            try {
+                return writeChunk(upload, chunkIndex, offset, length, content, expectedChecksum);
+            } finally {
+                upload.finishChunk(chunkIndex);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String writeChunk(Upload upload, int chunkIndex, long offset, long length,
+                                     ReadableByteChannel content, String expectedChecksum) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(length, 1)));
+        try (FileChannel out = FileChannel.open(upload.directory.resolve(DATA), StandardOpenOption.WRITE)) {
+            long written = 0;
+            while (written < length) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - written));
+                if (content.read(buffer) < 0) {
+                    throw new IOException("Chunk " + chunkIndex + " ended after " + written + " of " + length + " bytes.");
+                }
+                buffer.flip();
+                crc.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    written += out.write(buffer, offset + written);
+                }
+            }
+            buffer.clear().limit(1);
+            if (content.read(buffer) > 0) {
+                throw new IOException("Chunk " + chunkIndex + " is longer than " + length + " bytes.");
+            }
+            out.force(false);
+        }
+
+        String checksum = Long.toHexString(crc.getValue());
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            throw new IllegalArgumentException("Checksum mismatch for chunk " + chunkIndex + ".");
+        }
+        upload.recordChunk(chunkIndex, checksum);
+        return checksum;
+    }
+
+    /**
+     * Returns the state of an upload, including which chunks are still missing.
+     *
+     * @param username The user asking; must own the upload.
+     * @param uploadId The upload's ID.
+     * @return The upload's current state.
+     * @throws IOException If the manifest cannot be read.
+     * @throws IllegalArgumentException If the upload is unknown or owned by someone else.
+     */
+    public Upload getUpload(String username, String uploadId) throws IOException {
+        Upload upload = uploads.get(uploadId);
+        if (upload == null) {
+            upload = loadUpload(uploadId);
+        }
+        if (upload == null || !upload.username.equals(username)) {
+            throw new IllegalArgumentException("Upload " + uploadId + " not found.");
+        }
+        return upload;
+    }
+
+    /**
+     * Removes an upload and its staging files, whether it was committed or abandoned. Waits for chunk
+     * writes in progress; chunks sent afterwards are rejected as for an unknown upload.
+     *
+     * @param uploadId The upload's ID.
+     * @throws IOException If the staging files cannot be deleted.
+     */
+    public void remove(String uploadId) throws IOException {
+        Upload upload = uploads.get(uploadId);
+        Lock lock = upload != null ? upload.lock.writeLock() : null;
+        if (lock != null) {
+            lock.lock();
+        }
+        try {
+            if (upload != null) {
+                upload.markRemoved();
+            }
+            uploads.remove(uploadId);
+            Path directory = stagingRoot.resolve(uploadId);
+            if (!Files.exists(directory)) {
+                return;
+            }
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Loads an upload's manifest from disk, e.g. after a restart.
+     *
+     * @return The upload, or null if there is no such upload.
+     */
+    private Upload loadUpload(String uploadId) throws IOException {
+        // Upload IDs are UUIDs; anything else must not be resolved against the staging root.
+        try {
+            UUID.fromString(uploadId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        Path directory = stagingRoot.resolve(uploadId);
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return null;
+        }
+
+        Map<String, String> header = new HashMap<>();
+        Map<Integer, String> chunks = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Header values run to the end of the line, so a filename may itself contain '|'.
+                String[] parts = line.split("\\|", 2);
+                if (parts.length < 2) {
+                    continue;
+                }
+                if (parts[0].equals("chunk")) {
+                    String[] chunk = parts[1].split("\\|", 2);
+                    if (chunk.length == 2) {
+                        chunks.put(Integer.parseInt(chunk[0]), chunk[1]);
+                    }
+                } else if (parts[0].equals("drop")) {
+                    chunks.remove(Integer.parseInt(parts[1]));
+                } else {
+                    header.put(parts[0], parts[1]);
+                }
+                // A torn last line from a crash is ignored; that chunk is simply resent.
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupted upload manifest " + manifest + ".", e);
+        }
+        try {
+            Upload upload = new Upload(uploadId, directory, header.get("username"), header.get("filename"),
+                    Long.parseLong(header.get("size")), Integer.parseInt(header.get("chunkSize")), chunks);
+            Upload existing = uploads.putIfAbsent(uploadId, upload);
+            return existing != null ? existing : upload;
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IOException("Corrupted upload manifest " + manifest + ".", e);
+        }
+    }
+
+    /**
+     * One upload in progress. Chunk bookkeeping synchronizes on the instance; chunk writes share
+     * {@link #commitLock()}'s read side, so a commit holding it sees no chunk change under it.
+     */
+    public static class Upload {
+        private final String uploadId;
+        private final Path directory;
+        private final String username;
+        private final String originalFilename;
+        private final long totalSize;
+        private final int chunkSize;
+        private final Map<Integer, String> chunkChecksums; // Received chunks and their CRC32C.
+        private final List<Integer> chunksInProgress = new ArrayList<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean removed;
+
+        Upload(String uploadId, Path directory, String username, String originalFilename, long totalSize,
+               int chunkSize, Map<Integer, String> chunkChecksums) {
+            this.uploadId = uploadId;
+            this.directory = directory;
+            this.username = username;
+            this.originalFilename = originalFilename;
+            this.totalSize = totalSize;
+            this.chunkSize = chunkSize;
+            this.chunkChecksums = chunkChecksums;
+        }
+
+        public String getUploadId() {
+            return uploadId;
+        }
+
+        public String getOriginalFilename() {
+            return originalFilename;
+        }
+
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public int getChunkCount() {
+            // An empty file is uploaded as a single empty chunk.
+            return (int) Math.max(1, (totalSize + chunkSize - 1) / chunkSize);
+        }
+
+        /**
+         * @return The indexes of chunks not yet received, in ascending order.
+         */
+        public synchronized List<Integer> getMissingChunks() {
+            List<Integer> missing = new ArrayList<>();
+            for (int i = 0; i < getChunkCount(); i++) {
+                if (!chunkChecksums.containsKey(i)) {
+                    missing.add(i);
+                }
+            }
+            return missing;
+        }
+
+        public synchronized boolean isComplete() {
+            return chunkChecksums.size() == getChunkCount();
+        }
+
+        /**
+         * @return The assembled data file; complete once {@link #isComplete()} is true.
+         */
+        public Path getDataFile() {
+            return directory.resolve(DATA);
+        }
+
+        /**
+         * @return The lock a commit holds while it checks and publishes the data file; no chunk is
+         *         written while it is held.
+         */
+        Lock commitLock() {
+            return lock.writeLock();
+        }
+
+        /**
+         * Re-reads every chunk of the data file and compares it with the CRC32C recorded when it was
+         * received. Chunks that no longer match are dropped, to be sent again. Call while holding
+         * {@link #commitLock()}.
+         *
+         * @throws IOException If the data file cannot be read.
+         * @throws IllegalArgumentException If the upload has been removed.
+         * @throws IllegalStateException If any chunk is missing or no longer matches its checksum.
+         */
+        synchronized void verifyComplete() throws IOException {
+            if (removed) {
+                throw new IllegalArgumentException("Upload " + uploadId + " not found.");
+            }
+            if (isComplete()) {
+                ByteBuffer buffer = ByteBuffer.allocate(Math.min(BUFFER_SIZE, Math.max(chunkSize, 1)));
+                try (FileChannel in = FileChannel.open(getDataFile(), StandardOpenOption.READ)) {
+                    for (int i = 0; i < getChunkCount(); i++) {
+                        long offset = (long) i * chunkSize;
+                        if (!checksumOf(in, buffer, offset, Math.min(chunkSize, totalSize - offset)).equals(chunkChecksums.get(i))) {
+                            dropChunk(i);
+                        }
+                    }
+                }
+            }
+            if (!isComplete()) {
+                throw new IllegalStateException("Upload " + uploadId + " is missing chunks " + getMissingChunks() + ".");
+            }
+        }
+
+        private static String checksumOf(FileChannel in, ByteBuffer buffer, long offset, long length) throws IOException {
+            CRC32C crc = new CRC32C();
+            long read = 0;
+            while (read < length) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - read));
+                int n = in.read(buffer, offset + read);
+                if (n < 0) {
+                    return ""; // The data file is short; no recorded checksum matches.
+                }
+                buffer.flip();
+                crc.update(buffer);
+                read += n;
+            }
+            return Long.toHexString(crc.getValue());
+        }
+
+        /**
+         * Claims a chunk for writing, dropping it first if it was already received so its old entry
+         * never stands for bytes being overwritten.
+         */
+        private synchronized void startChunk(int chunkIndex) throws IOException {
+            if (removed) {
+                throw new IllegalArgumentException("Upload " + uploadId + " not found.");
+            }
+            if (chunksInProgress.contains(chunkIndex)) {
+                throw new IllegalStateException("Chunk " + chunkIndex + " is already being written.");
+            }
+            if (chunkChecksums.containsKey(chunkIndex)) {
+                dropChunk(chunkIndex);
+            }
+            chunksInProgress.add(chunkIndex);
+        }
+
+        private synchronized void finishChunk(int chunkIndex) {
+            chunksInProgress.remove(Integer.valueOf(chunkIndex));
+        }
+
+        private synchronized void markRemoved() {
+            removed = true;
+        }
+
+        private synchronized void dropChunk(int chunkIndex) throws IOException {
+            appendManifest("drop|" + chunkIndex);
+            chunkChecksums.remove(chunkIndex);
+        }
+
+        private synchronized void recordChunk(int chunkIndex, String checksum) throws IOException {
+            appendManifest("chunk|" + chunkIndex + "|" + checksum);
+            chunkChecksums.put(chunkIndex, checksum);
+        }
+
+        private void appendManifest(String line) throws IOException {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(directory.resolve(MANIFEST).toFile(), true))) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+}
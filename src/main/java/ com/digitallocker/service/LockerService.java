@@ -1,49 +1,212 @@
 // Service class: LockerService.java
 package com.digitallocker.service;
 
+import com.digitallocker.dao.DurabilityPolicy;
 import com.digitallocker.dao.FileDao;
+import com.digitallocker.dao.FilePage;
+import com.digitallocker.dao.MetadataCache;
+import com.digitallocker.dao.MetadataCompactor;
+import com.digitallocker.dao.MetadataRecovery;
 import com.digitallocker.dao.UserDao;
 import com.digitallocker.model.FileMetadata;
 import com.digitallocker.model.User;
-import com.digitallocker.util.PasswordHasher;
+import com.digitallocker.storage.BlobCodec;
+import com.digitallocker.storage.BlobLayout;
+import com.digitallocker.storage.BlobStore;
+import com.digitallocker.storage.CompressionPolicy;
+import com.digitallocker.storage.DataKey;
+import com.digitallocker.storage.KeyManager;
+import com.digitallocker.storage.SegmentedCipher;
+import com.digitallocker.storage.StreamingCompressor;
+import com.digitallocker.util.CopyEngine;
+import com.digitallocker.util.StripedLockManager;
+import com.digitallocker.util.VirtualThreads;
 
+import javax.crypto.SecretKey;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
 
 /**
  * Service layer for the Digital Locker System.
  * Handles business logic, orchestrates DAO operations, and enforces access control.
+ * <p>
+ * Operations on one user's locker are coordinated through a striped read/write lock keyed by
+ * username: listings and lookups take the read lock and run in parallel, metadata changes take
+ * the write lock and are serialized, and different users do not contend. File content is copied
+ * outside the lock.
  */
-public class LockerService {
+public class LockerService implements Closeable {
     private final UserDao userDao;
     private final FileDao fileDao;
+    // Directory under the data directory that holds deduplicated file content.
+    private static final String BLOB_DIRECTORY = ".blobs";
+    // Directory under the data directory that holds chunked uploads in progress.
+    private static final String UPLOAD_STAGING_DIRECTORY = ".uploads";
+    // Files copied at once by uploadAll unless the caller chooses otherwise.
+    public static final int DEFAULT_UPLOAD_CONCURRENCY = 16;
+    // Blobs moved at once by migrateBlobLayout unless the caller chooses otherwise.
+    public static final int DEFAULT_MIGRATION_PARALLELISM = 16;
+
     private final String dataDirectory; // Base directory for all data (users.txt, user files)
+    private final CopyEngine copyEngine; // Moves file content on upload and download.
+    private final BlobStore blobStore;   // Deduplicated content shared by all users.
+    private final ChunkedUploadManager chunkedUploads; // Staging for resumable uploads.
+    private final StripedLockManager userLocks = new StripedLockManager(); // Per-user read/write locks.
+    private final SessionManager sessionManager = new SessionManager(); // Tokens issued after login.
+    private final PasswordService passwordService; // Hashes and verifies passwords on a bounded pool.
+    private final CompressionPolicy compressionPolicy; // Chooses the Deflater level for each upload.
+    private final KeyManager keyManager; // Per-user data keys for encryption at rest, or null if disabled.
+    private volatile boolean legacyFilesRemain; // true while files uploaded before the blob store may be in user directories.
 
     /**
-     * Constructs a LockerService.
+     * Constructs a LockerService with a zero-copy CopyEngine.
      *
      * @param dataDirectory The base directory where all application data is stored.
      */
     public LockerService(String dataDirectory) {
+        this(dataDirectory, new CopyEngine());
+    }
+
+    /**
+     * Constructs a LockerService.
+     *
+     * @param dataDirectory The base directory where all application data is stored.
+     * @param copyEngine The engine used to copy file content on upload and download.
+     */
+    public LockerService(String dataDirectory, CopyEngine copyEngine) {
+        this(dataDirectory, copyEngine, new PasswordService());
+    }
+
+    /**
+     * Constructs a LockerService.
+     *
+     * @param dataDirectory The base directory where all application data is stored.
+     * @param copyEngine The engine used to copy file content on upload and download.
+     * @param passwordService The service that hashes and verifies passwords.
+     */
+    public LockerService(String dataDirectory, CopyEngine copyEngine, PasswordService passwordService) {
+        this(dataDirectory, copyEngine, passwordService, CompressionPolicy.disabled());
+    }
+
+    /**
+     * Constructs a LockerService.
+     *
+     * @param dataDirectory The base directory where all application data is stored.
+     * @param copyEngine The engine used to copy file content on upload and download.
+     * @param passwordService The service that hashes and verifies passwords.
+     * @param compressionPolicy The policy deciding which uploads are stored compressed.
+     */
+    public LockerService(String dataDirectory, CopyEngine copyEngine, PasswordService passwordService,
+                         CompressionPolicy compressionPolicy) {
+        this(dataDirectory, copyEngine, passwordService, compressionPolicy, null);
+    }
+
+    /**
+     * Constructs a LockerService.
+     *
+     * @param dataDirectory The base directory where all application data is stored.
+     * @param copyEngine The engine used to copy file content on upload and download.
+     * @param passwordService The service that hashes and verifies passwords.
+     * @param compressionPolicy The policy deciding which uploads are stored compressed.
+     * @param keyManager The source of per-user data keys to encrypt new uploads with, or null to
+     *                   store them unencrypted.
+     */
+    public LockerService(String dataDirectory, CopyEngine copyEngine, PasswordService passwordService,
+                         CompressionPolicy compressionPolicy, KeyManager keyManager) {
+        this(dataDirectory, copyEngine, passwordService, compressionPolicy, keyManager, DurabilityPolicy.none());
+    }
+
+    /**
+     * Constructs a LockerService. Metadata files left damaged by a crash are repaired before
+     * they are loaded (see {@link MetadataRecovery}).
+     *
+     * @param dataDirectory The base directory where all application data is stored.
+     * @param copyEngine The engine used to copy file content on upload and download.
+     * @param passwordService The service that hashes and verifies passwords.
+     * @param compressionPolicy The policy deciding which uploads are stored compressed.
+     * @param keyManager The source of per-user data keys to encrypt new uploads with, or null to
+     *                   store them unencrypted.
+     * @param durability When user and file metadata writes are forced to disk.
+     */
+    public LockerService(String dataDirectory, CopyEngine copyEngine, PasswordService passwordService,
+                         CompressionPolicy compressionPolicy, KeyManager keyManager, DurabilityPolicy durability) {
+        this(dataDirectory, copyEngine, passwordService, compressionPolicy, keyManager, durability, BlobLayout.defaultLayout());
+    }
+
+    /**
+     * Constructs a LockerService. Metadata files left damaged by a crash are repaired before
+     * they are loaded (see {@link MetadataRecovery}).
+     *
+     * @param dataDirectory The base directory where all application data is stored.
+     * @param copyEngine The engine used to copy file content on upload and download.
+     * @param passwordService The service that hashes and verifies passwords.
+     * @param compressionPolicy The policy deciding which uploads are stored compressed.
+     * @param keyManager The source of per-user data keys to encrypt new uploads with, or null to
+     *                   store them unencrypted.
+     * @param durability When user and file metadata writes are forced to disk.
+     * @param blobLayout How stored content is spread over directories (see {@link #migrateBlobLayout}).
+     */
+    public LockerService(String dataDirectory, CopyEngine copyEngine, PasswordService passwordService,
+                         CompressionPolicy compressionPolicy, KeyManager keyManager, DurabilityPolicy durability,
+                         BlobLayout blobLayout) {
         this.dataDirectory = dataDirectory;
-        this.userDao = new UserDao(dataDirectory);
-        this.fileDao = new FileDao(dataDirectory);
+        this.copyEngine = copyEngine;
+        this.passwordService = passwordService;
+        this.compressionPolicy = compressionPolicy;
+        this.keyManager = keyManager;
 
-        // Ensure the main data directory exists when the service is initialized.
+        // Ensure the main data directory exists before the DAOs load their files from it.
         try {
             Files.createDirectories(Paths.get(dataDirectory));
         } catch (IOException e) {
             System.err.println("Error creating base data directory: " + e.getMessage());
             // This error is critical, ideally should be handled at application startup.
         }
+
+        try {
+            MetadataRecovery.recover(Paths.get(dataDirectory));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error recovering metadata files: " + e.getMessage(), e);
+        }
+
+        this.userDao = new UserDao(dataDirectory, durability);
+        this.fileDao = new FileDao(dataDirectory, new MetadataCache(), new MetadataCompactor(), durability);
+
+        try {
+            this.blobStore = new BlobStore(Paths.get(dataDirectory, BLOB_DIRECTORY), copyEngine, blobLayout,
+                    BlobStore.DEFAULT_PACK_THRESHOLD, durability);
+            this.chunkedUploads = new ChunkedUploadManager(Paths.get(dataDirectory, UPLOAD_STAGING_DIRECTORY));
+            this.legacyFilesRemain = !listLegacyDirectories().isEmpty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening file storage: " + e.getMessage(), e);
+        }
     }
 
     /**
@@ -53,29 +216,32 @@ public class LockerService {
      * @param password The password for the new user (will be hashed).
      * @return true if registration is successful, false if the username already exists.
      * @throws IOException If an I/O error occurs during user data saving.
+     * @throws IllegalArgumentException If the username is not valid (see {@link UserDao#isValidUsername}).
+     * @throws java.util.concurrent.RejectedExecutionException If too many password operations are queued.
      */
     public boolean registerUser(String username, String password) throws IOException {
+        if (!UserDao.isValidUsername(username)) {
+            throw new IllegalArgumentException("Invalid username.");
+        }
         // Hash the password before storing it.
-        String hashedPassword = PasswordHasher.hashPassword(password);
+        String hashedPassword = passwordService.hash(password);
         User newUser = new User(username, hashedPassword);
 
-        // Attempt to save the user using the UserDao.
-        boolean saved = userDao.saveUser(newUser);
-        if (saved) {
-            // If user registered successfully, create their dedicated file directory.
-            Path userFilesDir = getUserFilesDirectory(newUser);
-            Files.createDirectories(userFilesDir);
-        }
-        return saved;
+        // Attempt to save the user using the UserDao. New content goes to the blob store, so no
+        // per-user directory is created; only files uploaded before the blob store live in one.
+        return userDao.saveUser(newUser);
     }
 
     /**
      * Authenticates a user.
+     * If the password matches a record made with an older algorithm or a lower cost, the record
+     * is replaced with a current hash.
      *
      * @param username The username to authenticate.
      * @param password The plain-text password provided by the user.
      * @return The User object if authentication is successful, null otherwise.
      * @throws IOException If an I/O error occurs during user data retrieval.
+     * @throws java.util.concurrent.RejectedExecutionException If too many password operations are queued.
      */
     public User authenticateUser(String username, String password) throws IOException {
         Optional<User> userOptional = userDao.findUserByUsername(username);
@@ -83,41 +249,343 @@ public class LockerService {
         // Check if the user exists and if the provided password matches the hashed password.
         if (userOptional.isPresent()) {
             User user = userOptional.get();
-            if (PasswordHasher.verifyPassword(password, user.getHashedPassword())) {
+            PasswordService.Verification verification = passwordService.verify(password, user.getHashedPassword());
+            if (verification.matches()) {
+                if (verification.needsRehash()) {
+                    user = upgradePasswordHash(user, password);
+                }
                 return user; // Authentication successful.
             }
         }
         return null; // Authentication failed.
     }
 
+    /**
+     * Replaces a user's stored password record with one from the current algorithm.
+     * A failure is logged and the login still succeeds with the old record.
+     */
+    private User upgradePasswordHash(User user, String password) throws IOException {
+        User upgraded = new User(user.getUsername(), passwordService.hash(password));
+        try {
+            userDao.updateUser(upgraded);
+            return upgraded;
+        } catch (IOException e) {
+            System.err.println("Warning: Could not upgrade password hash for user " + user.getUsername() + ": " + e.getMessage());
+            return user;
+        }
+    }
+
+    /**
+     * Authenticates a user and starts a session for them.
+     * Later requests can present the returned token instead of the password.
+     *
+     * @param username The username to authenticate.
+     * @param password The plain-text password provided by the user.
+     * @return The session token if authentication is successful, null otherwise.
+     * @throws IOException If an I/O error occurs during user data retrieval.
+     */
+    public String login(String username, String password) throws IOException {
+        User user = authenticateUser(username, password);
+        return user == null ? null : sessionManager.createSession(user);
+    }
+
+    /**
+     * Resolves a session token to its user without re-checking the password.
+     *
+     * @param token The session token returned by {@link #login(String, String)}.
+     * @return The session's user, or null if the token is unknown or expired.
+     */
+    public User findSessionUser(String token) {
+        return sessionManager.findUser(token);
+    }
+
+    /**
+     * Ends a session.
+     *
+     * @param token The session token returned by {@link #login(String, String)}.
+     * @return true if a session was ended, false if the token was unknown.
+     */
+    public boolean logout(String token) {
+        return sessionManager.endSession(token);
+    }
+
     /**
      * Uploads a file for the given user.
-     * Copies the file to the user's dedicated directory and stores its metadata.
+     * Stores the content in the shared blob store, where identical content is kept only once,
+     * deflated on the way in if the compression policy asks for it and the content compresses,
+     * and records the file in the user's metadata.
      *
      * @param user The user who is uploading the file.
      * @param sourceFilePath The path to the file to be uploaded.
+     * @return The metadata recorded for the uploaded file.
      * @throws IOException If an I/O error occurs during file copy or metadata saving.
      */
-    public void uploadFile(User user, Path sourceFilePath) throws IOException {
-        Path userFilesDir = getUserFilesDirectory(user);
-        Files.createDirectories(userFilesDir); // Ensure user's directory exists.
-
+    public FileMetadata uploadFile(User user, Path sourceFilePath) throws IOException {
+        // Copy the content into the blob store. The hash and size come from the copy itself.
         String originalFilename = sourceFilePath.getFileName().toString();
-        // Generate a unique filename to avoid collisions and for secure storage.
-        String storedFilename = UUID.randomUUID().toString() + "_" + originalFilename;
-        Path destinationPath = userFilesDir.resolve(storedFilename);
+        BlobStore.StoredBlob blob = blobStore.store(sourceFilePath,
+                compressionPolicy.levelFor(user.getUsername(), originalFilename), uploadKeyFor(user));
+        return recordUpload(user, originalFilename, blob);
+    }
 
-        // Copy the file to the user's directory.
-        Files.copy(sourceFilePath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Uploads content read from a channel, such as an HTTP request body, for the given user.
+     * The channel is read to end of stream but not closed.
+     *
+     * @param user The user who is uploading the file.
+     * @param originalFilename The name the file should be listed under.
+     * @param content The channel supplying the file content.
+     * @return The metadata recorded for the uploaded file.
+     * @throws IOException If an I/O error occurs during file copy or metadata saving.
+     */
+    public FileMetadata uploadFile(User user, String originalFilename, ReadableByteChannel content) throws IOException {
+        BlobStore.StoredBlob blob = blobStore.store(content,
+                compressionPolicy.levelFor(user.getUsername(), originalFilename), uploadKeyFor(user));
+        return recordUpload(user, originalFilename, blob);
+    }
 
-        // Create file metadata.
-        String fileId = UUID.randomUUID().toString(); // Unique ID for this file in the locker.
-        String uploadDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        long fileSize = Files.size(sourceFilePath);
-        FileMetadata metadata = new FileMetadata(fileId, originalFilename, storedFilename, uploadDate, fileSize);
+    /**
+     * Starts a chunked upload. The content is then sent with {@link #putUploadChunk} in any order,
+     * possibly in parallel, and published with {@link #commitUpload}. An interrupted upload can be
+     * resumed by sending the chunks {@link #getUpload} reports as missing.
+     *
+     * @param user The user who is uploading the file.
+     * @param originalFilename The name the file should be listed under.
+     * @param totalSize The total size of the file in bytes.
+     * @param chunkSize The size of every chunk except possibly the last.
+     * @return The ID of the new upload.
+     * @throws IOException If the staging files cannot be created.
+     * @throws IllegalArgumentException If the sizes are invalid.
+     */
+    public String beginUpload(User user, String originalFilename, long totalSize, int chunkSize) throws IOException {
+        return chunkedUploads.begin(user.getUsername(), originalFilename, totalSize, chunkSize);
+    }
 
-        // Save the file metadata.
-        fileDao.saveFileMetadata(user, metadata);
+    /**
+     * Writes one chunk of a chunked upload.
+     *
+     * @param user The user who started the upload.
+     * @param uploadId The ID returned by {@link #beginUpload}.
+     * @param chunkIndex The zero-based index of the chunk.
+     * @param content A channel supplying exactly the chunk's bytes.
+     * @param expectedChecksum The CRC32C of the chunk as hex, or null to skip the check.
+     * @return The CRC32C of the received chunk as hex.
+     * @throws IOException If an I/O error occurs or the content has the wrong length.
+     * @throws IllegalArgumentException If the upload or chunk is unknown or the checksum does not match.
+     */
+    public String putUploadChunk(User user, String uploadId, int chunkIndex, ReadableByteChannel content,
+                                 String expectedChecksum) throws IOException {
+        return chunkedUploads.putChunk(user.getUsername(), uploadId, chunkIndex, content, expectedChecksum);
+    }
+
+    /**
+     * Returns the state of a chunked upload, including the chunks still missing.
+     *
+     * @param user The user who started the upload.
+     * @param uploadId The ID returned by {@link #beginUpload}.
+     * @return The upload's current state.
+     * @throws IOException If the upload manifest cannot be read.
+     * @throws IllegalArgumentException If the upload is unknown.
+     */
+    public ChunkedUploadManager.Upload getUpload(User user, String uploadId) throws IOException {
+        return chunkedUploads.getUpload(user.getUsername(), uploadId);
+    }
+
+    /**
+     * Publishes a chunked upload whose chunks have all been received.
+     * Without encryption, the assembled file is moved into the blob store rather than copied, so it
+     * is stored uncompressed. With encryption, it is encrypted (and compressed) into the store.
+     *
+     * @param user The user who started the upload.
+     * @param uploadId The ID returned by {@link #beginUpload}.
+     * @return The metadata recorded for the uploaded file.
+     * @throws IOException If an I/O error occurs while storing the content or saving metadata.
+     * @throws IllegalArgumentException If the upload is unknown.
+     * @throws IllegalStateException If chunks are still missing, or no longer match the checksums
+     *                               they were received with and must be sent again.
+     */
+    public FileMetadata commitUpload(User user, String uploadId) throws IOException {
+        ChunkedUploadManager.Upload upload = chunkedUploads.getUpload(user.getUsername(), uploadId);
+        Lock commitLock = upload.commitLock(); // No chunk is rewritten while it is checked and published.
+        commitLock.lock();
+        try {
+            upload.verifyComplete();
+            BlobStore.StoredBlob blob = keyManager == null
+                    ? blobStore.adopt(upload.getDataFile())
+                    : blobStore.store(upload.getDataFile(),
+                    compressionPolicy.levelFor(user.getUsername(), upload.getOriginalFilename()), uploadKeyFor(user));
+            FileMetadata metadata = recordUpload(user, upload.getOriginalFilename(), blob);
+            chunkedUploads.remove(uploadId);
+            return metadata;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Abandons a chunked upload and deletes its staged data.
+     *
+     * @param user The user who started the upload.
+     * @param uploadId The ID returned by {@link #beginUpload}.
+     * @throws IOException If the staging files cannot be deleted.
+     * @throws IllegalArgumentException If the upload is unknown.
+     */
+    public void abortUpload(User user, String uploadId) throws IOException {
+        chunkedUploads.getUpload(user.getUsername(), uploadId);
+        chunkedUploads.remove(uploadId);
+    }
+
+    /**
+     * Uploads many files for the given user, copying them concurrently with the default
+     * concurrency on virtual threads (or a cached pool on JVMs without them).
+     *
+     * @param user The user who is uploading the files.
+     * @param sourceFilePaths The files to upload.
+     * @return One result per file, in the order given.
+     * @throws IOException If the metadata of the stored files cannot be saved.
+     * @see #uploadAll(User, Collection, ExecutorService, int)
+     */
+    public List<UploadResult> uploadAll(User user, Collection<Path> sourceFilePaths) throws IOException {
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+        try {
+            return uploadAll(user, sourceFilePaths, executor, DEFAULT_UPLOAD_CONCURRENCY);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Uploads many files for the given user. At most {@code concurrency} files are copied into the
+     * blob store at once, on the given executor; each worker takes the next file as it finishes one,
+     * so the number of tasks submitted stays bounded however many files there are. Once every copy
+     * has finished, the metadata of all stored files is saved with one append to the user's log.
+     * <p>
+     * A file that cannot be read or stored gets a failed result and does not stop the others. If the
+     * metadata cannot be saved, no file is recorded, the stored content is released, and the
+     * exception is thrown.
+     *
+     * @param user The user who is uploading the files.
+     * @param sourceFilePaths The files to upload.
+     * @param executor The executor to copy files on, e.g. virtual threads or a sized pool. It is not shut down.
+     * @param concurrency The maximum number of files copied at once.
+     * @return One result per file, in the order given.
+     * @throws IOException If the metadata cannot be saved, or the calling thread is interrupted.
+     */
+    public List<UploadResult> uploadAll(User user, Collection<Path> sourceFilePaths, ExecutorService executor,
+                                       int concurrency) throws IOException {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive.");
+        }
+        Path[] sources = sourceFilePaths.toArray(new Path[0]);
+        UploadResult[] results = new UploadResult[sources.length];
+        BlobStore.StoredBlob[] blobs = new BlobStore.StoredBlob[sources.length];
+        DataKey dataKey = uploadKeyFor(user);
+        AtomicInteger nextIndex = new AtomicInteger();
+        Runnable worker = () -> {
+            int i;
+            while ((i = nextIndex.getAndIncrement()) < sources.length) {
+                String originalFilename = sources[i].getFileName().toString();
+                try {
+                    blobs[i] = blobStore.store(sources[i], compressionPolicy.levelFor(user.getUsername(), originalFilename), dataKey);
+                    results[i] = new UploadResult(sources[i], newFileMetadata(originalFilename, blobs[i]), null);
+                } catch (IOException | RuntimeException e) {
+                    results[i] = new UploadResult(sources[i], null, e);
+                }
+            }
+        };
+
+        List<Future<?>> workers = new ArrayList<>();
+        for (int w = 0; w < Math.min(concurrency, sources.length); w++) {
+            workers.add(executor.submit(worker));
+        }
+        boolean interrupted = false;
+        for (Future<?> future : workers) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // Let the copies in progress finish, but start no more, so their blobs can be released.
+                    interrupted = true;
+                    nextIndex.set(sources.length);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Upload worker failed.", e.getCause()); // Workers catch their own exceptions.
+                }
+            }
+        }
+        if (interrupted) {
+            releaseAll(blobs);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading files.");
+        }
+
+        List<FileMetadata> stored = new ArrayList<>();
+        for (UploadResult result : results) {
+            if (result.isSuccess()) {
+                stored.add(result.getMetadata());
+            }
+        }
+        Lock lock = userLocks.lockFor(user.getUsername()).writeLock();
+        lock.lock();
+        try {
+            fileDao.saveFilesMetadata(user, stored);
+        } catch (IOException e) {
+            releaseAll(blobs);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+        return Arrays.asList(results);
+    }
+
+    private void releaseAll(BlobStore.StoredBlob[] blobs) throws IOException {
+        for (BlobStore.StoredBlob blob : blobs) {
+            if (blob != null) {
+                blobStore.release(blob.getName());
+            }
+        }
+    }
+
+    /**
+     * Returns the key to encrypt a user's new uploads with, or null if encryption is disabled.
+     */
+    private DataKey uploadKeyFor(User user) throws IOException {
+        return keyManager == null ? null : keyManager.dataKeyFor(user.getUsername());
+    }
+
+    /**
+     * Records metadata for content that has just been stored in the blob store.
+     *
+     * @param user The user who uploaded the file.
+     * @param originalFilename The name the file should be listed under.
+     * @param blob The stored content, already holding one reference for this file.
+     * @return The metadata recorded for the uploaded file.
+     * @throws IOException If an I/O error occurs during metadata saving.
+     */
+    private FileMetadata recordUpload(User user, String originalFilename, BlobStore.StoredBlob blob) throws IOException {
+        FileMetadata metadata = newFileMetadata(originalFilename, blob);
+
+        // Save the file metadata, giving the blob reference back if that fails.
+        Lock lock = userLocks.lockFor(user.getUsername()).writeLock();
+        lock.lock();
+        try {
+            fileDao.saveFileMetadata(user, metadata);
+        } catch (IOException e) {
+            blobStore.release(blob.getName());
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+        return metadata;
+    }
+
+    /**
+     * Creates the metadata for content that has just been stored in the blob store.
+     */
+    private static FileMetadata newFileMetadata(String originalFilename, BlobStore.StoredBlob blob) {
+        String fileId = UUID.randomUUID().toString(); // Unique ID for this file in the locker.
+        return new FileMetadata(fileId, originalFilename, blob.getName(), System.currentTimeMillis(), blob.getSize(),
+                blob.getHash(), blob.getCodec(), blob.getStoredSize());
     }
 
     /**
@@ -131,28 +599,203 @@ public class LockerService {
      * @throws IllegalArgumentException If the file ID is not found or not owned by the user.
      */
     public void downloadFile(User user, String fileId, Path destinationDirectory) throws IOException {
-        Optional<FileMetadata> fileMetadataOptional = fileDao.findFileById(user, fileId);
+        FileMetadata metadata = getFile(user, fileId);
 
-        if (fileMetadataOptional.isEmpty()) {
-            throw new IllegalArgumentException("File with ID " + fileId + " not found in your locker.");
+        // Construct the destination path using the original filename.
+        Path destinationPath = destinationDirectory.resolve(metadata.getOriginalFilename());
+
+        // Copy the stored file to the desired destination.
+        try (StoredFile stored = openStoredFile(user, fileId);
+             ReadableByteChannel in = stored.openContent();
+             FileChannel out = FileChannel.open(destinationPath, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            copyEngine.copy(in, out, null);
         }
+    }
 
-        FileMetadata metadata = fileMetadataOptional.get();
-        Path userFilesDir = getUserFilesDirectory(user);
-        Path sourceFilePath = userFilesDir.resolve(metadata.getStoredFilename());
+    /**
+     * Streams a stored file to a channel, such as an HTTP response body. The channel is not closed.
+     *
+     * @param user The user who is downloading the file.
+     * @param fileId The unique ID of the file to download.
+     * @param target The channel to write the file content to.
+     * @return The number of bytes written.
+     * @throws IOException If an I/O error occurs during the copy.
+     * @throws IllegalArgumentException If the file ID is not found or not owned by the user.
+     */
+    public long downloadFile(User user, String fileId, WritableByteChannel target) throws IOException {
+        try (StoredFile stored = openStoredFile(user, fileId);
+             ReadableByteChannel in = stored.openContent()) {
+            return copyEngine.copy(in, target, null).getSize();
+        }
+    }
 
-        // Construct the destination path using the original filename.
-        Path destinationPath = destinationDirectory.resolve(metadata.getOriginalFilename());
+    /**
+     * Streams part of a stored file to a channel, for resumed or parallel downloads and HTTP
+     * Range requests. Only the requested bytes are read, with positional reads, so any number of
+     * ranges of the same file can be served concurrently. Encrypted files decrypt only the segments
+     * the range touches. Compressed files are decompressed from the start and the bytes before the
+     * range are skipped. The channel is not closed.
+     *
+     * @param user The user who is downloading the file.
+     * @param fileId The unique ID of the file to download.
+     * @param offset The offset of the first byte to send.
+     * @param length The maximum number of bytes to send; fewer are sent if the file ends first.
+     * @param target The channel to write the range to.
+     * @return The number of bytes written.
+     * @throws IOException If an I/O error occurs during the copy.
+     * @throws IllegalArgumentException If the file ID is not found or not owned by the user, or
+     *                                  the offset or length is negative.
+     */
+    public long downloadRange(User user, String fileId, long offset, long length, WritableByteChannel target) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Range offset and length must not be negative.");
+        }
+        try (StoredFile stored = openStoredFile(user, fileId)) {
+            String codec = stored.metadata.getCodec();
+            if (codec == null) {
+                return copyEngine.copyRange(stored.channel, offset, length, target).getSize();
+            }
+            if (codec.equals(SegmentedCipher.CODEC)) {
+                return SegmentedCipher.copyRange(stored.channel, stored.key(), offset, length, target);
+            }
+            try (ReadableByteChannel in = stored.openContent()) {
+                return StreamingCompressor.copyRange(in, offset, length, target);
+            }
+        }
+    }
 
-        // Validate if the source file actually exists on disk.
-        if (!Files.exists(sourceFilePath)) {
-            // This indicates a discrepancy between metadata and actual files.
-            System.err.println("Warning: Stored file " + sourceFilePath + " not found on disk for metadata ID " + fileId);
-            throw new IOException("Stored file content missing. Please contact support.");
+    /**
+     * Streams part of a stored file to an output stream. The stream is not closed.
+     *
+     * @see #downloadRange(User, String, long, long, WritableByteChannel)
+     */
+    public long downloadRange(User user, String fileId, long offset, long length, OutputStream target) throws IOException {
+        return downloadRange(user, fileId, offset, length, Channels.newChannel(target));
+    }
+
+    /**
+     * Opens a stored file for reading under the user's read lock, so a concurrent delete cannot
+     * remove the content between the lookup and the open. Once open, the content stays readable
+     * for the caller even if the file is deleted afterwards.
+     *
+     * @param user The user who owns the file.
+     * @param fileId The unique ID of the file.
+     * @return The open stored file and its metadata.
+     * @throws IOException If the stored content is missing or cannot be opened.
+     * @throws IllegalArgumentException If the file ID is not found or not owned by the user.
+     */
+    private StoredFile openStoredFile(User user, String fileId) throws IOException {
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            FileMetadata metadata = getFile(user, fileId);
+            if (metadata.getStoredHash() == null) {
+                FileChannel channel = FileChannel.open(getExistingStoredFilePath(user, metadata), StandardOpenOption.READ);
+                return new StoredFile(user, metadata, channel);
+            }
+            try {
+                // Follows a blob moved by a layout migration or pack compaction; packed blobs have no file of their own.
+                return new StoredFile(user, metadata, blobStore.open(metadata.getStoredFilename()));
+            } catch (NoSuchFileException e) {
+                System.err.println("Warning: Blob " + metadata.getStoredFilename() + " not found in the blob store for metadata ID " + metadata.getId());
+                throw new IOException("Stored file content missing. Please contact support.", e);
+            }
+        } finally {
+            lock.unlock();
         }
+    }
 
-        // Copy the stored file to the desired destination.
-        Files.copy(sourceFilePath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * A stored file opened for reading, with the metadata that says how its content is encoded.
+     */
+    private class StoredFile implements Closeable {
+        private final User owner;
+        private final FileMetadata metadata;
+        private final FileChannel channel;
+
+        StoredFile(User owner, FileMetadata metadata, FileChannel channel) {
+            this.owner = owner;
+            this.metadata = metadata;
+            this.channel = channel;
+        }
+
+        /**
+         * Returns a channel of the file's original content: the stored file itself when it is
+         * stored as-is, so copies can stay zero-copy, or a decrypting and decompressing view of it.
+         */
+        ReadableByteChannel openContent() throws IOException {
+            String codec = metadata.getCodec();
+            ReadableByteChannel content = BlobCodec.isEncrypted(codec) ? SegmentedCipher.decrypt(channel, key()) : channel;
+            return StreamingCompressor.decompress(content, BlobCodec.compressionOf(codec));
+        }
+
+        SecretKey key() throws IOException {
+            if (keyManager == null) {
+                throw new IOException("File " + metadata.getId() + " is encrypted, but no master key is configured.");
+            }
+            return keyManager.dataKeyFor(owner.getUsername()).getKey();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Looks up a file in the given user's locker.
+     *
+     * @param user The user who owns the file.
+     * @param fileId The unique ID of the file.
+     * @return The file's metadata.
+     * @throws IOException If an I/O error occurs during file metadata retrieval.
+     * @throws IllegalArgumentException If the file ID is not found or not owned by the user.
+     */
+    public FileMetadata getFile(User user, String fileId) throws IOException {
+        Optional<FileMetadata> fileMetadataOptional;
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            fileMetadataOptional = fileDao.findFileById(user, fileId);
+        } finally {
+            lock.unlock();
+        }
+
+        if (fileMetadataOptional.isEmpty()) {
+            throw new IllegalArgumentException("File with ID " + fileId + " not found in your locker.");
+        }
+        return fileMetadataOptional.get();
+    }
+
+    /**
+     * Deletes a file from the given user's locker.
+     * Blob-backed content is removed once no locker references it; per-user files are removed directly.
+     *
+     * @param user The user who owns the file.
+     * @param fileId The unique ID of the file to delete.
+     * @return true if the file was deleted, false if it was not found in the user's locker.
+     * @throws IOException If an I/O error occurs while updating metadata or removing content.
+     */
+    public boolean deleteFile(User user, String fileId) throws IOException {
+        Lock lock = userLocks.lockFor(user.getUsername()).writeLock();
+        lock.lock();
+        try {
+            Optional<FileMetadata> fileMetadataOptional = fileDao.findFileById(user, fileId);
+            if (fileMetadataOptional.isEmpty() || !fileDao.deleteFileMetadata(user, fileId)) {
+                return false;
+            }
+
+            FileMetadata metadata = fileMetadataOptional.get();
+            if (metadata.getStoredHash() != null) {
+                blobStore.release(metadata.getStoredFilename());
+            } else {
+                Files.deleteIfExists(getStoredFilePath(user, metadata));
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -163,7 +806,330 @@ public class LockerService {
      * @throws IOException If an I/O error occurs during file metadata retrieval.
      */
     public List<FileMetadata> listFiles(User user) throws IOException {
-        return fileDao.getFilesMetadata(user);
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            return fileDao.getFilesMetadata(user);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lists one page of the given user's files. Pass the cursor of each page to get the next one;
+     * files added or deleted between pages do not make the listing repeat or skip other files.
+     *
+     * @param user The user for whom to list files.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @param pageSize The maximum number of files on the page.
+     * @return The page of files, in upload order, and the cursor for the next page.
+     * @throws IOException If an I/O error occurs during file metadata retrieval.
+     * @throws IllegalArgumentException If the cursor is malformed or has expired.
+     */
+    public FilePage listFilesPage(User user, String cursor, int pageSize) throws IOException {
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            return fileDao.listFilesPage(user, cursor, pageSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Streams the given user's files in upload order, reading them as the stream is consumed.
+     * Memory use does not grow with the size of the locker.
+     *
+     * @param user The user for whom to list files.
+     * @return A sequential stream of the files in the locker when this method was called.
+     * @throws IOException If an I/O error occurs while opening the file metadata.
+     */
+    public Stream<FileMetadata> streamFiles(User user) throws IOException {
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            return fileDao.streamFiles(user);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Searches the given user's files by original filename, ignoring case.
+     *
+     * @param user The user whose files to search.
+     * @param query The text to look for.
+     * @param prefixOnly true to match only filenames that start with the query, false to match
+     *                   filenames that contain it anywhere.
+     * @param limit The maximum number of files to return.
+     * @return The matching files: ordered by filename for a prefix search, in upload order otherwise.
+     * @throws IOException If an I/O error occurs during file metadata retrieval.
+     */
+    public List<FileMetadata> searchFiles(User user, String query, boolean prefixOnly, int limit) throws IOException {
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            return prefixOnly ? fileDao.findFilesByNamePrefix(user, query, limit)
+                    : fileDao.findFilesByNameContaining(user, query, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lists the given user's files uploaded in {@code [from, to)}, ordered by upload date.
+     *
+     * @param user The user whose files to list.
+     * @param from The earliest upload time, in epoch milliseconds, inclusive.
+     * @param to The latest upload time, in epoch milliseconds, exclusive.
+     * @param newestFirst true to list the newest files of the range first.
+     * @param limit The maximum number of files to return.
+     * @return The matching files.
+     * @throws IOException If an I/O error occurs during file metadata retrieval.
+     */
+    public List<FileMetadata> listFilesUploadedBetween(User user, long from, long to, boolean newestFirst, int limit)
+            throws IOException {
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            return fileDao.findFilesByUploadDate(user, from, to, newestFirst, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lists the given user's files whose size is in {@code [min, max)}, ordered by size.
+     *
+     * @param user The user whose files to list.
+     * @param min The smallest size, in bytes, inclusive.
+     * @param max The largest size, in bytes, exclusive.
+     * @param largestFirst true to list the largest files of the range first.
+     * @param limit The maximum number of files to return.
+     * @return The matching files.
+     * @throws IOException If an I/O error occurs during file metadata retrieval.
+     */
+    public List<FileMetadata> listFilesSizedBetween(User user, long min, long max, boolean largestFirst, int limit)
+            throws IOException {
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            return fileDao.findFilesBySize(user, min, max, largestFirst, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lists the given user's most recently uploaded files, newest first.
+     *
+     * @param user The user whose files to list.
+     * @param limit The maximum number of files to return.
+     * @return Up to {@code limit} files.
+     * @throws IOException If an I/O error occurs during file metadata retrieval.
+     */
+    public List<FileMetadata> listNewestFiles(User user, int limit) throws IOException {
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            return fileDao.findNewestFiles(user, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lists the given user's largest files, largest first.
+     *
+     * @param user The user whose files to list.
+     * @param limit The maximum number of files to return.
+     * @return Up to {@code limit} files.
+     * @throws IOException If an I/O error occurs during file metadata retrieval.
+     */
+    public List<FileMetadata> listLargestFiles(User user, int limit) throws IOException {
+        Lock lock = userLocks.lockFor(user.getUsername()).readLock();
+        lock.lock();
+        try {
+            return fileDao.findLargestFiles(user, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves stored content kept under an older blob layout, such as the flat layout of stores
+     * created before fan-out, into the configured one, at most {@link #DEFAULT_MIGRATION_PARALLELISM}
+     * blobs at a time on virtual threads (or a cached pool on JVMs without them). Files uploaded
+     * before the blob store, still in `data/<username>/`, are then stored as blobs too, one user
+     * directory per worker. The locker stays usable throughout: content not yet moved is found in
+     * its old place.
+     *
+     * @return The number of blobs and per-user files moved.
+     * @throws IOException If some content could not be moved; running the migration again retries it.
+     * @see BlobStore#migrateLayout(ExecutorService, int)
+     */
+    public int migrateBlobLayout() throws IOException {
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+        try {
+            int moved = blobStore.migrateLayout(executor, DEFAULT_MIGRATION_PARALLELISM);
+            return moved + adoptLegacyFiles(executor, DEFAULT_MIGRATION_PARALLELISM);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns true if all stored content is in the configured blob layout, and no file uploaded
+     * before the blob store is left in a user directory, so no migration is needed.
+     */
+    public boolean isBlobLayoutMigrated() {
+        return blobStore.isLayoutMigrated() && !legacyFilesRemain;
+    }
+
+    /**
+     * Stores the files of every user directory in the blob store, at most {@code parallelism}
+     * directories at a time.
+     *
+     * @return The number of files moved.
+     */
+    private int adoptLegacyFiles(ExecutorService executor, int parallelism) throws IOException {
+        Semaphore workers = new Semaphore(parallelism);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Path directory : listLegacyDirectories()) {
+            results.add(executor.submit(() -> {
+                workers.acquire();
+                try {
+                    return adoptLegacyFiles(directory);
+                } finally {
+                    workers.release();
+                }
+            }));
+        }
+        int moved = 0;
+        IOException failure = null;
+        for (Future<Integer> result : results) {
+            try {
+                moved += result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while moving per-user files; " + moved + " file(s) moved.");
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof IOException)) {
+                    throw new IllegalStateException("Moving per-user files failed.", e.getCause());
+                }
+                if (failure == null) {
+                    failure = (IOException) e.getCause();
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        legacyFilesRemain = !listLegacyDirectories().isEmpty();
+        return moved;
+    }
+
+    /**
+     * Stores each file of one user directory in the blob store and points its metadata at the
+     * blob. The content is copied outside the user's lock; under it, only the updated record is
+     * appended, and only if the file is still listed as stored in the directory. The directory is
+     * removed once it is empty.
+     *
+     * @return The number of files moved.
+     */
+    private int adoptLegacyFiles(Path directory) throws IOException {
+        Optional<User> owner = userDao.findUserByUsername(directory.getFileName().toString());
+        if (owner.isEmpty()) {
+            System.err.println("Warning: Directory " + directory + " belongs to no user; left in place.");
+            return 0;
+        }
+        User user = owner.get();
+        List<FileMetadata> legacyFiles = new ArrayList<>();
+        for (FileMetadata file : listFiles(user)) {
+            if (file.getStoredHash() == null) {
+                legacyFiles.add(file);
+            }
+        }
+
+        int moved = 0;
+        for (FileMetadata file : legacyFiles) {
+            Path storedFile = getStoredFilePath(user, file);
+            if (!Files.exists(storedFile)) {
+                System.err.println("Warning: Stored file " + storedFile + " not found on disk for metadata ID " + file.getId());
+                continue;
+            }
+            BlobStore.StoredBlob blob = blobStore.store(storedFile,
+                    compressionPolicy.levelFor(user.getUsername(), file.getOriginalFilename()), uploadKeyFor(user));
+            boolean recorded;
+            Lock lock = userLocks.lockFor(user.getUsername()).writeLock();
+            lock.lock();
+            try {
+                Optional<FileMetadata> current = fileDao.findFileById(user, file.getId());
+                recorded = current.isPresent() && current.get().getStoredHash() == null
+                        && current.get().getStoredFilename().equals(file.getStoredFilename());
+                if (recorded) {
+                    fileDao.updateFileMetadata(user, new FileMetadata(file.getId(), file.getOriginalFilename(),
+                            blob.getName(), file.getUploadDate(), blob.getSize(), blob.getHash(), blob.getCodec(),
+                            blob.getStoredSize()));
+                }
+            } catch (IOException e) {
+                blobStore.release(blob.getName());
+                throw e;
+            } finally {
+                lock.unlock();
+            }
+            if (!recorded) {
+                blobStore.release(blob.getName()); // Deleted while it was being copied.
+                continue;
+            }
+            Files.deleteIfExists(storedFile);
+            moved++;
+        }
+
+        try {
+            Files.deleteIfExists(directory);
+        } catch (DirectoryNotEmptyException e) {
+            System.err.println("Warning: Directory " + directory + " holds files that are in no locker; left in place.");
+        }
+        return moved;
+    }
+
+    /**
+     * Lists the user directories in the data directory, which only hold files uploaded before the
+     * blob store. The store's own directories start with '.', which no username can.
+     */
+    private List<Path> listLegacyDirectories() throws IOException {
+        List<Path> directories = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(Paths.get(dataDirectory))) {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry) && !entry.getFileName().toString().startsWith(".")) {
+                    directories.add(entry);
+                }
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Stops the session sweeper, the password workers and the metadata compactor, then writes
+     * what is still queued and closes the metadata logs, users.txt, the reference log and the pack
+     * files. The service cannot be used afterwards.
+     *
+     * @throws IOException If queued records cannot be written or a file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        sessionManager.shutdown();
+        passwordService.shutdown();
+        try {
+            fileDao.close();
+        } finally {
+            try {
+                userDao.close();
+            } finally {
+                blobStore.close();
+            }
+        }
     }
 
     /**
@@ -175,4 +1141,74 @@ public class LockerService {
     private Path getUserFilesDirectory(User user) {
         return Paths.get(dataDirectory, user.getUsername());
     }
+
+    /**
+     * Helper method to get the path of the stored content of a file uploaded before the blob
+     * store existed, which still lives in the user's own directory. Blob-backed files are read
+     * through {@link BlobStore#open}, since packed blobs have no file of their own.
+     *
+     * @param user The user who owns the file.
+     * @param metadata The metadata of the stored file.
+     * @return The Path object of the stored content.
+     */
+    private Path getStoredFilePath(User user, FileMetadata metadata) {
+        return getUserFilesDirectory(user).resolve(metadata.getStoredFilename());
+    }
+
+    /**
+     * Helper method to get the path of a file's stored content, checking that it is on disk.
+     *
+     * @param user The user who owns the file.
+     * @param metadata The metadata of the stored file.
+     * @return The Path object of the stored content.
+     * @throws IOException If the stored content is missing.
+     */
+    private Path getExistingStoredFilePath(User user, FileMetadata metadata) throws IOException {
+        Path sourceFilePath = getStoredFilePath(user, metadata);
+
+        // Validate if the source file actually exists on disk.
+        if (!Files.exists(sourceFilePath)) {
+            // This indicates a discrepancy between metadata and actual files.
+            System.err.println("Warning: Stored file " + sourceFilePath + " not found on disk for metadata ID " + metadata.getId());
+            throw new IOException("Stored file content missing. Please contact support.");
+        }
+        return sourceFilePath;
+    }
+
+    /**
+     * The outcome of uploading one file with {@link #uploadAll}.
+     */
+    public static class UploadResult {
+        private final Path source;
+        private final FileMetadata metadata;
+        private final Exception error;
+
+        public UploadResult(Path source, FileMetadata metadata, Exception error) {
+            this.source = source;
+            this.metadata = metadata;
+            this.error = error;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the metadata recorded for the file, or null if the upload failed.
+         */
+        public FileMetadata getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * Returns why the upload failed, or null if it succeeded.
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
 }
@@ -0,0 +1,139 @@
+// Service class: PasswordService.java
+package com.digitallocker.service;
+
+import com.digitallocker.util.LegacySha256PasswordHash;
+import com.digitallocker.util.PasswordHashAlgorithm;
+import com.digitallocker.util.Pbkdf2PasswordHash;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes and verifies passwords on a dedicated, bounded worker pool.
+ * <p>
+ * New passwords are hashed with the current algorithm (PBKDF2 by default). Stored records are
+ * verified by whichever known algorithm produced them, and {@link Verification#needsRehash()}
+ * tells the caller when a matching record should be replaced with a current one.
+ * <p>
+ * Hashing is deliberately expensive, so it runs on a fixed number of threads with a limited
+ * queue. When the queue is full, new requests fail at once with a RejectedExecutionException
+ * instead of piling up, which keeps a login storm from starving uploads and downloads.
+ */
+public class PasswordService {
+    public static final int DEFAULT_QUEUE_LIMIT = 256;
+
+    private final PasswordHashAlgorithm currentAlgorithm;
+    private final List<PasswordHashAlgorithm> knownAlgorithms;
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * Constructs a PasswordService using PBKDF2 with the default cost, one worker per processor
+     * and the default queue limit.
+     */
+    public PasswordService() {
+        this(new Pbkdf2PasswordHash(), Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_LIMIT);
+    }
+
+    /**
+     * Constructs a PasswordService.
+     *
+     * @param currentAlgorithm The algorithm used for new hashes.
+     * @param workerThreads The number of threads that hash and verify passwords.
+     * @param queueLimit The maximum number of requests waiting for a worker.
+     */
+    public PasswordService(PasswordHashAlgorithm currentAlgorithm, int workerThreads, int queueLimit) {
+        this.currentAlgorithm = currentAlgorithm;
+        this.knownAlgorithms = List.of(currentAlgorithm, new LegacySha256PasswordHash());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLimit), runnable -> {
+                    Thread thread = new Thread(runnable, "password-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Hashes a new password with the current algorithm.
+     *
+     * @param password The plain-text password.
+     * @return The stored record.
+     * @throws IOException If the calling thread is interrupted while waiting.
+     * @throws RejectedExecutionException If too many requests are already waiting.
+     */
+    public String hash(String password) throws IOException {
+        return runOnWorker(() -> currentAlgorithm.hash(password));
+    }
+
+    /**
+     * Verifies a password against a stored record.
+     *
+     * @param password The plain-text password.
+     * @param storedHash The stored record, in any known format.
+     * @return Whether the password matches and whether the record should be upgraded.
+     * @throws IOException If the calling thread is interrupted while waiting.
+     * @throws RejectedExecutionException If too many requests are already waiting.
+     */
+    public Verification verify(String password, String storedHash) throws IOException {
+        return runOnWorker(() -> {
+            for (PasswordHashAlgorithm algorithm : knownAlgorithms) {
+                if (algorithm.matchesFormat(storedHash)) {
+                    boolean matches = algorithm.verify(password, storedHash);
+                    boolean needsRehash = algorithm != currentAlgorithm || algorithm.needsRehash(storedHash);
+                    return new Verification(matches, matches && needsRehash);
+                }
+            }
+            return new Verification(false, false); // Unknown record format.
+        });
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private <T> T runOnWorker(Callable<T> task) throws IOException {
+        try {
+            return workers.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for password hashing.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Password hashing failed.", e.getCause());
+        }
+    }
+
+    /**
+     * The outcome of a password check.
+     */
+    public static class Verification {
+        private final boolean matches;
+        private final boolean needsRehash;
+
+        public Verification(boolean matches, boolean needsRehash) {
+            this.matches = matches;
+            this.needsRehash = needsRehash;
+        }
+
+        public boolean matches() {
+            return matches;
+        }
+
+        /**
+         * Returns true if the password matched a record that should be replaced with a current hash.
+         */
+        public boolean needsRehash() {
+            return needsRehash;
+        }
+    }
+}
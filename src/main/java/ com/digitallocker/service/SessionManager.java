@@ -0,0 +1,142 @@
+// Service class: SessionManager.java
+package com.digitallocker.service;
+
+import com.digitallocker.model.User;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues and validates opaque session tokens for authenticated users.
+ * <p>
+ * Sessions live in a concurrent map, so validating a token is a single lookup rather than a
+ * password hash. A session ends when it reaches its maximum lifetime or has been idle too long.
+ * Expired sessions are rejected on lookup and removed by one shared background sweep, not by
+ * a timer per session.
+ */
+public class SessionManager {
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.HOURS.toMillis(12);
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final long timeToLiveNanos;
+    private final long idleTimeoutNanos;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "session-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a SessionManager with the default lifetime and idle timeout.
+     */
+    public SessionManager() {
+        this(DEFAULT_TIME_TO_LIVE_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a SessionManager.
+     *
+     * @param timeToLiveMillis The maximum lifetime of a session.
+     * @param idleTimeoutMillis How long a session may go unused before it expires.
+     */
+    public SessionManager(long timeToLiveMillis, long idleTimeoutMillis) {
+        if (timeToLiveMillis <= 0 || idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Session timeouts must be positive.");
+        }
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        long sweepInterval = Math.max(1000, Math.min(timeToLiveMillis, idleTimeoutMillis) / 2);
+        sweeper.scheduleWithFixedDelay(this::sweepExpired, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a session for an authenticated user.
+     *
+     * @param user The user who has just been authenticated.
+     * @return The opaque token identifying the session.
+     */
+    public String createSession(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(user, System.nanoTime()));
+        return token;
+    }
+
+    /**
+     * Returns the user of a live session and marks the session as used.
+     *
+     * @param token The session token.
+     * @return The session's user, or null if the token is unknown or the session has expired.
+     */
+    public User findUser(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (session.isExpired(now, timeToLiveNanos, idleTimeoutNanos)) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastAccessNanos = now;
+        return session.user;
+    }
+
+    /**
+     * Ends a session.
+     *
+     * @param token The session token.
+     * @return true if a session was ended, false if the token was unknown.
+     */
+    public boolean endSession(String token) {
+        return token != null && sessions.remove(token) != null;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops the background sweep.
+     */
+    public void shutdown() {
+        sweeper.shutdown();
+    }
+
+    private void sweepExpired() {
+        long now = System.nanoTime();
+        sessions.values().removeIf(session -> session.isExpired(now, timeToLiveNanos, idleTimeoutNanos));
+    }
+
+    /**
+     * A live session: the user and when the session was created and last used.
+     */
+    private static class Session {
+        private final User user;
+        private final long createdNanos;
+        private volatile long lastAccessNanos;
+
+        Session(User user, long createdNanos) {
+            this.user = user;
+            this.createdNanos = createdNanos;
+            this.lastAccessNanos = createdNanos;
+        }
+
+        boolean isExpired(long now, long timeToLiveNanos, long idleTimeoutNanos) {
+            return now - createdNanos >= timeToLiveNanos || now - lastAccessNanos >= idleTimeoutNanos;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+// Storage class: BlobCodec.java
+package com.digitallocker.storage;
+
+/**
+ * Names the encoding a blob is stored with, as recorded in FileMetadata and used as the blob's
+ * file name suffix: null for plain content, {@code deflate}, {@code aes-gcm}, or
+ * {@code deflate+aes-gcm} for content compressed and then encrypted.
+ */
+public final class BlobCodec {
+    private static final String ENCRYPTED_SUFFIX = "+" + SegmentedCipher.CODEC;
+
+    private BlobCodec() {
+    }
+
+    /**
+     * Combines a compression codec and an encryption flag.
+     *
+     * @param compression The compression codec, or null for none.
+     * @param encrypted true if the content is encrypted.
+     * @return The combined codec, or null for plain content.
+     */
+    public static String of(String compression, boolean encrypted) {
+        if (!encrypted) {
+            return compression;
+        }
+        return compression == null ? SegmentedCipher.CODEC : compression + ENCRYPTED_SUFFIX;
+    }
+
+    /**
+     * Returns the compression part of a codec, or null if the content is not compressed.
+     */
+    public static String compressionOf(String codec) {
+        if (codec == null || codec.equals(SegmentedCipher.CODEC)) {
+            return null;
+        }
+        return codec.endsWith(ENCRYPTED_SUFFIX) ? codec.substring(0, codec.length() - ENCRYPTED_SUFFIX.length()) : codec;
+    }
+
+    /**
+     * Returns true if content stored with the codec is encrypted.
+     */
+    public static boolean isEncrypted(String codec) {
+        return codec != null && (codec.equals(SegmentedCipher.CODEC) || codec.endsWith(ENCRYPTED_SUFFIX));
+    }
+}
@@ -0,0 +1,100 @@
+// Storage class: BlobLayout.java
+package com.digitallocker.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Where a blob's file lives below the blob directory.
+ * <p>
+ * A flat layout keeps every blob directly in the blob directory, which slows file creation,
+ * lookup and backups once it holds millions of entries. A fan-out layout spreads blobs over
+ * nested bucket directories named by the leading hex digits of the blob's name, two digits (256
+ * buckets) per level: with two levels, blob {@code 3fa1...} is stored as {@code 3f/a1/3fa1...}.
+ * Blob names are SHA-256 or HMAC-SHA-256 hex, so blobs spread evenly over the buckets; a name too
+ * short to fill every level stays in the blob directory.
+ */
+public final class BlobLayout {
+    /** The deepest fan-out supported; three levels give 16M buckets. */
+    public static final int MAX_LEVELS = 3;
+
+    private static final BlobLayout[] LAYOUTS = {new BlobLayout(0), new BlobLayout(1), new BlobLayout(2), new BlobLayout(3)};
+    private static final int DIGITS_PER_LEVEL = 2;
+
+    private final int levels;
+
+    private BlobLayout(int levels) {
+        this.levels = levels;
+    }
+
+    /**
+     * Returns the layout that keeps every blob directly in the blob directory.
+     */
+    public static BlobLayout flat() {
+        return LAYOUTS[0];
+    }
+
+    /**
+     * Returns the default layout for new stores: two levels of 256 buckets.
+     */
+    public static BlobLayout defaultLayout() {
+        return LAYOUTS[2];
+    }
+
+    /**
+     * Returns the layout with the given number of bucket levels.
+     *
+     * @param levels The number of levels, from 0 (flat) to {@link #MAX_LEVELS}.
+     * @return The layout.
+     */
+    public static BlobLayout fanOut(int levels) {
+        if (levels < 0 || levels > MAX_LEVELS) {
+            throw new IllegalArgumentException("Fan-out levels must be from 0 to " + MAX_LEVELS + ".");
+        }
+        return LAYOUTS[levels];
+    }
+
+    /**
+     * Parses a layout as given on the command line: the number of levels, or {@code flat}.
+     *
+     * @param value The text to parse.
+     * @return The layout.
+     * @throws IllegalArgumentException If the text is not a supported layout.
+     */
+    public static BlobLayout parse(String value) {
+        String trimmed = value.trim();
+        if (trimmed.equalsIgnoreCase("flat")) {
+            return flat();
+        }
+        return fanOut(Integer.parseInt(trimmed));
+    }
+
+    /**
+     * Returns the number of bucket levels, 0 for the flat layout.
+     */
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Returns the path of a blob in this layout.
+     *
+     * @param root The blob directory.
+     * @param name The blob's name.
+     * @return The path where the blob is stored in this layout.
+     */
+    public Path locate(Path root, String name) {
+        if (name.length() < levels * DIGITS_PER_LEVEL) {
+            return root.resolve(name);
+        }
+        Path directory = root;
+        for (int level = 0; level < levels; level++) {
+            directory = directory.resolve(name.substring(level * DIGITS_PER_LEVEL, (level + 1) * DIGITS_PER_LEVEL));
+        }
+        return directory.resolve(name);
+    }
+
+    @Override
+    public String toString() {
+        return levels == 0 ? "flat" : levels + "-level fan-out";
+    }
+}
@@ -0,0 +1,1005 @@
+// Storage class: BlobStore.java
+package com.digitallocker.storage;
+
+import com.digitallocker.dao.DurabilityPolicy;
+import com.digitallocker.dao.GroupCommitWriter;
+import com.digitallocker.util.CopyEngine;
+import com.digitallocker.util.DurableFiles;
+import com.digitallocker.util.StripedLockManager;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Content-addressed store for uploaded file content, shared by all users.
+ * <p>
+ * Each blob is stored once under `.blobs/<sha256>`, where the SHA-256 of the uncompressed content is
+ * computed while the upload is copied into a staging file. Content that was deflated on the way in
+ * (see {@link StreamingCompressor}) is stored as `.blobs/<sha256>.deflate` instead; that file name
+ * is the blob's name. If a blob with the same content already exists under either name, the staging
+ * file is discarded instead of moved into place, so duplicate content is never stored twice.
+ * <p>
+ * Content encrypted under a user's {@link DataKey} (see {@link SegmentedCipher}) is named by the
+ * keyed {@link DataKey#blobId} instead of the SHA-256, with an {@code .aes-gcm} or
+ * {@code .deflate+aes-gcm} suffix, so it is only ever deduplicated against the same user's content.
+ * <p>
+ * Every FileMetadata entry that points at a blob holds one reference to it. Reference changes are
+ * appended to `.blobs/refs.log` ({@code +|<name>} or {@code -|<name>}) through a
+ * {@link GroupCommitWriter}, under the same {@link DurabilityPolicy} as the metadata, and
+ * {@link #store} returns only once its reference is written; the log is replayed and compacted
+ * when the store is opened. A blob is deleted when its last reference is released.
+ * <p>
+ * Stores and releases of the same content are coordinated by a lock striped by the content's
+ * hash, shared by its names under every codec; different content is stored concurrently, and
+ * reference records are queued under the lock but waited for outside it.
+ * <p>
+ * Blob files are spread over bucket directories by a {@link BlobLayout}, two levels of 256 by
+ * default, so no single directory grows to millions of entries. `.blobs/layout` records the
+ * layout every blob is known to be in. Until blobs stored under another layout (such as the flat
+ * layout of older stores) have been moved by {@link #migrateLayout}, a blob missing from its
+ * place in the current layout is also looked for in the others, so the store can be used, and
+ * migrated, while it serves requests.
+ * <p>
+ * Blobs of at most the pack threshold, 64 KB stored by default, get no file of their own: they are
+ * appended to pack segments under `.blobs/packs` (see {@link PackStore}), which saves an inode, a
+ * directory entry and most of a filesystem block per blob, and read back with positional reads of
+ * their segment. Content being stored is collected in memory until it outgrows the threshold, and
+ * only then spilled to a staging file. Where a packed blob is, is recorded by the pack index rather
+ * than in file metadata, since blobs are shared between files and compaction moves them.
+ */
+public class BlobStore implements Closeable {
+    private static final String REFS_LOG = "refs.log";
+    private static final String LAYOUT_FILE = "layout";
+    private static final String STAGING_DIRECTORY = "staging";
+    // Blob names start with a SHA-256 or HMAC-SHA-256 in hex.
+    private static final int HASH_HEX_LENGTH = 64;
+    /** The largest stored size packed by default. */
+    public static final int DEFAULT_PACK_THRESHOLD = 64 * 1024;
+    private static final int MAX_PACK_THRESHOLD = 16 * 1024 * 1024;
+    private static final long PACK_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final int INITIAL_STAGING_BUFFER = 8 * 1024;
+
+    private final Path blobDirectory;
+    private final Path stagingDirectory;
+    private final Path refsLog;
+    private final BlobLayout layout;
+    private final CopyEngine copyEngine;
+    private final StreamingCompressor compressor;
+    private final int packThreshold;
+    private final PackStore packs;
+    private final StripedLockManager blobLocks = new StripedLockManager();
+    private final Map<String, Long> referenceCounts = new ConcurrentHashMap<>(); // Updated under the blob's lock.
+    private final GroupCommitWriter refsWriter;
+    private volatile boolean layoutMigrated; // true once every blob is known to be in the current layout.
+
+    /**
+     * Constructs a BlobStore with the default layout and loads its reference counts.
+     *
+     * @param blobDirectory The directory holding the blobs (e.g., `data/.blobs`).
+     * @param copyEngine The engine used to copy content into the store.
+     * @throws IOException If the directories cannot be created or the reference log cannot be read.
+     */
+    public BlobStore(Path blobDirectory, CopyEngine copyEngine) throws IOException {
+        this(blobDirectory, copyEngine, BlobLayout.defaultLayout());
+    }
+
+    /**
+     * Constructs a BlobStore and loads its reference counts.
+     *
+     * @param blobDirectory The directory holding the blobs (e.g., `data/.blobs`).
+     * @param copyEngine The engine used to copy content into the store.
+     * @param layout The layout new blobs are stored in, and existing ones are migrated to.
+     * @throws IOException If the directories cannot be created or the reference or layout file cannot be read.
+     */
+    public BlobStore(Path blobDirectory, CopyEngine copyEngine, BlobLayout layout) throws IOException {
+        this(blobDirectory, copyEngine, layout, DEFAULT_PACK_THRESHOLD);
+    }
+
+    /**
+     * Constructs a BlobStore and loads its reference counts and pack index.
+     *
+     * @param blobDirectory The directory holding the blobs (e.g., `data/.blobs`).
+     * @param copyEngine The engine used to copy content into the store.
+     * @param layout The layout new blobs are stored in, and existing ones are migrated to.
+     * @param packThreshold The largest stored size of a blob packed into a segment, or 0 to give
+     *                      every new blob a file of its own. Blobs already packed stay readable.
+     * @throws IOException If the directories cannot be created or the reference, layout or pack
+     *                     index file cannot be read.
+     */
+    public BlobStore(Path blobDirectory, CopyEngine copyEngine, BlobLayout layout, int packThreshold) throws IOException {
+        this(blobDirectory, copyEngine, layout, packThreshold, DurabilityPolicy.none());
+    }
+
+    /**
+     * Constructs a BlobStore and loads its reference counts and pack index.
+     *
+     * @param blobDirectory The directory holding the blobs (e.g., `data/.blobs`).
+     * @param copyEngine The engine used to copy content into the store.
+     * @param layout The layout new blobs are stored in, and existing ones are migrated to.
+     * @param packThreshold The largest stored size of a blob packed into a segment, or 0 to give
+     *                      every new blob a file of its own. Blobs already packed stay readable.
+     * @param durability When reference changes and packed blobs are forced to disk.
+     * @throws IOException If the directories cannot be created or the reference, layout or pack
+     *                     index file cannot be read.
+     */
+    public BlobStore(Path blobDirectory, CopyEngine copyEngine, BlobLayout layout, int packThreshold,
+                     DurabilityPolicy durability) throws IOException {
+        if (packThreshold < 0 || packThreshold > MAX_PACK_THRESHOLD) {
+            throw new IllegalArgumentException("Pack threshold must be from 0 to " + MAX_PACK_THRESHOLD + " bytes.");
+        }
+        this.blobDirectory = blobDirectory;
+        this.stagingDirectory = blobDirectory.resolve(STAGING_DIRECTORY);
+        this.refsLog = blobDirectory.resolve(REFS_LOG);
+        this.layout = layout;
+        this.copyEngine = copyEngine;
+        this.compressor = new StreamingCompressor(copyEngine);
+        this.packThreshold = packThreshold;
+        Files.createDirectories(stagingDirectory);
+        loadReferenceCounts();
+        this.refsWriter = new GroupCommitWriter(refsLog, durability);
+        loadLayout();
+        this.packs = new PackStore(blobDirectory.resolve(PackStore.DIRECTORY), PACK_SEGMENT_SIZE, referenceCounts.keySet(),
+                durability);
+    }
+
+    /**
+     * Stores the content of a file and takes one reference to it.
+     *
+     * @param source The file to store.
+     * @return The hash and size of the content, and whether it was already stored.
+     * @throws IOException If an I/O error occurs while copying or recording the reference.
+     */
+    public StoredBlob store(Path source) throws IOException {
+        return store(source, CompressionPolicy.STORE);
+    }
+
+    /**
+     * Stores the content of a file, deflated at the given level if it compresses, and takes one
+     * reference to it.
+     *
+     * @param source The file to store.
+     * @param level The Deflater level, or {@link CompressionPolicy#STORE} to store it as-is.
+     * @return The hash, sizes and codec of the content, and whether it was already stored.
+     * @throws IOException If an I/O error occurs while copying or recording the reference.
+     */
+    public StoredBlob store(Path source, int level) throws IOException {
+        return store(source, level, null);
+    }
+
+    /**
+     * Stores the content of a file, deflated at the given level if it compresses and then
+     * encrypted under a user's data key, and takes one reference to it.
+     *
+     * @param source The file to store.
+     * @param level The Deflater level, or {@link CompressionPolicy#STORE} to store it as-is.
+     * @param dataKey The key to encrypt the content with, or null to store it unencrypted.
+     * @return The name, sizes and codec of the content, and whether it was already stored.
+     * @throws IOException If an I/O error occurs while copying or recording the reference.
+     */
+    public StoredBlob store(Path source, int level, DataKey dataKey) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            return store(in, level, dataKey);
+        }
+    }
+
+    /**
+     * Stores everything remaining in a channel and takes one reference to it.
+     * The channel is read to end of stream but not closed.
+     *
+     * @param source The channel supplying the content, e.g. an HTTP request body.
+     * @return The hash and size of the content, and whether it was already stored.
+     * @throws IOException If an I/O error occurs while copying or recording the reference.
+     */
+    public StoredBlob store(ReadableByteChannel source) throws IOException {
+        return store(source, CompressionPolicy.STORE);
+    }
+
+    /**
+     * Stores everything remaining in a channel, deflated at the given level if it compresses, and
+     * takes one reference to it. The channel is read to end of stream but not closed.
+     *
+     * @param source The channel supplying the content, e.g. an HTTP request body.
+     * @param level The Deflater level, or {@link CompressionPolicy#STORE} to store it as-is.
+     * @return The hash, sizes and codec of the content, and whether it was already stored.
+     * @throws IOException If an I/O error occurs while copying or recording the reference.
+     */
+    public StoredBlob store(ReadableByteChannel source, int level) throws IOException {
+        return store(source, level, null);
+    }
+
+    /**
+     * Stores everything remaining in a channel, deflated at the given level if it compresses and
+     * then encrypted under a user's data key, and takes one reference to it.
+     * The channel is read to end of stream but not closed.
+     *
+     * @param source The channel supplying the content, e.g. an HTTP request body.
+     * @param level The Deflater level, or {@link CompressionPolicy#STORE} to store it as-is.
+     * @param dataKey The key to encrypt the content with, or null to store it unencrypted.
+     * @return The name, sizes and codec of the content, and whether it was already stored.
+     * @throws IOException If an I/O error occurs while copying or recording the reference.
+     */
+    public StoredBlob store(ReadableByteChannel source, int level, DataKey dataKey) throws IOException {
+        MessageDigest digest = newDigest();
+        StagingChannel staging = new StagingChannel();
+        long size;
+        String compression;
+        try (staging) {
+            WritableByteChannel out = dataKey == null ? staging : SegmentedCipher.encrypt(staging, dataKey.getKey());
+            if (level == CompressionPolicy.STORE) {
+                size = copyEngine.copy(source, out, digest).getSize();
+                compression = null;
+            } else {
+                StreamingCompressor.Result result = compressor.compress(source, out, digest, level);
+                size = result.getRawSize();
+                compression = result.getCodec();
+            }
+            if (dataKey != null) {
+                out.close(); // Seals the last segment.
+            }
+        } catch (IOException e) {
+            staging.discard();
+            throw e;
+        }
+        byte[] hash = digest.digest();
+        String id = dataKey == null ? HexFormat.of().formatHex(hash) : dataKey.blobId(hash);
+        String codec = BlobCodec.of(compression, dataKey != null);
+        if (staging.isSpilled()) {
+            return publish(staging.getFile(), id, size, codec, staging.size());
+        }
+        return publishPacked(staging.getContent(), id, size, codec);
+    }
+
+    /**
+     * Takes ownership of a complete file already on the blob store's file system, such as an
+     * assembled chunked upload. The file is hashed in one read pass and then moved into the
+     * store without being copied, or deleted if the content is already stored.
+     *
+     * @param file The file to adopt. It no longer exists once this method returns.
+     * @return The hash and size of the content, and whether it was already stored.
+     * @throws IOException If an I/O error occurs while hashing, moving or recording the reference.
+     */
+    public StoredBlob adopt(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        CopyEngine.CopyResult readResult = copyEngine.digest(file, digest);
+        String hash = HexFormat.of().formatHex(digest.digest());
+        long size = readResult.getSize();
+        if (size <= packThreshold) {
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+            Files.delete(file);
+            return publishPacked(content, hash, size, null);
+        }
+        return publish(file, hash, size, null, size);
+    }
+
+    /**
+     * Moves a fully written file to its content address, or drops it if the same content is
+     * already stored, compressed or not, and takes one reference to the blob.
+     */
+    private StoredBlob publish(Path stagingFile, String hash, long size, String codec, long storedSize) throws IOException {
+        String name = blobName(hash, codec);
+        StoredBlob blob;
+        CompletableFuture<Void> recorded;
+        Lock lock = lockFor(name);
+        lock.lock();
+        try {
+            blob = findExisting(hash, size, codec);
+            if (blob != null) {
+                Files.delete(stagingFile);
+            } else {
+                try {
+                    Files.createDirectories(layout.locate(blobDirectory, name).getParent());
+                    Files.move(stagingFile, layout.locate(blobDirectory, name), StandardCopyOption.ATOMIC_MOVE);
+                    blob = new StoredBlob(name, hash, size, codec, storedSize, false);
+                } catch (FileAlreadyExistsException e) {
+                    Files.delete(stagingFile);
+                    blob = new StoredBlob(name, hash, size, codec, Files.size(resolve(name)), true);
+                }
+            }
+            recorded = addReference(blob.getName());
+        } finally {
+            lock.unlock();
+        }
+        awaitReference(blob.getName(), recorded);
+        return blob;
+    }
+
+    /**
+     * Appends content small enough to pack to the active pack segment, or drops it if the same
+     * content is already stored, and takes one reference to the blob.
+     */
+    private StoredBlob publishPacked(ByteBuffer content, String hash, long size, String codec) throws IOException {
+        String name = blobName(hash, codec);
+        StoredBlob blob;
+        long packed = 0; // The pack append holding the blob, if it may not be durable yet.
+        CompletableFuture<Void> recorded;
+        Lock lock = lockFor(name);
+        lock.lock();
+        try {
+            blob = findExisting(hash, size, codec);
+            if (blob == null) {
+                blob = new StoredBlob(name, hash, size, codec, content.remaining(), false);
+                packed = packs.append(name, content);
+            } else if (packs.contains(blob.getName())) {
+                packed = packs.lastAppend();
+            }
+            recorded = addReference(blob.getName());
+        } finally {
+            lock.unlock();
+        }
+        try {
+            packs.sync(packed);
+        } catch (IOException e) {
+            // The store fails, so its reference is taken back. Its record may still be written,
+            // which at worst keeps the blob after its last file is gone.
+            lock.lock();
+            try {
+                dropReference(blob.getName());
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+        awaitReference(blob.getName(), recorded);
+        return blob;
+    }
+
+    /**
+     * Finds the content if it is already stored, packed or not, under the name for either codec,
+     * compressed or not. Must be called holding the content's lock.
+     *
+     * @return The existing blob, or null if the content is not stored yet.
+     */
+    private StoredBlob findExisting(String hash, long size, String codec) throws IOException {
+        boolean encrypted = BlobCodec.isEncrypted(codec);
+        String otherCodec = BlobCodec.of(BlobCodec.compressionOf(codec) == null ? StreamingCompressor.CODEC : null, encrypted);
+        for (String existingCodec : new String[] {codec, otherCodec}) {
+            String name = blobName(hash, existingCodec);
+            long storedSize = storedSizeOf(name);
+            if (storedSize >= 0) {
+                return new StoredBlob(name, hash, size, existingCodec, storedSize, true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the size of a blob on disk, or -1 if it is not stored.
+     */
+    private long storedSizeOf(String name) throws IOException {
+        long packed = packs.sizeOf(name);
+        if (packed >= 0) {
+            return packed;
+        }
+        Path path = resolve(name);
+        try {
+            return Files.size(path);
+        } catch (NoSuchFileException e) {
+            Path moved = resolve(name); // Moved by a layout migration since it was resolved.
+            return moved.equals(path) || !Files.exists(moved) ? -1 : Files.size(moved);
+        }
+    }
+
+    private static String blobName(String hash, String codec) {
+        return codec == null ? hash : hash + "." + codec;
+    }
+
+    /**
+     * Returns the path of the blob with the given name. A packed blob has no file of its own, so
+     * this is only where it would be stored unpacked; use {@link #open} to read a blob.
+     *
+     * @param name The blob's name: the SHA-256 (or keyed ID) of the content as lowercase hex,
+     *             followed by the codec for compressed or encrypted blobs.
+     * @return The path where the blob is (or would be) stored.
+     */
+    public Path resolve(String name) {
+        Path path = layout.locate(blobDirectory, name);
+        if (layoutMigrated || Files.exists(path)) {
+            return path;
+        }
+        for (int levels = 0; levels <= BlobLayout.MAX_LEVELS; levels++) {
+            Path previous = BlobLayout.fanOut(levels).locate(blobDirectory, name);
+            if (!previous.equals(path) && Files.exists(previous)) {
+                return previous;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Opens a blob for reading. If a layout migration or pack compaction moves the blob between
+     * finding it and opening it, it is opened at its new place. A packed blob is opened as a
+     * read-only view of its bytes in the pack segment.
+     *
+     * @param name The blob's name.
+     * @return A channel reading the blob's stored content.
+     * @throws NoSuchFileException If the blob is not stored.
+     * @throws IOException If the blob cannot be opened.
+     */
+    public FileChannel open(String name) throws IOException {
+        if (packs.contains(name)) {
+            return packs.open(name);
+        }
+        Path path = resolve(name);
+        try {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            Path moved = resolve(name);
+            if (moved.equals(path)) {
+                throw e;
+            }
+            return FileChannel.open(moved, StandardOpenOption.READ);
+        }
+    }
+
+    /**
+     * Returns the layout new blobs are stored in.
+     */
+    public BlobLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns true if every blob is known to be stored in the current layout, so none needs migrating.
+     */
+    public boolean isLayoutMigrated() {
+        return layoutMigrated;
+    }
+
+    /**
+     * Moves every blob stored under another layout to its place in the current one, while the
+     * store stays in use. Blob files are found by walking the blob directory and its buckets, and
+     * are moved by up to {@code parallelism} workers on the given executor, each renaming one
+     * blob at a time into its bucket; a blob is never copied, and is always in exactly one place,
+     * where {@link #resolve} finds it. Once every blob has been moved, the layout file is updated and
+     * lookups stop checking the other layouts. A migration that fails or is interrupted can be
+     * run again; it resumes with the blobs still left to move.
+     *
+     * @param executor The executor to move blobs on. It is not shut down.
+     * @param parallelism The maximum number of blobs moved at once.
+     * @return The number of blobs moved.
+     * @throws IOException If the blob directory cannot be walked, or some blobs could not be
+     *                     moved; the others are moved regardless.
+     */
+    public int migrateLayout(ExecutorService executor, int parallelism) throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        AtomicInteger moved = new AtomicInteger();
+        AtomicBoolean stopped = new AtomicBoolean();
+        List<IOException> failures = new ArrayList<>();
+        boolean interrupted = false;
+        try (BlobWalk walk = new BlobWalk()) {
+            Runnable worker = () -> {
+                while (!stopped.get()) {
+                    Path path;
+                    try {
+                        path = walk.next();
+                    } catch (IOException e) {
+                        stopped.set(true); // The walk cannot go on.
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                        return;
+                    }
+                    if (path == null) {
+                        return;
+                    }
+                    try {
+                        if (moveToLayout(path)) {
+                            moved.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            List<Future<?>> workers = new ArrayList<>();
+            for (int w = 0; w < parallelism; w++) {
+                workers.add(executor.submit(worker));
+            }
+            for (Future<?> future : workers) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        // Let the moves in progress finish, but start no more.
+                        interrupted = true;
+                        stopped.set(true);
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Blob migration worker failed.", e.getCause()); // Workers catch their own exceptions.
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while migrating the blob layout; " + moved.get() + " blob(s) moved.");
+        }
+        if (!failures.isEmpty()) {
+            throw new IOException("Could not move every blob to the " + layout + " layout (" + failures.size()
+                    + " failure(s)): " + failures.get(0).getMessage(), failures.get(0));
+        }
+        // Always synced: the layout file must not claim blobs have moved before their renames are durable.
+        DurableFiles.replace(blobDirectory.resolve(LAYOUT_FILE), true, writer -> writer.write(Integer.toString(layout.getLevels())));
+        layoutMigrated = true;
+        return moved.get();
+    }
+
+    /**
+     * Renames a blob file into its place in the current layout.
+     *
+     * @return true if the blob was moved, false if it was already in place or has been deleted.
+     */
+    private boolean moveToLayout(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        Path target = layout.locate(blobDirectory, name);
+        if (path.equals(target)) {
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false; // Released since the walk found it.
+        }
+        // A release that resolved the old path just before the move deleted nothing; finish it here.
+        Lock lock = lockFor(name);
+        lock.lock();
+        try {
+            if (!referenceCounts.containsKey(name)) {
+                Files.deleteIfExists(target);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Lists the blob files below the blob directory, one directory at a time, for
+     * {@link #migrateLayout}. Entries are told apart by name alone: buckets have two hex digits
+     * and blobs start with a full hash. Nothing else is read about them, so a blob released while
+     * the walk runs is simply passed over, and the walk does not stat every file.
+     */
+    private class BlobWalk implements Closeable {
+        private final Deque<Path> directories = new ArrayDeque<>();
+        private DirectoryStream<Path> stream;
+        private Iterator<Path> entries = Collections.emptyIterator();
+
+        BlobWalk() {
+            directories.push(blobDirectory);
+        }
+
+        /**
+         * Returns the next blob file, or null once the walk is done.
+         */
+        synchronized Path next() throws IOException {
+            while (true) {
+                try {
+                    while (entries.hasNext()) {
+                        Path entry = entries.next();
+                        String name = entry.getFileName().toString();
+                        if (isBlobName(name)) {
+                            return entry;
+                        }
+                        if (isBucketName(name) && blobDirectory.relativize(entry).getNameCount() <= BlobLayout.MAX_LEVELS) {
+                            directories.push(entry);
+                        }
+                    }
+                } catch (DirectoryIteratorException e) {
+                    throw e.getCause();
+                }
+                close();
+                Path directory = directories.poll();
+                if (directory == null) {
+                    return null;
+                }
+                try {
+                    stream = Files.newDirectoryStream(directory);
+                    entries = stream.iterator();
+                } catch (NoSuchFileException | NotDirectoryException e) {
+                    // Not a bucket after all; nothing to move from it.
+                }
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            entries = Collections.emptyIterator();
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+    }
+
+    private static boolean isBucketName(String name) {
+        return name.length() == 2 && Character.digit(name.charAt(0), 16) >= 0 && Character.digit(name.charAt(1), 16) >= 0;
+    }
+
+    private static boolean isBlobName(String name) {
+        if (name.length() < HASH_HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HASH_HEX_LENGTH; i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Takes an additional reference to an existing blob.
+     *
+     * @param name The blob's name.
+     * @throws IOException If an I/O error occurs while recording the reference.
+     */
+    public void acquire(String name) throws IOException {
+        CompletableFuture<Void> recorded;
+        Lock lock = lockFor(name);
+        lock.lock();
+        try {
+            recorded = addReference(name);
+        } finally {
+            lock.unlock();
+        }
+        awaitReference(name, recorded);
+    }
+
+    /**
+     * Releases one reference to a blob, deleting the blob when no references remain.
+     *
+     * @param name The blob's name.
+     * @throws IOException If an I/O error occurs while recording the release or deleting the blob.
+     */
+    public void release(String name) throws IOException {
+        CompletableFuture<Void> recorded;
+        Lock lock = lockFor(name);
+        lock.lock();
+        try {
+            if (!referenceCounts.containsKey(name)) {
+                return;
+            }
+            recorded = refsWriter.append("-|" + name);
+            dropReference(name);
+        } finally {
+            lock.unlock();
+        }
+        GroupCommitWriter.await(recorded);
+    }
+
+    /**
+     * Returns the lock of a blob's content, shared by its names under every codec.
+     */
+    private Lock lockFor(String name) {
+        int dot = name.indexOf('.');
+        return blobLocks.lockFor(dot < 0 ? name : name.substring(0, dot)).writeLock();
+    }
+
+    /**
+     * Counts one more reference to a blob and queues its record. Must be called holding the blob's lock.
+     */
+    private CompletableFuture<Void> addReference(String name) {
+        referenceCounts.merge(name, 1L, Long::sum);
+        return refsWriter.append("+|" + name);
+    }
+
+    /**
+     * Waits for a reference record queued by {@link #addReference} to be written. If it cannot be,
+     * the reference is dropped again, so the counts match the log.
+     */
+    private void awaitReference(String name, CompletableFuture<Void> recorded) throws IOException {
+        try {
+            GroupCommitWriter.await(recorded);
+        } catch (IOException e) {
+            Lock lock = lockFor(name);
+            lock.lock();
+            try {
+                dropReference(name);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Counts one reference to a blob less, deleting the blob when none remain. Must be called
+     * holding the blob's lock.
+     */
+    private void dropReference(String name) throws IOException {
+        Long count = referenceCounts.get(name);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            referenceCounts.remove(name);
+            if (!packs.remove(name)) {
+                Files.deleteIfExists(resolve(name));
+            }
+        } else {
+            referenceCounts.put(name, count - 1);
+        }
+    }
+
+    /**
+     * Returns the number of metadata entries that reference a blob.
+     *
+     * @param name The blob's name.
+     * @return The reference count, or 0 if the blob is not stored.
+     */
+    public long getReferenceCount(String name) {
+        return referenceCounts.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Writes the queued reference records and closes the reference log and the pack files.
+     *
+     * @throws IOException If a record cannot be written or a file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            refsWriter.close();
+        } finally {
+            packs.close();
+        }
+    }
+
+    /**
+     * Replays the reference log and rewrites it with one line per reference still held.
+     */
+    private void loadReferenceCounts() throws IOException {
+        if (!Files.exists(refsLog)) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(refsLog.toFile()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("+|")) {
+                    referenceCounts.merge(line.substring(2), 1L, Long::sum);
+                } else if (line.startsWith("-|")) {
+                    referenceCounts.computeIfPresent(line.substring(2), (hash, count) -> count <= 1 ? null : count - 1);
+                } else {
+                    System.err.println("Warning: Corrupted blob reference line: " + line);
+                }
+            }
+        }
+
+        // Always synced: a rename that reached the disk before the content would lose every count.
+        DurableFiles.replace(refsLog, true, writer -> {
+            for (Map.Entry<String, Long> entry : referenceCounts.entrySet()) {
+                for (long i = 0; i < entry.getValue(); i++) {
+                    writer.write("+|" + entry.getKey());
+                    writer.newLine();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads which layout every blob is known to be in. A store without blobs adopts the current
+     * layout at once; a store that already holds blobs, but has no layout file, predates fan-out
+     * and is flat.
+     */
+    private void loadLayout() throws IOException {
+        Path layoutFile = blobDirectory.resolve(LAYOUT_FILE);
+        if (Files.exists(layoutFile)) {
+            try {
+                String recorded = new String(Files.readAllBytes(layoutFile), StandardCharsets.UTF_8);
+                layoutMigrated = BlobLayout.parse(recorded) == layout;
+            } catch (IllegalArgumentException e) {
+                System.err.println("Warning: Corrupted blob layout file; looking for blobs in every layout.");
+            }
+        } else if (referenceCounts.isEmpty()) {
+            DurableFiles.replace(layoutFile, true, writer -> writer.write(Integer.toString(layout.getLevels())));
+            layoutMigrated = true;
+        }
+    }
+
+    /**
+     * Collects content being stored in memory while it is small enough to pack, and spills it to
+     * a staging file once it outgrows the pack threshold.
+     */
+    private class StagingChannel implements WritableByteChannel {
+        private ByteBuffer buffer = ByteBuffer.allocate(Math.min(packThreshold, INITIAL_STAGING_BUFFER));
+        private Path file;
+        private FileChannel channel;
+        private long size;
+        private boolean open = true;
+
+        StagingChannel() throws IOException {
+            if (packThreshold == 0) {
+                spill();
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            int length = src.remaining();
+            if (channel == null && size + length > packThreshold) {
+                spill();
+            }
+            if (channel != null) {
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+            } else {
+                if (buffer.remaining() < length) {
+                    int capacity = (int) Math.min(packThreshold, Math.max(size + length, 2L * buffer.capacity()));
+                    buffer = ByteBuffer.allocate(capacity).put(buffer.flip());
+                }
+                buffer.put(src);
+            }
+            size += length;
+            return length;
+        }
+
+        private void spill() throws IOException {
+            file = Files.createTempFile(stagingDirectory, "upload", ".tmp");
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer = null;
+        }
+
+        boolean isSpilled() {
+            return file != null;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the content collected in memory, if it was not spilled.
+         */
+        ByteBuffer getContent() {
+            return buffer.duplicate().flip();
+        }
+
+        long size() {
+            return size;
+        }
+
+        /**
+         * Closes the channel and deletes the staging file, if any.
+         */
+        void discard() throws IOException {
+            close();
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // This exception should ideally not happen for SHA-256 as it's a standard algorithm.
+            throw new RuntimeException("SHA-256 algorithm not found.", e);
+        }
+    }
+
+    /**
+     * The outcome of storing one file.
+     */
+    public static class StoredBlob {
+        private final String name;
+        private final String hash;
+        private final long size;
+        private final String codec;
+        private final long storedSize;
+        private final boolean deduplicated;
+
+        public StoredBlob(String name, String hash, long size, String codec, long storedSize, boolean deduplicated) {
+            this.name = name;
+            this.hash = hash;
+            this.size = size;
+            this.codec = codec;
+            this.storedSize = storedSize;
+            this.deduplicated = deduplicated;
+        }
+
+        /**
+         * Returns the blob's file name in the store, which is also its key for references.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the SHA-256 of the content, or for encrypted blobs the keyed ID that replaces it.
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Returns the size of the uncompressed content.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the codec the blob is stored with, or null if it is stored as-is.
+         */
+        public String getCodec() {
+            return codec;
+        }
+
+        /**
+         * Returns the size of the blob on disk.
+         */
+        public long getStoredSize() {
+            return storedSize;
+        }
+
+        /**
+         * Returns true if the content was already in the store, so nothing new was written.
+         */
+        public boolean isDeduplicated() {
+            return deduplicated;
+        }
+    }
+}
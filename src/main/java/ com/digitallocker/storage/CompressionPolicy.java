@@ -0,0 +1,97 @@
+// Storage class: CompressionPolicy.java
+package com.digitallocker.storage;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+/**
+ * Chooses the Deflater level used to store an upload, by file type and by user.
+ * <p>
+ * A level set for the file's extension wins over one set for the user, which wins over the
+ * default. Level {@link #STORE} means the content is stored as-is. Formats that are already
+ * compressed (JPEG, ZIP, MP4 and so on) start out at {@code STORE}, since deflating them costs CPU
+ * and saves nothing; content that is not recognised by name is still sampled before it is
+ * compressed, see {@link StreamingCompressor}.
+ */
+public class CompressionPolicy {
+    public static final int STORE = Deflater.NO_COMPRESSION;
+
+    private static final Set<String> PRECOMPRESSED_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "aac", "ogg", "flac", "mp4", "m4a", "mkv", "mov", "avi", "webm",
+            "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "jar",
+            "docx", "xlsx", "pptx", "odt", "epub");
+
+    private final int defaultLevel;
+    private final Map<String, Integer> userLevels = new ConcurrentHashMap<>();
+    private final Map<String, Integer> extensionLevels = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a CompressionPolicy.
+     *
+     * @param defaultLevel The Deflater level (0-9, or -1 for zlib's default) used when neither the
+     *                     file type nor the user has a level of their own.
+     * @throws IllegalArgumentException If the level is out of range.
+     */
+    public CompressionPolicy(int defaultLevel) {
+        this.defaultLevel = checkLevel(defaultLevel);
+        for (String extension : PRECOMPRESSED_EXTENSIONS) {
+            extensionLevels.put(extension, STORE);
+        }
+    }
+
+    /**
+     * Returns a policy that stores every file as-is.
+     */
+    public static CompressionPolicy disabled() {
+        return new CompressionPolicy(STORE);
+    }
+
+    /**
+     * Sets the level for one user's uploads, overriding the default.
+     *
+     * @param username The user.
+     * @param level The Deflater level, or {@link #STORE}.
+     */
+    public void setUserLevel(String username, int level) {
+        userLevels.put(username, checkLevel(level));
+    }
+
+    /**
+     * Sets the level for files with the given extension, overriding any user or default level.
+     *
+     * @param extension The extension without the dot, e.g. {@code "log"}. Case is ignored.
+     * @param level The Deflater level, or {@link #STORE}.
+     */
+    public void setExtensionLevel(String extension, int level) {
+        extensionLevels.put(extension.toLowerCase(Locale.ROOT), checkLevel(level));
+    }
+
+    /**
+     * Returns the level to store a file with.
+     *
+     * @param username The user uploading the file.
+     * @param filename The name the file is uploaded under.
+     * @return The Deflater level, or {@link #STORE} to store the content as-is.
+     */
+    public int levelFor(String username, String filename) {
+        int dot = filename.lastIndexOf('.');
+        if (dot >= 0) {
+            Integer level = extensionLevels.get(filename.substring(dot + 1).toLowerCase(Locale.ROOT));
+            if (level != null) {
+                return level;
+            }
+        }
+        return userLevels.getOrDefault(username, defaultLevel);
+    }
+
+    private static int checkLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9.");
+        }
+        return level;
+    }
+}
@@ -0,0 +1,69 @@
+// Storage class: DataKey.java
+package com.digitallocker.storage;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+/**
+ * One user's data key. Two independent keys are derived from it with HKDF: the content key, from
+ * which {@link SegmentedCipher} derives a fresh AES key for every blob, and the HMAC key that names
+ * their encrypted blobs. The raw key bytes are never used as a key themselves.
+ * <p>
+ * Encrypted blobs are named by an HMAC of the content's SHA-256 rather than the SHA-256 itself, so
+ * the blob store does not reveal which known files a user holds, while one user's duplicate
+ * uploads still share a blob.
+ */
+public final class DataKey {
+    private static final String HMAC = "HmacSHA256";
+
+    private static final int DERIVED_KEY_SIZE = 32;
+
+    private final SecretKey key;
+    private final SecretKey namingKey;
+
+    /**
+     * Constructs a DataKey from raw key bytes.
+     *
+     * @param keyBytes 256 bits of secret key material.
+     */
+    public DataKey(byte[] keyBytes) {
+        this.key = new SecretKeySpec(derive(keyBytes, "digital-locker content"), SegmentedCipher.KEY_ALGORITHM);
+        this.namingKey = new SecretKeySpec(derive(keyBytes, "digital-locker blob names"), HMAC);
+    }
+
+    /**
+     * Returns the content key, which {@link SegmentedCipher} derives each blob's AES key from.
+     */
+    public SecretKey getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the name under which this user's encrypted copy of some content is stored.
+     *
+     * @param contentHash The SHA-256 of the plaintext content.
+     * @return The keyed identifier as lowercase hex.
+     */
+    public String blobId(byte[] contentHash) {
+        return HexFormat.of().formatHex(hmac(namingKey, contentHash));
+    }
+
+    private static byte[] derive(byte[] keyBytes, String purpose) {
+        return Hkdf.derive(keyBytes, new byte[0], purpose.getBytes(StandardCharsets.UTF_8), DERIVED_KEY_SIZE);
+    }
+
+    private static byte[] hmac(SecretKey key, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is required of every Java platform.
+            throw new IllegalStateException(HMAC + " not available.", e);
+        }
+    }
+}
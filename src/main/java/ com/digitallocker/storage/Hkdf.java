@@ -0,0 +1,54 @@
+// Storage class: Hkdf.java
+package com.digitallocker.storage;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * HKDF with HMAC-SHA256 (RFC 5869), used to derive independent keys from one key: the keys a
+ * {@link DataKey} encrypts and names content with, and the per-blob keys of {@link SegmentedCipher}.
+ */
+final class Hkdf {
+    private static final String HMAC = "HmacSHA256";
+    private static final int HASH_LENGTH = 32;
+
+    private Hkdf() {
+    }
+
+    /**
+     * Derives key material.
+     *
+     * @param inputKey The input keying material.
+     * @param salt A non-secret random value, or an empty array for none.
+     * @param info Context that binds the output to one purpose.
+     * @param length The number of bytes to derive, at most 255 * 32.
+     * @return The derived bytes.
+     */
+    static byte[] derive(byte[] inputKey, byte[] salt, byte[] info, int length) {
+        if (length > 255 * HASH_LENGTH) {
+            throw new IllegalArgumentException("HKDF output too long.");
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(salt.length == 0 ? new byte[HASH_LENGTH] : salt, HMAC));
+            byte[] pseudoRandomKey = mac.doFinal(inputKey);
+            mac.init(new SecretKeySpec(pseudoRandomKey, HMAC));
+            byte[] output = new byte[length];
+            byte[] block = new byte[0];
+            for (int counter = 1, position = 0; position < length; counter++) {
+                mac.update(block);
+                mac.update(info);
+                mac.update((byte) counter);
+                block = mac.doFinal();
+                int copied = Math.min(block.length, length - position);
+                System.arraycopy(block, 0, output, position, copied);
+                position += copied;
+            }
+            return output;
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is required of every Java platform.
+            throw new IllegalStateException(HMAC + " not available.", e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+// Storage class: KeyManager.java
+package com.digitallocker.storage;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import com.digitallocker.util.DurableFiles;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Issues and stores per-user data keys, each wrapped by a master key.
+ * <p>
+ * A user's data key is generated the first time it is needed, wrapped with AES-GCM under the
+ * master key (with the username as associated data, so a wrapped key cannot be moved to another
+ * user), and appended to {@code data-keys.txt} as {@code username|base64(nonce, wrapped key)}.
+ * The file is loaded once when the manager is constructed. Only wrapped keys touch the disk, so
+ * rotating the master key means re-wrapping this one file, not re-encrypting any content.
+ * <p>
+ * A new key's line is forced to disk before the key is handed out, since content encrypted under
+ * a key that was lost in a crash could never be read again. A torn last line can therefore only
+ * belong to a key that was never used, and is cut off when the file is loaded.
+ */
+public class KeyManager {
+    public static final int KEY_SIZE = 32;
+
+    private static final String DATA_KEYS_FILE = "data-keys.txt";
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_BITS = 128;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKey masterKey;
+    private final Path dataKeysFile;
+    private final ConcurrentMap<String, DataKey> dataKeys = new ConcurrentHashMap<>();
+    private final Object appendLock = new Object(); // Serializes key creation and appends.
+
+    /**
+     * Constructs a KeyManager and unwraps the data keys already issued.
+     *
+     * @param keyDirectory The directory holding the wrapped data keys (e.g., `data/.keys`).
+     * @param masterKey The 256-bit master key.
+     * @throws IOException If the key file cannot be read or repaired, or a key does not unwrap under this master key.
+     */
+    public KeyManager(Path keyDirectory, byte[] masterKey) throws IOException {
+        if (masterKey.length != KEY_SIZE) {
+            throw new IllegalArgumentException("Master key must be " + KEY_SIZE + " bytes.");
+        }
+        this.masterKey = new SecretKeySpec(masterKey, "AES");
+        this.dataKeysFile = keyDirectory.resolve(DATA_KEYS_FILE);
+        Files.createDirectories(keyDirectory);
+        loadDataKeys();
+    }
+
+    /**
+     * Reads a master key file, creating it with a new random key (readable by the owner only from
+     * the moment it exists, where the file system supports it) if it does not exist. A new key is
+     * forced to disk before it is returned.
+     *
+     * @param keyFile The file holding the base64-encoded master key.
+     * @return The master key bytes.
+     * @throws IOException If the file cannot be read or created.
+     */
+    public static byte[] loadOrCreateMasterKey(Path keyFile) throws IOException {
+        if (!Files.exists(keyFile)) {
+            byte[] key = new byte[KEY_SIZE];
+            RANDOM.nextBytes(key);
+            Files.createDirectories(keyFile.toAbsolutePath().getParent());
+            try {
+                try {
+                    Files.createFile(keyFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+                } catch (UnsupportedOperationException e) {
+                    Files.createFile(keyFile); // Not a POSIX file system; rely on the directory's permissions.
+                }
+                try (FileChannel channel = FileChannel.open(keyFile, StandardOpenOption.WRITE)) {
+                    writeFully(channel, Base64.getEncoder().encodeToString(key));
+                    channel.force(true);
+                }
+                DurableFiles.syncDirectory(keyFile.toAbsolutePath().getParent());
+                return key;
+            } catch (FileAlreadyExistsException e) {
+                // Another process created it first; use theirs.
+            }
+        }
+        return Base64.getDecoder().decode(Files.readString(keyFile).trim());
+    }
+
+    /**
+     * Returns a user's data key, creating and storing one if the user has none yet.
+     *
+     * @param username The user.
+     * @return The user's data key; a new one is on disk before it is returned.
+     * @throws IOException If a new key cannot be stored.
+     */
+    public DataKey dataKeyFor(String username) throws IOException {
+        DataKey dataKey = dataKeys.get(username);
+        if (dataKey != null) {
+            return dataKey;
+        }
+        synchronized (appendLock) {
+            dataKey = dataKeys.get(username);
+            if (dataKey == null) {
+                byte[] keyBytes = new byte[KEY_SIZE];
+                RANDOM.nextBytes(keyBytes);
+                String line = username + "|" + Base64.getEncoder().encodeToString(wrap(username, keyBytes)) + "\n";
+                boolean created = !Files.exists(dataKeysFile);
+                try (FileChannel channel = FileChannel.open(dataKeysFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    writeFully(channel, line);
+                    channel.force(true);
+                }
+                if (created) {
+                    DurableFiles.syncDirectory(dataKeysFile.toAbsolutePath().getParent());
+                }
+                dataKey = new DataKey(keyBytes);
+                dataKeys.put(username, dataKey);
+            }
+            return dataKey;
+        }
+    }
+
+    private void loadDataKeys() throws IOException {
+        long removed = DurableFiles.truncatePartialLine(dataKeysFile);
+        if (removed > 0) {
+            System.err.println("Warning: Removed a partial data key of " + removed + " bytes from the end of " + dataKeysFile + ".");
+        }
+        if (!Files.exists(dataKeysFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(dataKeysFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf('|');
+                if (separator <= 0) {
+                    System.err.println("Warning: Corrupted data key line skipped.");
+                    continue;
+                }
+                String username = line.substring(0, separator);
+                byte[] wrapped;
+                try {
+                    wrapped = Base64.getDecoder().decode(line.substring(separator + 1));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Warning: Corrupted data key line skipped.");
+                    continue;
+                }
+                dataKeys.put(username, new DataKey(unwrap(username, wrapped)));
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private byte[] wrap(String username, byte[] keyBytes) throws IOException {
+        byte[] nonce = new byte[NONCE_SIZE];
+        RANDOM.nextBytes(nonce);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(TAG_BITS, nonce));
+            cipher.updateAAD(username.getBytes(StandardCharsets.UTF_8));
+            byte[] wrapped = cipher.doFinal(keyBytes);
+            byte[] record = new byte[NONCE_SIZE + wrapped.length];
+            System.arraycopy(nonce, 0, record, 0, NONCE_SIZE);
+            System.arraycopy(wrapped, 0, record, NONCE_SIZE, wrapped.length);
+            return record;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Error wrapping data key for user " + username + ".", e);
+        }
+    }
+
+    private byte[] unwrap(String username, byte[] record) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(TAG_BITS, record, 0, NONCE_SIZE));
+            cipher.updateAAD(username.getBytes(StandardCharsets.UTF_8));
+            return cipher.doFinal(record, NONCE_SIZE, record.length - NONCE_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot unwrap the data key of user " + username + "; is this the right master key?", e);
+        }
+    }
+}
@@ -0,0 +1,512 @@
+// Storage class: PackStore.java
+package com.digitallocker.storage;
+
+import com.digitallocker.dao.DurabilityPolicy;
+import com.digitallocker.util.DurableFiles;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only pack segments holding the small blobs of a {@link BlobStore}.
+ * <p>
+ * A small blob is appended to the active segment ({@code packs/<n>.pack}) instead of being stored
+ * as a file of its own, so it costs no inode, directory entry or filesystem block of its own. Once
+ * the active segment reaches the segment size it is closed to appends and a new one is started.
+ * {@code packs/index.log} records where each blob is ({@code +|<name>|<segment>|<offset>|<length>})
+ * and which blobs have been removed ({@code -|<name>}); it is replayed and rewritten when the store
+ * is opened, dropping blobs that are no longer referenced.
+ * <p>
+ * Reads open the blob's segment and read only the blob's bytes, with positional reads, through a
+ * {@link PackedBlobChannel}. Removing a blob only forgets where it is. Once at least half of a
+ * closed segment is dead, a background thread copies its live blobs to the active segment, makes
+ * the copies and their index records durable, and deletes the segment. Bytes that the index does
+ * not point at, such as an append cut off by a crash, count as dead.
+ * <p>
+ * Appends are made durable under a {@link DurabilityPolicy}, always the active segment first and
+ * the index after it, so a durable index record never points at bytes that are not. Under a
+ * per-write policy {@link #append} returns a sequence number that {@link #sync} waits on; appends
+ * that wait while another force is running share the next one, as in a
+ * {@link com.digitallocker.dao.GroupCommitWriter}. Under an interval policy the background thread
+ * forces both files at most once per interval.
+ */
+final class PackStore {
+    static final String DIRECTORY = "packs";
+    private static final String INDEX_LOG = "index.log";
+    private static final String SEGMENT_SUFFIX = ".pack";
+    private static final double DEAD_RATIO_THRESHOLD = 0.5;
+
+    private final Path directory;
+    private final Path indexLog;
+    private final long segmentSize;
+    private final Map<String, Location> locations = new ConcurrentHashMap<>(); // Guarded by this for updates.
+    private final Map<Integer, Segment> segments = new HashMap<>(); // Guarded by this.
+    private final Set<Integer> pendingCompactions = new HashSet<>(); // Guarded by this.
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pack-compactor"); // Also runs interval syncs.
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final DurabilityPolicy durability;
+    private final FileChannel indexChannel; // Open for appends; guarded by this.
+    private final Object syncLock = new Object(); // Held while the segment and index are forced.
+    private int activeSegment;
+    private FileChannel activeChannel; // Open for writes to the active segment, or null; guarded by this.
+    private long appends;          // Appends written so far; guarded by this.
+    private boolean syncScheduled; // True while an interval sync is pending; guarded by this.
+    private long syncedAppends;    // Appends forced to disk; guarded by syncLock.
+
+    /**
+     * Opens the pack segments in a directory and loads their index.
+     *
+     * @param directory The directory holding the segments (e.g., `data/.blobs/packs`).
+     * @param segmentSize The size at which the active segment is closed and a new one started.
+     * @param referenced The names of the blobs still referenced; any other packed blob is dropped.
+     * @param durability When appended blobs and their index records are forced to disk.
+     * @throws IOException If the directory cannot be created or the index cannot be read or rewritten.
+     */
+    PackStore(Path directory, long segmentSize, Set<String> referenced, DurabilityPolicy durability) throws IOException {
+        this.directory = directory;
+        this.indexLog = directory.resolve(INDEX_LOG);
+        this.segmentSize = segmentSize;
+        this.durability = durability;
+        Files.createDirectories(directory);
+        int lastSegment = loadSegments();
+        loadIndex(referenced);
+        this.indexChannel = FileChannel.open(indexLog, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+
+        // Keep appending to the last segment if it has room, and clear out segments that are all dead.
+        Segment last = segments.get(lastSegment);
+        activeSegment = last != null && last.live > 0 && last.size < segmentSize ? lastSegment : lastSegment + 1;
+        for (Map.Entry<Integer, Segment> entry : new ArrayList<>(segments.entrySet())) {
+            if (entry.getKey() != activeSegment && entry.getValue().live == 0) {
+                segments.remove(entry.getKey());
+                Files.deleteIfExists(segmentPath(entry.getKey()));
+            } else {
+                maybeScheduleCompaction(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Returns true if a blob with the given name is packed.
+     */
+    boolean contains(String name) {
+        return locations.containsKey(name);
+    }
+
+    /**
+     * Returns the stored size of a packed blob, or -1 if there is no such blob.
+     */
+    long sizeOf(String name) {
+        Location location = locations.get(name);
+        return location == null ? -1 : location.length;
+    }
+
+    /**
+     * Appends a blob to the active segment and records where it is. The blob can be read at once;
+     * pass the returned number to {@link #sync} to wait until it is durable.
+     *
+     * @param name The blob's name.
+     * @param content The blob's stored bytes, from its position to its limit.
+     * @return The append's sequence number.
+     * @throws IOException If the blob or its index record cannot be written.
+     */
+    synchronized long append(String name, ByteBuffer content) throws IOException {
+        Location location = write(content);
+        appendIndex("+|" + name + "|" + location.segment + "|" + location.offset + "|" + location.length);
+        locations.put(name, location);
+        if (durability.syncsPeriodically() && !syncScheduled) {
+            syncScheduled = true;
+            background.schedule(this::syncWritten, durability.getIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+        return ++appends;
+    }
+
+    /**
+     * Returns the sequence number of the latest append, e.g. to wait for a blob found already
+     * packed by a concurrent store.
+     */
+    synchronized long lastAppend() {
+        return appends;
+    }
+
+    /**
+     * Waits until an append is durable, if the policy syncs each write: forces the active segment
+     * and then the index, unless a force that started after the append has already done so.
+     *
+     * @param append A sequence number returned by {@link #append} or {@link #lastAppend}, or 0.
+     * @throws IOException If the segment or the index cannot be forced.
+     */
+    void sync(long append) throws IOException {
+        if (append == 0 || !durability.syncsEachWrite()) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedAppends < append) {
+                forceWritten();
+            }
+        }
+    }
+
+    /**
+     * Forgets a packed blob. Its bytes are reclaimed when its segment is compacted.
+     *
+     * @param name The blob's name.
+     * @return true if the blob was packed, false if there is no such blob.
+     * @throws IOException If the removal cannot be recorded.
+     */
+    synchronized boolean remove(String name) throws IOException {
+        Location location = locations.get(name);
+        if (location == null) {
+            return false;
+        }
+        appendIndex("-|" + name);
+        locations.remove(name);
+        segments.get(location.segment).live -= location.length;
+        maybeScheduleCompaction(location.segment);
+        return true;
+    }
+
+    /**
+     * Opens a packed blob for reading. If compaction moves the blob between finding it and
+     * opening its segment, it is opened at its new place.
+     *
+     * @param name The blob's name.
+     * @return A read-only channel over the blob's stored bytes.
+     * @throws NoSuchFileException If there is no such blob.
+     * @throws IOException If the segment cannot be opened.
+     */
+    FileChannel open(String name) throws IOException {
+        Location location = locations.get(name);
+        if (location == null) {
+            throw new NoSuchFileException(name);
+        }
+        FileChannel segment;
+        try {
+            segment = FileChannel.open(segmentPath(location.segment), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            Location moved = locations.get(name);
+            if (moved == null || moved.segment == location.segment) {
+                throw e;
+            }
+            location = moved;
+            segment = FileChannel.open(segmentPath(location.segment), StandardOpenOption.READ);
+        }
+        return new PackedBlobChannel(segment, location.offset, location.length);
+    }
+
+    /**
+     * Copies the live blobs of a closed segment to the active segment and deletes it.
+     * The copies and their index records are forced to disk before the segment is deleted.
+     *
+     * @param id The segment to compact.
+     * @throws IOException If the blobs cannot be copied; the segment is then left in place.
+     */
+    synchronized void compact(int id) throws IOException {
+        if (id == activeSegment || !segments.containsKey(id)) {
+            return;
+        }
+        Map<String, Location> moved = new HashMap<>();
+        try (FileChannel source = FileChannel.open(segmentPath(id), StandardOpenOption.READ)) {
+            for (Map.Entry<String, Location> entry : locations.entrySet()) {
+                Location location = entry.getValue();
+                if (location.segment != id) {
+                    continue;
+                }
+                ByteBuffer content = ByteBuffer.allocate((int) location.length);
+                while (content.hasRemaining()) {
+                    if (source.read(content, location.offset + content.position()) < 0) {
+                        throw new IOException("Pack segment " + id + " is truncated.");
+                    }
+                }
+                moved.put(entry.getKey(), write(content.flip()));
+            }
+        } catch (NoSuchFileException e) {
+            if (!moved.isEmpty() || hasLiveBlobs(id)) {
+                throw e;
+            }
+        }
+        if (!moved.isEmpty()) {
+            activeChannel.force(false);
+            for (Map.Entry<String, Location> entry : moved.entrySet()) {
+                Location location = entry.getValue();
+                appendIndex("+|" + entry.getKey() + "|" + location.segment + "|" + location.offset + "|" + location.length);
+            }
+            indexChannel.force(false);
+            locations.putAll(moved);
+        }
+        segments.remove(id);
+        Files.deleteIfExists(segmentPath(id));
+    }
+
+    /**
+     * Returns the number of segments on disk.
+     */
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private boolean hasLiveBlobs(int id) {
+        for (Location location : locations.values()) {
+            if (location.segment == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes content at the end of the active segment, starting a new segment first if it would
+     * not fit. Must be called holding the lock.
+     */
+    private Location write(ByteBuffer content) throws IOException {
+        long length = content.remaining();
+        Segment active = segments.get(activeSegment);
+        if (active != null && active.size > 0 && active.size + length > segmentSize) {
+            closeActiveSegment();
+            active = null;
+        }
+        if (active == null) {
+            active = new Segment(0);
+            segments.put(activeSegment, active);
+        }
+        if (activeChannel == null) {
+            activeChannel = FileChannel.open(segmentPath(activeSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        long offset = active.size;
+        try {
+            while (content.hasRemaining()) {
+                activeChannel.write(content, offset + (length - content.remaining()));
+            }
+        } catch (IOException e) {
+            active.size = Math.max(active.size, activeChannel.size()); // A partial write is dead space.
+            throw e;
+        }
+        active.size += length;
+        active.live += length;
+        return new Location(activeSegment, offset, length);
+    }
+
+    /**
+     * Forces every append written so far: the active segment, then the index. Earlier segments
+     * were forced when they were closed. Must be called holding syncLock, not the store's lock,
+     * so appends continue while the files are forced.
+     */
+    private void forceWritten() throws IOException {
+        long written;
+        FileChannel segment;
+        synchronized (this) {
+            written = appends;
+            segment = activeChannel;
+        }
+        if (segment != null) {
+            try {
+                segment.force(false);
+            } catch (ClosedChannelException e) {
+                // The segment was closed meanwhile, which forces it first.
+            }
+        }
+        indexChannel.force(false);
+        syncedAppends = written;
+    }
+
+    private void syncWritten() {
+        synchronized (this) {
+            syncScheduled = false; // Appends from here on schedule the next sync.
+        }
+        try {
+            synchronized (syncLock) {
+                forceWritten();
+            }
+        } catch (IOException e) {
+            System.err.println("Error syncing pack segments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the background thread once the compactions and the interval sync already queued have
+     * run, and closes the segment and index files.
+     *
+     * @throws IOException If a file cannot be closed, or the wait is interrupted.
+     */
+    void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for pack compaction.");
+        }
+        synchronized (this) {
+            if (activeChannel != null) {
+                activeChannel.close();
+                activeChannel = null;
+            }
+            indexChannel.close();
+        }
+    }
+
+    private void closeActiveSegment() throws IOException {
+        int closed = activeSegment;
+        if (activeChannel != null) {
+            activeChannel.force(false);
+            activeChannel.close();
+            activeChannel = null;
+        }
+        activeSegment++;
+        maybeScheduleCompaction(closed);
+    }
+
+    /**
+     * Queues a closed segment for compaction once enough of it is dead. Must be called holding the lock.
+     */
+    private void maybeScheduleCompaction(int id) {
+        Segment segment = segments.get(id);
+        if (id == activeSegment || segment == null || segment.size == 0
+                || segment.live > segment.size * (1 - DEAD_RATIO_THRESHOLD) || !pendingCompactions.add(id)) {
+            return;
+        }
+        background.execute(() -> {
+            try {
+                compact(id);
+            } catch (IOException e) {
+                System.err.println("Error compacting pack segment " + id + ": " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    pendingCompactions.remove(id);
+                }
+            }
+        });
+    }
+
+    private void appendIndex(String record) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            indexChannel.write(line);
+        }
+    }
+
+    /**
+     * Finds the segments on disk and returns the highest segment number, or 0 if there are none.
+     */
+    private int loadSegments() throws IOException {
+        int last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    int id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(id, new Segment(Files.size(file)));
+                    last = Math.max(last, id);
+                } catch (NumberFormatException e) {
+                    System.err.println("Warning: Unexpected file in pack directory: " + name);
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Replays the index, drops blobs that are unreferenced or whose bytes are missing, and
+     * rewrites it with one record per blob.
+     */
+    private void loadIndex(Set<String> referenced) throws IOException {
+        if (Files.exists(indexLog)) {
+            try (BufferedReader reader = Files.newBufferedReader(indexLog, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\\|");
+                    try {
+                        if (fields[0].equals("+") && fields.length == 5) {
+                            locations.put(fields[1], new Location(Integer.parseInt(fields[2]),
+                                    Long.parseLong(fields[3]), Long.parseLong(fields[4])));
+                            continue;
+                        }
+                        if (fields[0].equals("-") && fields.length == 2) {
+                            locations.remove(fields[1]);
+                            continue;
+                        }
+                    } catch (NumberFormatException e) {
+                        // Reported below.
+                    }
+                    System.err.println("Warning: Corrupted pack index line: " + line);
+                }
+            }
+        }
+        locations.entrySet().removeIf(entry -> {
+            Location location = entry.getValue();
+            Segment segment = segments.get(location.segment);
+            if (segment == null || location.offset + location.length > segment.size) {
+                if (referenced.contains(entry.getKey())) {
+                    System.err.println("Warning: Packed blob " + entry.getKey() + " is missing from segment " + location.segment + ".");
+                }
+                return true;
+            }
+            return !referenced.contains(entry.getKey());
+        });
+        for (Location location : locations.values()) {
+            segments.get(location.segment).live += location.length;
+        }
+
+        // Always synced: a rename that reached the disk before the content would lose every location.
+        DurableFiles.replace(indexLog, true, writer -> {
+            for (Map.Entry<String, Location> entry : locations.entrySet()) {
+                Location location = entry.getValue();
+                writer.write("+|" + entry.getKey() + "|" + location.segment + "|" + location.offset + "|" + location.length);
+                writer.newLine();
+            }
+        });
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("%08d%s", id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Where a packed blob's bytes are.
+     */
+    private static final class Location {
+        final int segment;
+        final long offset;
+        final long length;
+
+        Location(int segment, long offset, long length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The size of a segment and how many of its bytes belong to live blobs.
+     */
+    private static final class Segment {
+        long size;
+        long live;
+
+        Segment(long size) {
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+// Storage class: PackedBlobChannel.java
+package com.digitallocker.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only view of one blob inside a pack segment, as a FileChannel whose content is the
+ * blob's bytes alone: positions and the size are relative to the blob. Every read is a positional
+ * read of the segment, and {@link #transferTo} transfers straight from the segment, so copies stay
+ * zero-copy. Closing the view closes its segment channel.
+ */
+final class PackedBlobChannel extends FileChannel {
+    private final FileChannel segment;
+    private final long start;
+    private final long length;
+    private long position;
+
+    /**
+     * @param segment The segment, opened for reading; owned by this channel from now on.
+     * @param start The offset of the blob's first byte in the segment.
+     * @param length The size of the blob.
+     */
+    PackedBlobChannel(FileChannel segment, long start, long length) {
+        this.segment = segment;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int wanted = dsts[i].remaining();
+            int read = read(dsts[i]);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+            if (read < wanted) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position.");
+        }
+        if (position >= length) {
+            return -1;
+        }
+        int limit = dst.limit();
+        dst.limit(dst.position() + (int) Math.min(dst.remaining(), length - position));
+        try {
+            return segment.read(dst, start + position);
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position.");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() {
+        return length;
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Negative position or count.");
+        }
+        if (position >= length) {
+            return 0;
+        }
+        return segment.transferTo(start + position, Math.min(count, length - position), target);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        if (mode != MapMode.READ_ONLY) {
+            throw new NonWritableChannelException();
+        }
+        if (position < 0 || size < 0 || position + size > length) {
+            throw new IllegalArgumentException("Mapping beyond the blob.");
+        }
+        return segment.map(MapMode.READ_ONLY, start + position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Packed blobs cannot be locked.");
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Packed blobs cannot be locked.");
+    }
+
+    @Override
+    public void force(boolean metaData) {
+        // Read-only: nothing to flush.
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public FileChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        segment.close();
+    }
+}
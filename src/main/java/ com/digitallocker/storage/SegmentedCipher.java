@@ -0,0 +1,326 @@
+// Storage class: SegmentedCipher.java
+package com.digitallocker.storage;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Streaming AES-GCM encryption in independently authenticated segments.
+ * <p>
+ * Encrypted content starts with a 47-byte header: the magic {@code DLC2}, the plaintext segment
+ * size, a random 32-byte salt and a random 7-byte nonce prefix. As in Tink's AES-GCM-HKDF streaming
+ * AEAD, content is never encrypted under the caller's key itself: each blob gets its own AES-256 key,
+ * derived with HKDF-SHA256 from the caller's key and the salt, so a user's key can protect any
+ * number of blobs without nonces repeating under one AES key. The plaintext follows in
+ * {@link #SEGMENT_SIZE} segments, each encrypted with AES-GCM under its own nonce (nonce prefix,
+ * segment index, last-segment flag) with the header as associated data, and stored with its 16-byte
+ * tag. Every segment but the last is full, so the position of any segment is known without
+ * reading the ones before it: a ranged read decrypts only the segments it touches. The
+ * last-segment flag makes truncation at a segment boundary detectable, and the index in the nonce
+ * makes reordering detectable.
+ * <p>
+ * AES-GCM is run through the JDK's {@link Cipher}, which uses the AES-NI and carry-less multiply
+ * intrinsics where the CPU has them.
+ */
+public final class SegmentedCipher {
+    public static final String CODEC = "aes-gcm";
+    public static final int SEGMENT_SIZE = 64 * 1024;
+    /** The algorithm name of the keys passed in, which per-blob AES keys are derived from. */
+    public static final String KEY_ALGORITHM = "HKDF-SHA256";
+
+    private static final int SALT_SIZE = 32;
+    private static final int NONCE_PREFIX_SIZE = 7;
+    private static final int HEADER_SIZE = 8 + SALT_SIZE + NONCE_PREFIX_SIZE;
+    private static final int NONCE_PREFIX_OFFSET = 8 + SALT_SIZE;
+    private static final int AES_KEY_SIZE = 32;
+    private static final int TAG_SIZE = 16;
+    private static final int ENCRYPTED_SEGMENT_SIZE = SEGMENT_SIZE + TAG_SIZE;
+    private static final int MAGIC = 0x444C4332; // "DLC2"
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SegmentedCipher() {
+    }
+
+    /**
+     * Returns a channel that encrypts what is written to it and writes the result to {@code out}.
+     * The last segment is written, and {@code out} closed, when the returned channel is closed.
+     *
+     * @param out The channel to write the encrypted content to.
+     * @param key The key the blob's AES key is derived from.
+     * @return The encrypting channel.
+     * @throws IOException If the header cannot be written.
+     */
+    public static WritableByteChannel encrypt(WritableByteChannel out, SecretKey key) throws IOException {
+        return new EncryptingChannel(out, key);
+    }
+
+    /**
+     * Returns a channel that reads the decrypted content of an encrypted file from the start.
+     * Closing it closes the file.
+     *
+     * @param in The encrypted file.
+     * @param key The key the file was encrypted with.
+     * @return The decrypting channel.
+     * @throws IOException If the header cannot be read or is not valid.
+     */
+    public static ReadableByteChannel decrypt(FileChannel in, SecretKey key) throws IOException {
+        return new DecryptingChannel(in, key);
+    }
+
+    /**
+     * Decrypts a byte range of an encrypted file and writes it to a channel, reading only the
+     * segments that overlap the range, with positional reads. Neither channel is closed.
+     *
+     * @param in The encrypted file.
+     * @param key The key the file was encrypted with.
+     * @param offset The plaintext offset of the first byte to copy.
+     * @param length The maximum number of bytes to copy.
+     * @param out The channel to write.
+     * @return The number of bytes written, fewer than {@code length} if the content ends first.
+     * @throws IOException If an I/O error occurs or a segment fails authentication.
+     */
+    public static long copyRange(FileChannel in, SecretKey key, long offset, long length, WritableByteChannel out) throws IOException {
+        SegmentReader reader = new SegmentReader(in, key);
+        ByteBuffer plaintext = ByteBuffer.allocate(SEGMENT_SIZE);
+        long end = length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length; // Saturates instead of overflowing.
+        long copied = 0;
+        for (long segment = offset / SEGMENT_SIZE; segment < reader.segmentCount && segment * SEGMENT_SIZE < end; segment++) {
+            reader.read(segment, plaintext);
+            long segmentStart = segment * SEGMENT_SIZE;
+            int from = (int) Math.max(0, offset - segmentStart);
+            int to = (int) Math.min(plaintext.limit(), end - segmentStart);
+            if (from >= to) {
+                break;
+            }
+            plaintext.position(from).limit(to);
+            while (plaintext.hasRemaining()) {
+                copied += out.write(plaintext);
+            }
+        }
+        return copied;
+    }
+
+    private static byte[] nonce(byte[] header, long segment, boolean last) {
+        if (segment > 0xFFFFFFFFL) {
+            throw new IllegalStateException("Content too large for one encrypted stream.");
+        }
+        byte[] nonce = new byte[12];
+        System.arraycopy(header, NONCE_PREFIX_OFFSET, nonce, 0, NONCE_PREFIX_SIZE);
+        nonce[7] = (byte) (segment >>> 24);
+        nonce[8] = (byte) (segment >>> 16);
+        nonce[9] = (byte) (segment >>> 8);
+        nonce[10] = (byte) segment;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    /**
+     * Derives a blob's AES key from the caller's key and the salt in the blob's header, with the
+     * header's magic and segment size as HKDF info.
+     */
+    private static SecretKey blobKey(SecretKey key, byte[] header) {
+        byte[] salt = new byte[SALT_SIZE];
+        System.arraycopy(header, 8, salt, 0, SALT_SIZE);
+        byte[] info = new byte[8];
+        System.arraycopy(header, 0, info, 0, 8);
+        return new SecretKeySpec(Hkdf.derive(key.getEncoded(), salt, info, AES_KEY_SIZE), "AES");
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            // AES/GCM/NoPadding is required of every Java platform.
+            throw new IllegalStateException(TRANSFORMATION + " not available.", e);
+        }
+    }
+
+    private static class EncryptingChannel implements WritableByteChannel {
+        private final WritableByteChannel out;
+        private final SecretKey key;
+        private final Cipher cipher = newCipher();
+        private final byte[] header = new byte[HEADER_SIZE];
+        private final ByteBuffer plaintext = ByteBuffer.allocate(SEGMENT_SIZE);
+        private final ByteBuffer ciphertext = ByteBuffer.allocate(ENCRYPTED_SEGMENT_SIZE);
+        private long segment;
+        private boolean open = true;
+
+        EncryptingChannel(WritableByteChannel out, SecretKey key) throws IOException {
+            this.out = out;
+            byte[] random = new byte[SALT_SIZE + NONCE_PREFIX_SIZE];
+            RANDOM.nextBytes(random);
+            ByteBuffer.wrap(header).putInt(MAGIC).putInt(SEGMENT_SIZE).put(random);
+            this.key = blobKey(key, header);
+            writeFully(ByteBuffer.wrap(header));
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            int written = src.remaining();
+            while (src.hasRemaining()) {
+                // A full segment is only sealed once more data arrives, since the last one is flagged.
+                if (!plaintext.hasRemaining()) {
+                    sealSegment(false);
+                }
+                int length = Math.min(src.remaining(), plaintext.remaining());
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + length);
+                plaintext.put(slice);
+                src.position(src.position() + length);
+            }
+            return written;
+        }
+
+        private void sealSegment(boolean last) throws IOException {
+            plaintext.flip();
+            ciphertext.clear();
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce(header, segment, last)));
+                cipher.updateAAD(header);
+                cipher.doFinal(plaintext, ciphertext);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Error encrypting segment " + segment + ".", e);
+            }
+            ciphertext.flip();
+            writeFully(ciphertext);
+            plaintext.clear();
+            segment++;
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!open) {
+                return;
+            }
+            open = false;
+            try {
+                sealSegment(true);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads and authenticates individual segments of an encrypted file by position.
+     */
+    private static class SegmentReader {
+        private final FileChannel in;
+        private final SecretKey key;
+        private final Cipher cipher = newCipher();
+        private final byte[] header = new byte[HEADER_SIZE];
+        private final ByteBuffer ciphertext = ByteBuffer.allocate(ENCRYPTED_SEGMENT_SIZE);
+        private final long fileSize;
+        private final long segmentCount;
+
+        SegmentReader(FileChannel in, SecretKey key) throws IOException {
+            this.in = in;
+            readFully(ByteBuffer.wrap(header), 0);
+            ByteBuffer fields = ByteBuffer.wrap(header);
+            if (fields.getInt() != MAGIC || fields.getInt() != SEGMENT_SIZE) {
+                throw new IOException("Not an encrypted locker file.");
+            }
+            this.key = blobKey(key, header);
+            fileSize = in.size();
+            long body = fileSize - HEADER_SIZE;
+            segmentCount = Math.max(1, (body + ENCRYPTED_SEGMENT_SIZE - 1) / ENCRYPTED_SEGMENT_SIZE);
+        }
+
+        /**
+         * Decrypts one segment into {@code plaintext}, which is left ready to be read.
+         */
+        void read(long segment, ByteBuffer plaintext) throws IOException {
+            long position = HEADER_SIZE + segment * ENCRYPTED_SEGMENT_SIZE;
+            ciphertext.clear().limit((int) Math.min(ENCRYPTED_SEGMENT_SIZE, fileSize - position));
+            if (ciphertext.limit() < TAG_SIZE) {
+                throw new IOException("Encrypted file is truncated.");
+            }
+            readFully(ciphertext, position);
+            ciphertext.flip();
+            plaintext.clear();
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key,
+                        new GCMParameterSpec(TAG_SIZE * 8, nonce(header, segment, segment == segmentCount - 1)));
+                cipher.updateAAD(header);
+                cipher.doFinal(ciphertext, plaintext);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Encrypted segment " + segment + " failed authentication.", e);
+            }
+            plaintext.flip();
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = in.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Encrypted file is truncated.");
+                }
+                position += read;
+            }
+        }
+    }
+
+    private static class DecryptingChannel implements ReadableByteChannel {
+        private final FileChannel in;
+        private final SegmentReader reader;
+        private final ByteBuffer plaintext = ByteBuffer.allocate(SEGMENT_SIZE);
+        private long nextSegment;
+
+        DecryptingChannel(FileChannel in, SecretKey key) throws IOException {
+            this.in = in;
+            this.reader = new SegmentReader(in, key);
+            plaintext.limit(0);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            while (!plaintext.hasRemaining()) {
+                if (nextSegment == reader.segmentCount) {
+                    return -1;
+                }
+                reader.read(nextSegment++, plaintext);
+            }
+            int length = Math.min(dst.remaining(), plaintext.remaining());
+            ByteBuffer slice = plaintext.duplicate();
+            slice.limit(slice.position() + length);
+            dst.put(slice);
+            plaintext.position(plaintext.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return in.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
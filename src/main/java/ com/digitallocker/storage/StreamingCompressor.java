@@ -0,0 +1,224 @@
+// Storage class: StreamingCompressor.java
+package com.digitallocker.storage;
+
+import com.digitallocker.util.CopyEngine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses upload content with a {@link Deflater} while it is being stored, and decompresses it
+ * again while it is being downloaded, without holding more than one block in memory.
+ * <p>
+ * Before committing to compression, the first {@link #SAMPLE_SIZE} bytes are deflated with a
+ * {@code SYNC_FLUSH}. If that saves less than {@link #MIN_SAVINGS} of the sample, the content is
+ * assumed to be incompressible (already-compressed media, archives, encrypted data) and the whole
+ * stream is stored as-is. Otherwise the sample's output is kept, so the sampling costs no extra
+ * work, and the rest of the stream is deflated after it.
+ * <p>
+ * Compressed content is a zlib stream, whose Adler-32 trailer is verified on decompression.
+ */
+public class StreamingCompressor {
+    public static final String CODEC = "deflate";
+    public static final int SAMPLE_SIZE = 64 * 1024;
+    public static final double MIN_SAVINGS = 0.1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CopyEngine copyEngine;
+
+    /**
+     * Constructs a StreamingCompressor.
+     *
+     * @param copyEngine The engine used to copy content that is stored as-is.
+     */
+    public StreamingCompressor(CopyEngine copyEngine) {
+        this.copyEngine = copyEngine;
+    }
+
+    /**
+     * Copies everything remaining in a channel to another channel, deflating it if that pays off.
+     * Neither channel is closed.
+     *
+     * @param in The channel to read until end of stream.
+     * @param out The channel to write the stored form to.
+     * @param digest The digest to update with the uncompressed bytes.
+     * @param level The Deflater level, or {@link CompressionPolicy#STORE} to store the content as-is.
+     * @return The sizes before and after compression, and the codec used.
+     * @throws IOException If an I/O error occurs while reading or writing.
+     */
+    public Result compress(ReadableByteChannel in, WritableByteChannel out, MessageDigest digest, int level) throws IOException {
+        byte[] input = new byte[Math.max(SAMPLE_SIZE, BUFFER_SIZE)];
+        int sampleLength = readFully(in, input, SAMPLE_SIZE);
+        digest.update(input, 0, sampleLength);
+        if (level == CompressionPolicy.STORE || sampleLength == 0) {
+            return storeAsIs(in, out, digest, input, sampleLength);
+        }
+
+        Deflater deflater = new Deflater(level);
+        try {
+            byte[] output = new byte[BUFFER_SIZE];
+            ByteArrayOutputStream sampleOutput = new ByteArrayOutputStream(sampleLength / 2 + 64);
+            deflater.setInput(input, 0, sampleLength);
+            int sampleOutputLength;
+            do {
+                sampleOutputLength = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+                sampleOutput.write(output, 0, sampleOutputLength);
+            } while (sampleOutputLength == output.length);
+            if (sampleOutput.size() > sampleLength * (1 - MIN_SAVINGS)) {
+                return storeAsIs(in, out, digest, input, sampleLength);
+            }
+
+            long rawSize = sampleLength;
+            long storedSize = sampleOutput.size();
+            writeFully(out, sampleOutput.toByteArray(), sampleOutput.size());
+            int read;
+            while ((read = readFully(in, input, input.length)) > 0) {
+                digest.update(input, 0, read);
+                rawSize += read;
+                deflater.setInput(input, 0, read);
+                while (!deflater.needsInput()) {
+                    int length = deflater.deflate(output);
+                    writeFully(out, output, length);
+                    storedSize += length;
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int length = deflater.deflate(output);
+                writeFully(out, output, length);
+                storedSize += length;
+            }
+            return new Result(rawSize, storedSize, CODEC);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private Result storeAsIs(ReadableByteChannel in, WritableByteChannel out, MessageDigest digest,
+                             byte[] sample, int sampleLength) throws IOException {
+        writeFully(out, sample, sampleLength);
+        long size = sampleLength + copyEngine.copy(in, out, digest).getSize();
+        return new Result(size, size, null);
+    }
+
+    /**
+     * Wraps a channel of stored content so that reads return the original bytes.
+     * Closing the returned channel closes the stored channel.
+     *
+     * @param stored The stored content.
+     * @param codec The codec the content was stored with, or null if it was stored as-is.
+     * @return A channel of the uncompressed content.
+     */
+    public static ReadableByteChannel decompress(ReadableByteChannel stored, String codec) {
+        if (codec == null) {
+            return stored;
+        }
+        if (!codec.equals(CODEC)) {
+            throw new IllegalArgumentException("Unknown compression codec: " + codec);
+        }
+        Inflater inflater = new Inflater();
+        return Channels.newChannel(new InflaterInputStream(Channels.newInputStream(stored), inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end(); // Not done by InflaterInputStream for a caller-supplied Inflater.
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies a byte range of the uncompressed content to a channel. Deflated content cannot be
+     * read from the middle, so the bytes before the range are decompressed and skipped.
+     * Neither channel is closed.
+     *
+     * @param uncompressed The content, as returned by {@link #decompress}.
+     * @param offset The offset of the first byte to copy.
+     * @param length The maximum number of bytes to copy.
+     * @param out The channel to write.
+     * @return The number of bytes written, fewer than {@code length} if the content ends first.
+     * @throws IOException If an I/O error occurs while reading or writing.
+     */
+    public static long copyRange(ReadableByteChannel uncompressed, long offset, long length, WritableByteChannel out) throws IOException {
+        InputStream in = Channels.newInputStream(uncompressed);
+        long skipped = 0;
+        while (skipped < offset) {
+            long count = in.skip(offset - skipped);
+            if (count <= 0) {
+                if (in.read() < 0) {
+                    return 0;
+                }
+                count = 1;
+            }
+            skipped += count;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long copied = 0;
+        while (copied < length) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, length - copied));
+            if (read < 0) {
+                break;
+            }
+            writeFully(out, buffer, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    private static int readFully(ReadableByteChannel in, byte[] buffer, int length) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+        while (target.hasRemaining() && in.read(target) >= 0) {
+            // Keep reading: channels such as sockets return short reads.
+        }
+        return target.position();
+    }
+
+    private static void writeFully(WritableByteChannel out, byte[] buffer, int length) throws IOException {
+        ByteBuffer source = ByteBuffer.wrap(buffer, 0, length);
+        while (source.hasRemaining()) {
+            out.write(source);
+        }
+    }
+
+    /**
+     * The outcome of storing one stream.
+     */
+    public static class Result {
+        private final long rawSize;
+        private final long storedSize;
+        private final String codec;
+
+        public Result(long rawSize, long storedSize, String codec) {
+            this.rawSize = rawSize;
+            this.storedSize = storedSize;
+            this.codec = codec;
+        }
+
+        public long getRawSize() {
+            return rawSize;
+        }
+
+        public long getStoredSize() {
+            return storedSize;
+        }
+
+        /**
+         * Returns {@link #CODEC} if the content was compressed, or null if it was stored as-is.
+         */
+        public String getCodec() {
+            return codec;
+        }
+    }
+}
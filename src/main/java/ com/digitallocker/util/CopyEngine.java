@@ -0,0 +1,305 @@
+// Utility class: CopyEngine.java
+package com.digitallocker.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32C;
+
+/**
+ * Copies files between paths with {@link FileChannel}s and reports what was copied.
+ * <p>
+ * In the default mode, data moves with {@link FileChannel#transferTo}, so the kernel copies it
+ * without passing it through Java buffers, and the size comes from the bytes transferred.
+ * A zero-copy transfer never exposes the bytes to Java, so when a checksum is requested the
+ * engine instead streams the file through one reusable direct buffer, updating a CRC32C and
+ * writing the same buffer out. The same buffered path is used when the caller supplies a
+ * {@link MessageDigest} to be updated with the content, and when the source is not a file.
+ * Either way the content is read only once.
+ * <p>
+ * Direct buffers are pooled rather than held per thread, so many short-lived request threads
+ * share a small set of buffers. They are much smaller than the transfer chunk size: every upload
+ * goes through a buffer to be hashed, and each concurrent copy holds its own buffer, so with
+ * thousands of uploads in flight, chunk-sized buffers would exhaust direct memory.
+ */
+public class CopyEngine {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    public static final int BUFFER_SIZE = 128 * 1024;
+
+    // Direct buffers kept for reuse once returned; extra buffers are left to the garbage collector.
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    // Sink for digest-only reads: accepts and drops everything written to it.
+    private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final int chunkSize;
+    private final int bufferSize;
+    private final boolean computeChecksum;
+    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a CopyEngine that uses zero-copy transfers with the default chunk size.
+     */
+    public CopyEngine() {
+        this(DEFAULT_CHUNK_SIZE, false);
+    }
+
+    /**
+     * Constructs a CopyEngine.
+     *
+     * @param chunkSize The maximum number of bytes moved per zero-copy transfer call. Buffered
+     *                  copies fill at most {@link #BUFFER_SIZE} bytes at a time.
+     * @param computeChecksum true to compute a CRC32C of the content while copying.
+     */
+    public CopyEngine(int chunkSize, boolean computeChecksum) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        this.chunkSize = chunkSize;
+        this.bufferSize = Math.min(chunkSize, BUFFER_SIZE);
+        this.computeChecksum = computeChecksum;
+    }
+
+    /**
+     * Copies a file, replacing the target if it already exists.
+     *
+     * @param source The file to read.
+     * @param target The file to write.
+     * @return The size, checksum and throughput of the copy.
+     * @throws IOException If an I/O error occurs while reading or writing.
+     */
+    public CopyResult copy(Path source, Path target) throws IOException {
+        return copy(source, target, null);
+    }
+
+    /**
+     * Copies a file, replacing the target if it already exists, and feeds the content to a digest.
+     *
+     * @param source The file to read.
+     * @param target The file to write.
+     * @param digest The digest to update with the copied bytes, or null for none.
+     * @return The size, checksum and throughput of the copy.
+     * @throws IOException If an I/O error occurs while reading or writing.
+     */
+    public CopyResult copy(Path source, Path target, MessageDigest digest) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return copy(in, out, digest);
+        }
+    }
+
+    /**
+     * Copies everything remaining in a channel to another channel. Neither channel is closed.
+     * A file source is transferred zero-copy unless a checksum or digest is needed.
+     *
+     * @param in The channel to read until end of stream.
+     * @param out The channel to write.
+     * @param digest The digest to update with the copied bytes, or null for none.
+     * @return The size, checksum and throughput of the copy.
+     * @throws IOException If an I/O error occurs while reading or writing.
+     */
+    public CopyResult copy(ReadableByteChannel in, WritableByteChannel out, MessageDigest digest) throws IOException {
+        long start = System.nanoTime();
+        long checksum = -1;
+        long size;
+        if (computeChecksum || digest != null || !(in instanceof FileChannel)) {
+            CRC32C crc = computeChecksum ? new CRC32C() : null;
+            size = copyThroughBuffer(in, out, crc, digest);
+            if (crc != null) {
+                checksum = crc.getValue();
+            }
+        } else {
+            size = transfer((FileChannel) in, out);
+        }
+        return new CopyResult(size, checksum, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads a file once, feeding its content to a digest without copying it anywhere.
+     *
+     * @param source The file to read.
+     * @param digest The digest to update with the file's bytes.
+     * @return The size, checksum and throughput of the read.
+     * @throws IOException If an I/O error occurs while reading.
+     */
+    public CopyResult digest(Path source, MessageDigest digest) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            return copy(in, DISCARD, digest);
+        }
+    }
+
+    /**
+     * Copies a byte range of a file to a channel using positional reads, so the file channel's
+     * own position is left untouched and several ranges of one channel can be copied at once.
+     * The range is zero-copy unless a checksum is needed. Stops early at end of file.
+     *
+     * @param in The file to read.
+     * @param position The offset of the first byte to copy.
+     * @param length The maximum number of bytes to copy.
+     * @param out The channel to write. It is not closed.
+     * @return The size, checksum and throughput of the copy.
+     * @throws IOException If an I/O error occurs while reading or writing.
+     */
+    public CopyResult copyRange(FileChannel in, long position, long length, WritableByteChannel out) throws IOException {
+        if (position < 0 || length < 0) {
+            throw new IllegalArgumentException("Range offset and length must not be negative.");
+        }
+        long start = System.nanoTime();
+        long fileSize = in.size();
+        // Clamped without computing position + length, which overflows for a length like Long.MAX_VALUE.
+        long end = length >= fileSize - position ? fileSize : position + length;
+        long checksum = -1;
+        long size;
+        if (computeChecksum) {
+            CRC32C crc = new CRC32C();
+            size = copyRangeThroughBuffer(in, position, end, out, crc);
+            checksum = crc.getValue();
+        } else {
+            size = transferRange(in, position, end, out);
+        }
+        return new CopyResult(size, checksum, System.nanoTime() - start);
+    }
+
+    private long transferRange(FileChannel in, long start, long end, WritableByteChannel out) throws IOException {
+        long position = start;
+        while (position < end) {
+            long transferred = in.transferTo(position, Math.min(chunkSize, end - position), out);
+            if (transferred <= 0) {
+                break; // The source shrank while we were copying it.
+            }
+            position += transferred;
+        }
+        return Math.max(0, position - start);
+    }
+
+    private long copyRangeThroughBuffer(FileChannel in, long start, long end, WritableByteChannel out, CRC32C crc) throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            long position = start;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                int read = in.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                position += read;
+                crc.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            return Math.max(0, position - start);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private long transfer(FileChannel in, WritableByteChannel out) throws IOException {
+        long start = in.position();
+        long position = start;
+        long size = in.size();
+        while (position < size) {
+            long transferred = in.transferTo(position, Math.min(chunkSize, size - position), out);
+            if (transferred <= 0) {
+                break; // The source shrank while we were copying it.
+            }
+            position += transferred;
+        }
+        in.position(position);
+        return position - start;
+    }
+
+    private long copyThroughBuffer(ReadableByteChannel in, WritableByteChannel out, CRC32C crc, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            long size = 0;
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                size += buffer.remaining();
+                if (crc != null) {
+                    crc.update(buffer.duplicate());
+                }
+                if (digest != null) {
+                    digest.update(buffer.duplicate());
+                }
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+            return size;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffer);
+        }
+    }
+
+    /**
+     * The outcome of a single copy.
+     */
+    public static class CopyResult {
+        private final long size;
+        private final long checksum;
+        private final long elapsedNanos;
+
+        public CopyResult(long size, long checksum, long elapsedNanos) {
+            this.size = size;
+            this.checksum = checksum;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the CRC32C of the copied content, or -1 if the engine does not compute checksums.
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getBytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : size * 1_000_000_000.0 / elapsedNanos;
+        }
+    }
+}
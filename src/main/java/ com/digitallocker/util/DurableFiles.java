@@ -0,0 +1,152 @@
+// Utility class: DurableFiles.java
+package com.digitallocker.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Crash-safe replacement and repair of line-oriented files.
+ * <p>
+ * A file is replaced by writing the new content to a {@link #TEMP_SUFFIX} sibling and moving it
+ * over the old file atomically, so after a crash the file holds either all of the old content or
+ * all of the new, never a mix or nothing. When the replacement is synced, the temporary file is
+ * fsynced before the move and the directory after it, so the rename cannot reach the disk ahead
+ * of the content it points to.
+ */
+public final class DurableFiles {
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int TAIL_SCAN_BLOCK = 4096;
+
+    private DurableFiles() {
+    }
+
+    /**
+     * Writes the content of a file.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(BufferedWriter writer) throws IOException;
+    }
+
+    /**
+     * Writes the content of a binary file.
+     */
+    @FunctionalInterface
+    public interface BinaryContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Atomically replaces a file, or creates it, with the content written by {@code content}.
+     * Text is written in UTF-8.
+     *
+     * @param target The file to replace.
+     * @param sync true to fsync the new content and the directory entry before returning.
+     * @param content Writes the new content.
+     * @throws IOException If the content cannot be written or moved into place; the target is then unchanged.
+     */
+    public static void replace(Path target, boolean sync, ContentWriter content) throws IOException {
+        replaceBinary(target, sync, out -> {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            content.writeTo(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Atomically replaces a file, or creates it, with the bytes written by {@code content}.
+     *
+     * @param target The file to replace.
+     * @param sync true to fsync the new content and the directory entry before returning.
+     * @param content Writes the new content to a buffered stream, which it must not close.
+     * @throws IOException If the content cannot be written or moved into place; the target is then unchanged.
+     */
+    public static void replaceBinary(Path target, boolean sync, BinaryContentWriter content) throws IOException {
+        Path tempFile = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            content.writeTo(out);
+            out.flush();
+            if (sync) {
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (sync) {
+            syncDirectory(target.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Fsyncs a directory, so entries created, renamed or removed in it survive a power loss.
+     * Does nothing on platforms that cannot open a directory for syncing (e.g. Windows).
+     *
+     * @param directory The directory to sync.
+     */
+    public static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported here; the rename is as durable as the file system makes it.
+        }
+    }
+
+    /**
+     * Removes a partial last line left by a crash during an append, so the next append starts on
+     * a line of its own instead of being joined to the fragment. Complete lines are kept.
+     *
+     * @param file A line-oriented file whose lines all end with a line separator.
+     * @return The number of bytes removed, 0 if the file ends with a complete line or does not exist.
+     * @throws IOException If the file cannot be read or truncated.
+     */
+    public static long truncatePartialLine(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer block = ByteBuffer.allocate(TAIL_SCAN_BLOCK);
+            long end = size;
+            while (end > 0) {
+                long start = Math.max(0, end - TAIL_SCAN_BLOCK);
+                block.clear().limit((int) (end - start));
+                while (block.hasRemaining()) {
+                    if (channel.read(block, start + block.position()) < 0) {
+                        break;
+                    }
+                }
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n') {
+                        long keep = start + i + 1;
+                        if (keep < size) {
+                            channel.truncate(keep);
+                        }
+                        return size - keep;
+                    }
+                }
+                end = start;
+            }
+            // No complete line at all: the only line was torn.
+            if (size > 0) {
+                channel.truncate(0);
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+// Utility class: LegacySha256PasswordHash.java
+package com.digitallocker.util;
+
+/**
+ * The original unsalted SHA-256 scheme from {@link PasswordHasher}, kept so existing users can
+ * still log in. Its records are bare 64-character hex strings and always need rehashing.
+ */
+public class LegacySha256PasswordHash implements PasswordHashAlgorithm {
+
+    @Override
+    public String hash(String password) {
+        return PasswordHasher.hashPassword(password);
+    }
+
+    @Override
+    public boolean verify(String password, String storedHash) {
+        return PasswordHasher.verifyPassword(password, storedHash);
+    }
+
+    @Override
+    public boolean matchesFormat(String storedHash) {
+        if (storedHash.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < storedHash.length(); i++) {
+            if (Character.digit(storedHash.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean needsRehash(String storedHash) {
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+// Utility interface: PasswordHashAlgorithm.java
+package com.digitallocker.util;
+
+/**
+ * A password hashing scheme whose stored records describe how they were produced.
+ * Implementations recognise their own records, so several schemes can coexist in users.txt
+ * and older records can be upgraded when the user next logs in.
+ */
+public interface PasswordHashAlgorithm {
+
+    /**
+     * Hashes a password with a fresh salt and the algorithm's current cost.
+     *
+     * @param password The plain-text password.
+     * @return The self-describing stored record.
+     */
+    String hash(String password);
+
+    /**
+     * Checks a password against a stored record produced by this algorithm.
+     *
+     * @param password The plain-text password.
+     * @param storedHash The stored record.
+     * @return true if the password matches.
+     */
+    boolean verify(String password, String storedHash);
+
+    /**
+     * @param storedHash A stored record.
+     * @return true if the record was produced by this algorithm.
+     */
+    boolean matchesFormat(String storedHash);
+
+    /**
+     * @param storedHash A stored record produced by this algorithm.
+     * @return true if the record uses weaker parameters than the algorithm's current ones.
+     */
+    boolean needsRehash(String storedHash);
+}
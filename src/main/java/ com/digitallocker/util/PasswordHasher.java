@@ -17,6 +17,25 @@ public class PasswordHasher {
     // adaptive hashing algorithm like bcrypt or Argon2.
     // This simplified example uses SHA-256 for demonstration purposes.
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int DIGEST_LENGTH = 32; // SHA-256
+
+    // MessageDigest is not thread-safe, so each thread keeps its own instance instead of
+    // looking up the provider on every call. Hashing runs on PasswordService's fixed worker
+    // threads, so these instances are reused.
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // This exception should ideally not happen for SHA-256 as it's a standard algorithm.
+            throw new RuntimeException("SHA-256 algorithm not found.", e);
+        }
+    });
+
+    // Hex output of hashPassword, reused by each thread like its digest. The String made from it
+    // is the only per-call copy.
+    private static final ThreadLocal<char[]> HEX_BUFFERS = ThreadLocal.withInitial(() -> new char[2 * DIGEST_LENGTH]);
+
     /**
      * Hashes a plain-text password using SHA-256.
      *
@@ -24,33 +43,53 @@ public class PasswordHasher {
      * @return The SHA-256 hashed password as a hexadecimal string.
      */
     public static String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest(password.getBytes());
-            // Convert byte array to hexadecimal string.
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            // This exception should ideally not happen for SHA-256 as it's a standard algorithm.
-            throw new RuntimeException("SHA-256 algorithm not found.", e);
+        byte[] hash = DIGESTS.get().digest(password.getBytes());
+        // Convert byte array to hexadecimal characters.
+        char[] hex = HEX_BUFFERS.get();
+        for (int i = 0; i < hash.length; i++) {
+            int b = hash[i] & 0xff;
+            hex[2 * i] = HEX_DIGITS[b >>> 4];
+            hex[2 * i + 1] = HEX_DIGITS[b & 0x0f];
         }
+        return new String(hex);
     }
 
     /**
      * Verifies a plain-text password against a stored hashed password.
+     * The stored hex is decoded and the digests are compared with {@link MessageDigest#isEqual},
+     * which takes the same time however many bytes match, so it does not leak how close a guess was.
      *
      * @param plainPassword The plain-text password entered by the user.
      * @param hashedPassword The stored hashed password.
      * @return true if the plain password, when hashed, matches the stored hashed password; false otherwise.
      */
     public static boolean verifyPassword(String plainPassword, String hashedPassword) {
-        // Hash the provided plain password and compare it with the stored hash.
-        return hashPassword(plainPassword).equals(hashedPassword);
+        if (hashedPassword.length() != 2 * DIGEST_LENGTH) {
+            return false;
+        }
+        byte[] expected = new byte[DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int high = hexValue(hashedPassword.charAt(2 * i));
+            int low = hexValue(hashedPassword.charAt(2 * i + 1));
+            if (high < 0 || low < 0) {
+                return false; // Not a hash this class made.
+            }
+            expected[i] = (byte) (high << 4 | low);
+        }
+        return MessageDigest.isEqual(DIGESTS.get().digest(plainPassword.getBytes()), expected);
+    }
+
+    /**
+     * Returns the value of a lowercase hex digit, or -1 if the character is not one.
+     */
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
     }
 
     /*
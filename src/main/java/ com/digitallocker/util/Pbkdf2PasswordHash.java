@@ -0,0 +1,102 @@
+// Utility class: Pbkdf2PasswordHash.java
+package com.digitallocker.util;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashing with a configurable iteration count, using the JDK's provider.
+ * Records have the form {@code pbkdf2-sha256$<iterations>$<base64 salt>$<base64 hash>}, so each
+ * one carries the salt and cost it was made with.
+ */
+public class Pbkdf2PasswordHash implements PasswordHashAlgorithm {
+    public static final String ID = "pbkdf2-sha256";
+    // OWASP's 2023 recommendation for PBKDF2-HMAC-SHA256.
+    public static final int DEFAULT_ITERATIONS = 600_000;
+
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Constructs a Pbkdf2PasswordHash with the default iteration count.
+     */
+    public Pbkdf2PasswordHash() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Constructs a Pbkdf2PasswordHash.
+     *
+     * @param iterations The iteration count used for new hashes.
+     */
+    public Pbkdf2PasswordHash(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Iteration count must be positive.");
+        }
+        this.iterations = iterations;
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = derive(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return ID + "$" + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    @Override
+    public boolean verify(String password, String storedHash) {
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(ID)) {
+            return false;
+        }
+        try {
+            int storedIterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            // Constant-time comparison, so timing does not reveal how much of the hash matched.
+            return MessageDigest.isEqual(derive(password, salt, storedIterations), expected);
+        } catch (IllegalArgumentException e) {
+            return false; // Malformed record.
+        }
+    }
+
+    @Override
+    public boolean matchesFormat(String storedHash) {
+        return storedHash.startsWith(ID + "$");
+    }
+
+    @Override
+    public boolean needsRehash(String storedHash) {
+        String[] parts = storedHash.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // PBKDF2WithHmacSHA256 is required of every Java platform, so this should not happen.
+            throw new RuntimeException("PBKDF2WithHmacSHA256 algorithm not found.", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
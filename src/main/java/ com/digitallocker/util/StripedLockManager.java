@@ -0,0 +1,59 @@
+// Utility class: StripedLockManager.java
+package com.digitallocker.util;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fixed set of read/write locks shared out by key (e.g., username).
+ * A key always maps to the same stripe, so operations on one user are coordinated, while
+ * different users usually land on different stripes and do not contend. Unlike a lock per
+ * user, memory use does not grow with the number of users.
+ */
+public class StripedLockManager {
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+
+    /**
+     * Constructs a StripedLockManager with four stripes per available processor.
+     */
+    public StripedLockManager() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a StripedLockManager.
+     *
+     * @param minimumStripes The minimum number of stripes; rounded up to a power of two.
+     */
+    public StripedLockManager(int minimumStripes) {
+        if (minimumStripes <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive.");
+        }
+        int count = Integer.highestOneBit(minimumStripes);
+        if (count < minimumStripes) {
+            count <<= 1;
+        }
+        stripes = new ReentrantReadWriteLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        mask = count - 1;
+    }
+
+    /**
+     * Returns the lock guarding the given key.
+     *
+     * @param key The key to lock, such as a username.
+     * @return The read/write lock of the key's stripe.
+     */
+    public ReadWriteLock lockFor(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16); // Spread high bits so similar keys use different stripes.
+        return stripes[hash & mask];
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+}
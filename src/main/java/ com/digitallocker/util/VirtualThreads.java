@@ -0,0 +1,29 @@
+// Utility class: VirtualThreads.java
+package com.digitallocker.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads for code that must still compile and run on Java 17.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task when the JVM supports them
+     * (Java 21+), falling back to a cached thread pool. The factory is looked up reflectively so
+     * the project still compiles for Java 17.
+     *
+     * @return A new executor; the caller shuts it down.
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// Test class: MetadataListingTest.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pages through a locker split between a snapshot and a text log, including across a compaction
+ * between pages, and checks that a log that is only appended to is still compacted.
+ */
+class MetadataListingTest {
+    private static final String USER = "alice";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void pagesMatchReplay() throws IOException {
+        MetadataLog log = newLog();
+        append(log, 0, 100);
+        log.compact();
+        append(log, 100, 130);
+        update(log, 5);
+        update(log, 110);
+        delete(log, 7);
+        delete(log, 120);
+
+        assertEquals(ids(log.replay()), ids(pageThrough(log, null, 9)));
+    }
+
+    @Test
+    void resumesCursorAcrossCompaction() throws IOException {
+        MetadataLog log = newLog();
+        append(log, 0, 100);
+        log.compact();
+        append(log, 100, 120);
+        delete(log, 3);
+        List<String> expected = ids(log.replay());
+
+        FilePage first = log.openListing().page(null, 30);
+        log.compact();
+        List<FileMetadata> listed = new ArrayList<>(first.getFiles());
+        listed.addAll(pageThrough(log, first.getNextCursor(), 30));
+        assertEquals(expected, ids(listed));
+    }
+
+    @Test
+    void resumesAtTheNextEntryWhenTheLastOneReturnedIsDeleted() throws IOException {
+        MetadataLog log = newLog();
+        append(log, 0, 50);
+        log.compact();
+
+        FilePage first = log.openListing().page(null, 10);
+        String lastReturned = first.getFiles().get(first.getFiles().size() - 1).getId();
+        GroupCommitWriter.await(log.appendDelete(lastReturned));
+        log.compact();
+        List<FileMetadata> rest = pageThrough(log, first.getNextCursor(), 10);
+        assertEquals(ids(log.replay()).subList(first.getFiles().size() - 1, 49), ids(rest));
+    }
+
+    @Test
+    void compactsALogThatIsOnlyAppendedTo() throws Exception {
+        MetadataLog log = newLog();
+        append(log, 0, 200);
+        log.compact();
+
+        MetadataLog reopened = newLog(); // Never replayed, as after a restart.
+        MetadataCompactor compactor = new MetadataCompactor();
+        for (int i = 200; i < 1000; i++) {
+            GroupCommitWriter.await(reopened.appendPut(file(i), true));
+            compactor.maybeCompact(reopened);
+        }
+        compactor.shutdown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (reopened.getTailRecords() >= 800 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(reopened.getTailRecords() < 800, reopened.getTailRecords() + " records left in the log");
+        assertEquals(1000, reopened.replay().size());
+    }
+
+    private MetadataLog newLog() {
+        return new MetadataLog(directory.toString(), USER);
+    }
+
+    private static List<FileMetadata> pageThrough(MetadataLog log, String cursor, int pageSize) throws IOException {
+        List<FileMetadata> files = new ArrayList<>();
+        do {
+            FilePage page = log.openListing().page(cursor, pageSize);
+            files.addAll(page.getFiles());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return files;
+    }
+
+    private static void append(MetadataLog log, int from, int to) throws IOException {
+        List<FileMetadata> files = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            files.add(file(i));
+        }
+        GroupCommitWriter.await(log.appendPuts(files));
+    }
+
+    private static void update(MetadataLog log, int i) throws IOException {
+        GroupCommitWriter.await(log.appendPut(new FileMetadata("f" + i, "renamed" + i, "s" + i, 1_700_000_000_000L + i, i, null), false));
+    }
+
+    private static void delete(MetadataLog log, int i) throws IOException {
+        GroupCommitWriter.await(log.appendDelete("f" + i));
+    }
+
+    private static FileMetadata file(int i) {
+        return new FileMetadata("f" + i, "name" + i, "s" + i, 1_700_000_000_000L + i, i, null);
+    }
+
+    private static List<String> ids(List<FileMetadata> files) {
+        return files.stream().map(FileMetadata::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,105 @@
+// Test class: MetadataLogTest.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replays a log of puts, updates and tombstones, compacts it, and migrates a locker still in the
+ * old {@code _files.txt} format, reopening the log after each step as a restart would.
+ */
+class MetadataLogTest {
+    private static final String USER = "alice";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayAppliesUpdatesAndTombstones() throws IOException {
+        MetadataLog log = newLog();
+        for (int i = 0; i < 5; i++) {
+            GroupCommitWriter.await(log.appendPut(file(i, "name" + i), true));
+        }
+        GroupCommitWriter.await(log.appendPut(file(1, "renamed"), false));
+        GroupCommitWriter.await(log.appendDelete("f2"));
+        GroupCommitWriter.await(log.appendPut(file(5, "name5"), true));
+        GroupCommitWriter.await(log.appendDelete("f5"));
+
+        for (MetadataLog replayed : List.of(log, newLog())) {
+            Map<String, FileMetadata> files = byId(replayed.replay());
+            assertEquals(List.of("f0", "f1", "f3", "f4"), files.keySet().stream().sorted().collect(Collectors.toList()));
+            assertEquals("renamed", files.get("f1").getOriginalFilename());
+            assertTrue(replayed.find("f2").isEmpty());
+            assertEquals("name3", replayed.find("f3").orElseThrow().getOriginalFilename());
+        }
+        assertEquals(9, log.getTotalRecords());
+        assertEquals(5.0 / 9, log.getDeadRatio(), 1e-9);
+    }
+
+    @Test
+    void compactKeepsOnlyLiveFiles() throws IOException {
+        MetadataLog log = newLog();
+        for (int i = 0; i < 10; i++) {
+            GroupCommitWriter.await(log.appendPut(file(i, "name" + i), true));
+        }
+        GroupCommitWriter.await(log.appendPut(file(4, "renamed"), false));
+        GroupCommitWriter.await(log.appendDelete("f7"));
+        List<FileMetadata> before = log.replay();
+
+        log.compact();
+        assertEquals(0, Files.size(directory.resolve(USER + MetadataLog.LOG_SUFFIX)));
+        assertEquals(0, log.getTailRecords());
+        assertEquals(0.0, log.getDeadRatio());
+        GroupCommitWriter.await(log.appendDelete("f0"));
+
+        MetadataLog reopened = newLog();
+        Map<String, FileMetadata> files = byId(reopened.replay());
+        assertEquals(before.size() - 1, files.size());
+        assertFalse(files.containsKey("f0"));
+        assertFalse(files.containsKey("f7"));
+        assertEquals("renamed", files.get("f4").getOriginalFilename());
+        assertEquals(1_700_000_000_009L, files.get("f9").getUploadDate());
+    }
+
+    @Test
+    void migratesLegacyTextFile() throws IOException {
+        Path legacy = directory.resolve(USER + MetadataLog.LEGACY_SUFFIX);
+        Files.writeString(legacy, "f1|old.txt|s1|2024-01-02 03:04:05|10\n\nf2|new.txt|s2|1700000000000|20|abc\n");
+
+        MetadataLog log = newLog();
+        Map<String, FileMetadata> files = byId(log.replay());
+        assertEquals(2, files.size());
+        assertEquals(FileMetadata.parseUploadDate("2024-01-02 03:04:05"), files.get("f1").getUploadDate());
+        assertEquals("abc", files.get("f2").getStoredHash());
+        assertFalse(Files.exists(legacy));
+        assertTrue(Files.exists(directory.resolve(USER + MetadataLog.LEGACY_SUFFIX + MetadataLog.BACKUP_SUFFIX)));
+
+        GroupCommitWriter.await(log.appendDelete("f1"));
+        assertEquals(List.of("f2"), List.copyOf(byId(newLog().replay()).keySet()));
+    }
+
+    private MetadataLog newLog() {
+        return new MetadataLog(directory.toString(), USER);
+    }
+
+    private static FileMetadata file(int i, String name) {
+        return new FileMetadata("f" + i, name, "s" + i, 1_700_000_000_000L + i, i, null);
+    }
+
+    private static Map<String, FileMetadata> byId(List<FileMetadata> files) {
+        return files.stream().collect(Collectors.toMap(FileMetadata::getId, Function.identity()));
+    }
+}
@@ -0,0 +1,63 @@
+// Test class: MetadataRecoveryTest.java
+package com.digitallocker.dao;
+
+import com.digitallocker.util.DurableFiles;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Repairs what a crash can leave in the data directory: a torn last line at the end of an
+ * append-only file, and the temporary file of a rewrite that never finished.
+ */
+class MetadataRecoveryTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void truncatesOnlyTheTornLastLine() throws IOException {
+        Path file = directory.resolve("lines.txt");
+        Files.writeString(file, "first\nsecond\nthi");
+        assertEquals(3, DurableFiles.truncatePartialLine(file));
+        assertEquals("first\nsecond\n", Files.readString(file));
+        assertEquals(0, DurableFiles.truncatePartialLine(file));
+
+        Files.writeString(file, "torn");
+        assertEquals(4, DurableFiles.truncatePartialLine(file));
+        assertEquals(0, Files.size(file));
+        assertEquals(0, DurableFiles.truncatePartialLine(directory.resolve("missing.txt")));
+    }
+
+    @Test
+    void findsTheLastLineBreakFarFromTheEnd() throws IOException {
+        Path file = directory.resolve("lines.txt");
+        String torn = "x".repeat(100_000);
+        Files.writeString(file, "complete\n" + torn);
+        assertEquals(torn.length(), DurableFiles.truncatePartialLine(file));
+        assertEquals("complete\n", Files.readString(file));
+    }
+
+    @Test
+    void repairsMetadataFilesAndLeavesOthersAlone() throws IOException {
+        Files.writeString(directory.resolve(UserDao.USERS_FILE), "alice|hash\nbob|ha");
+        Files.writeString(directory.resolve("alice" + MetadataLog.LOG_SUFFIX), "P|f1|a.txt|s1|1700000000000|1\n");
+        Path unfinishedLog = Files.writeString(directory.resolve("bob" + MetadataLog.LOG_SUFFIX + DurableFiles.TEMP_SUFFIX), "P|f");
+        Path unfinishedUsers = Files.writeString(directory.resolve(UserDao.USERS_FILE + DurableFiles.TEMP_SUFFIX), "alice|");
+        Path unrelated = Files.writeString(directory.resolve("notes" + DurableFiles.TEMP_SUFFIX), "keep");
+
+        assertEquals(3, MetadataRecovery.recover(directory));
+        assertEquals("alice|hash\n", Files.readString(directory.resolve(UserDao.USERS_FILE)));
+        assertEquals("P|f1|a.txt|s1|1700000000000|1\n", Files.readString(directory.resolve("alice" + MetadataLog.LOG_SUFFIX)));
+        assertFalse(Files.exists(unfinishedLog));
+        assertFalse(Files.exists(unfinishedUsers));
+        assertTrue(Files.exists(unrelated));
+        assertEquals(0, MetadataRecovery.recover(directory));
+    }
+}
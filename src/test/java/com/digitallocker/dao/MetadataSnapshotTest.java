@@ -0,0 +1,101 @@
+// Test class: MetadataSnapshotTest.java
+package com.digitallocker.dao;
+
+import com.digitallocker.model.FileMetadata;
+import com.digitallocker.model.FileMetadataBinaryCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Round-trips records through the binary codec and looks files up by id in a written snapshot,
+ * including ids that are missing or could never have been written, and non-ASCII filenames.
+ */
+class MetadataSnapshotTest {
+    private static final String[] NAMES = {"plain.txt", "naïve café.txt", "日本語の文書.pdf", "emoji 😀|pipe\nline.bin", ""};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void binaryCodecRoundTrips() {
+        for (FileMetadata expected : files(NAMES.length)) {
+            ByteBuffer buffer = ByteBuffer.allocate(3 + FileMetadataBinaryCodec.encodedSize(expected));
+            buffer.position(3);
+            FileMetadataBinaryCodec.encode(expected, buffer);
+            assertEquals(buffer.limit(), buffer.position());
+            assertSameMetadata(expected, FileMetadataBinaryCodec.decode(buffer, 3));
+        }
+        assertFalse(FileMetadataBinaryCodec.canEncode(file("é", 0)));
+        assertFalse(FileMetadataBinaryCodec.canEncode(file("x".repeat(FileMetadataBinaryCodec.ID_SIZE + 1), 0)));
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataBinaryCodec.decode(ByteBuffer.allocate(8), 0));
+    }
+
+    @Test
+    void findsEveryFileByIdAndNothingElse() throws IOException {
+        List<FileMetadata> files = files(200);
+        Path snapshotFile = directory.resolve("alice" + MetadataSnapshot.SNAPSHOT_SUFFIX);
+        MetadataSnapshot.write(snapshotFile, files, false);
+        MetadataSnapshot snapshot = MetadataSnapshot.open(snapshotFile);
+
+        assertEquals(files.size(), snapshot.size());
+        List<FileMetadata> all = snapshot.readAll();
+        for (int i = 0; i < files.size(); i++) {
+            FileMetadata expected = files.get(i);
+            assertSameMetadata(expected, all.get(i)); // In upload order, not id order.
+            assertSameMetadata(expected, snapshot.find(expected.getId()));
+            assertSameMetadata(expected, snapshot.readAt(snapshot.offsetOf(expected.getId())));
+        }
+        assertEquals(-1, snapshot.offsetOf(UUID.randomUUID().toString()));
+        assertEquals(-1, snapshot.offsetOf("ü-not-ascii"));
+        assertEquals(-1, snapshot.offsetOf(""));
+        assertNull(snapshot.find(UUID.randomUUID().toString()));
+    }
+
+    @Test
+    void handlesAnEmptySnapshot() throws IOException {
+        Path snapshotFile = directory.resolve("bob" + MetadataSnapshot.SNAPSHOT_SUFFIX);
+        MetadataSnapshot.write(snapshotFile, List.of(), false);
+        MetadataSnapshot snapshot = MetadataSnapshot.open(snapshotFile);
+        assertEquals(0, snapshot.size());
+        assertEquals(-1, snapshot.offsetOf(UUID.randomUUID().toString()));
+        assertNull(MetadataSnapshot.open(directory.resolve("missing" + MetadataSnapshot.SNAPSHOT_SUFFIX)));
+    }
+
+    private static List<FileMetadata> files(int count) {
+        List<FileMetadata> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(file(UUID.randomUUID().toString(), i));
+        }
+        return files;
+    }
+
+    private static FileMetadata file(String id, int i) {
+        String name = NAMES[i % NAMES.length] + (i < NAMES.length ? "" : i);
+        return i % 2 == 0
+                ? new FileMetadata(id, name, "stored" + i, 1_700_000_000_000L + i, i)
+                : new FileMetadata(id, name, "hash" + i + ".deflate", 1_700_000_000_000L - i, 1000 + i, "hash" + i, "deflate", i);
+    }
+
+    private static void assertSameMetadata(FileMetadata expected, FileMetadata actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getOriginalFilename(), actual.getOriginalFilename());
+        assertEquals(expected.getStoredFilename(), actual.getStoredFilename());
+        assertEquals(expected.getUploadDate(), actual.getUploadDate());
+        assertEquals(expected.getFileSize(), actual.getFileSize());
+        assertEquals(expected.getStoredHash(), actual.getStoredHash());
+        assertEquals(expected.getCodec(), actual.getCodec());
+        assertEquals(expected.getStoredSize(), actual.getStoredSize());
+    }
+}
@@ -0,0 +1,68 @@
+// Test class: FileMetadataCodecTest.java
+package com.digitallocker.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Round-trips records with five, six and eight fields, including values that hold the delimiter,
+ * the escape character or line breaks, and reads records written before epoch-millisecond dates.
+ */
+class FileMetadataCodecTest {
+
+    @Test
+    void roundTripsEveryRecordShape() {
+        roundTrip(new FileMetadata("id1", "plain.txt", "stored1", 1_700_000_000_123L, 42));
+        roundTrip(new FileMetadata("id2", "hashed.txt", "abc", 1_700_000_000_456L, 43, "abc"));
+        roundTrip(new FileMetadata("id3", "packed.txt", "abc.deflate", 0L, 1000, "abc", "deflate", 310));
+        roundTrip(new FileMetadata("id4", "coded.txt", "stored4", -1L, 7, null, "deflate", 5));
+    }
+
+    @Test
+    void roundTripsEscapedCharacters() {
+        String name = "a|b\\c\nd\re|\\|\\\\";
+        FileMetadata metadata = new FileMetadata("id|1", name, "stored\\1", 1_700_000_000_000L, 9, "h");
+        String encoded = metadata.toFileString();
+        assertEquals(-1, encoded.indexOf('\n'));
+        assertEquals(-1, encoded.indexOf('\r'));
+        roundTrip(metadata);
+    }
+
+    @Test
+    void readsLegacyDatesAndUnescapedRecords() {
+        FileMetadata metadata = FileMetadataCodec.decode("f1|report.pdf|u_report.pdf|2024-01-02 03:04:05|1234");
+        assertEquals(FileMetadata.parseUploadDate("2024-01-02 03:04:05"), metadata.getUploadDate());
+        assertEquals("2024-01-02 03:04:05", metadata.getFormattedUploadDate());
+        assertEquals(1234, metadata.getStoredSize());
+        assertNull(metadata.getStoredHash());
+
+        // A trailing empty hash is read as absent, as the old split-based parser did.
+        assertNull(FileMetadataCodec.decode("f1|a|b|1700000000000|5|").getStoredHash());
+        FileMetadata inRange = FileMetadataCodec.decode("P|f2|n|s|1700000000000|6\n", 2, 24);
+        assertEquals("f2", inRange.getId());
+        assertEquals(6, inRange.getFileSize());
+    }
+
+    @Test
+    void rejectsMalformedRecords() {
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataCodec.decode("f1|a|b|1700000000000"));
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataCodec.decode("f1|a|b|1700000000000|x"));
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataCodec.decode("f1|a|b|2024-13-45 99:99:99|1"));
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataCodec.decode("f1|a|b|1|1|h|c|1|extra"));
+    }
+
+    private static void roundTrip(FileMetadata expected) {
+        FileMetadata actual = FileMetadataCodec.decode(FileMetadataCodec.encode(expected, new StringBuilder()));
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getOriginalFilename(), actual.getOriginalFilename());
+        assertEquals(expected.getStoredFilename(), actual.getStoredFilename());
+        assertEquals(expected.getUploadDate(), actual.getUploadDate());
+        assertEquals(expected.getFileSize(), actual.getFileSize());
+        assertEquals(expected.getStoredHash(), actual.getStoredHash());
+        assertEquals(expected.getCodec(), actual.getCodec());
+        assertEquals(expected.getStoredSize(), actual.getStoredSize());
+    }
+}
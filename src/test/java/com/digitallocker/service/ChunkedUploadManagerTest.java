@@ -0,0 +1,151 @@
+// Test class: ChunkedUploadManagerTest.java
+package com.digitallocker.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Uploads chunks out of order, resumes after the manager is reloaded, and checks that a resend
+ * that is short or fails its checksum never leaves the chunk listed over damaged bytes.
+ */
+class ChunkedUploadManagerTest {
+    private static final String USER = "alice";
+    private static final int CHUNK_SIZE = 1000;
+
+    private final byte[] content = randomBytes(3 * CHUNK_SIZE + 500);
+
+    @TempDir
+    Path stagingRoot;
+
+    @Test
+    void assemblesChunksSentOutOfOrder() throws IOException {
+        ChunkedUploadManager uploads = new ChunkedUploadManager(stagingRoot);
+        String uploadId = uploads.begin(USER, "file.bin", content.length, CHUNK_SIZE);
+        for (int chunk : new int[] {3, 1, 0, 2}) {
+            assertEquals(checksumOf(chunk), put(uploads, uploadId, chunk, chunkOf(chunk), checksumOf(chunk)));
+        }
+        ChunkedUploadManager.Upload upload = uploads.getUpload(USER, uploadId);
+        upload.verifyComplete();
+        assertArrayEquals(content, Files.readAllBytes(upload.getDataFile()));
+    }
+
+    @Test
+    void resumesAfterReload() throws IOException {
+        ChunkedUploadManager uploads = new ChunkedUploadManager(stagingRoot);
+        String uploadId = uploads.begin(USER, "file.bin", content.length, CHUNK_SIZE);
+        put(uploads, uploadId, 0, chunkOf(0), null);
+        put(uploads, uploadId, 2, chunkOf(2), null);
+
+        ChunkedUploadManager reloaded = new ChunkedUploadManager(stagingRoot);
+        ChunkedUploadManager.Upload upload = reloaded.getUpload(USER, uploadId);
+        assertEquals("file.bin", upload.getOriginalFilename());
+        assertEquals(List.of(1, 3), upload.getMissingChunks());
+        put(reloaded, uploadId, 1, chunkOf(1), null);
+        put(reloaded, uploadId, 3, chunkOf(3), null);
+        upload.verifyComplete();
+        assertArrayEquals(content, Files.readAllBytes(upload.getDataFile()));
+        assertThrows(IllegalArgumentException.class, () -> reloaded.getUpload("bob", uploadId));
+    }
+
+    @Test
+    void reloadKeepsFilenamesContainingTheSeparator() throws IOException {
+        ChunkedUploadManager uploads = new ChunkedUploadManager(stagingRoot);
+        String uploadId = uploads.begin(USER, "a|b|c.txt", content.length, CHUNK_SIZE);
+        put(uploads, uploadId, 0, chunkOf(0), null);
+
+        ChunkedUploadManager.Upload upload = new ChunkedUploadManager(stagingRoot).getUpload(USER, uploadId);
+        assertEquals("a|b|c.txt", upload.getOriginalFilename());
+        assertEquals(List.of(1, 2, 3), upload.getMissingChunks());
+    }
+
+    @Test
+    void badResendLeavesTheChunkMissingUntilSentAgain() throws IOException {
+        ChunkedUploadManager uploads = new ChunkedUploadManager(stagingRoot);
+        String uploadId = uploads.begin(USER, "file.bin", content.length, CHUNK_SIZE);
+        for (int chunk = 0; chunk < 4; chunk++) {
+            put(uploads, uploadId, chunk, chunkOf(chunk), null);
+        }
+
+        byte[] garbage = randomBytes(CHUNK_SIZE);
+        assertThrows(IllegalArgumentException.class, () -> put(uploads, uploadId, 1, garbage, checksumOf(1)));
+        assertEquals(List.of(1), uploads.getUpload(USER, uploadId).getMissingChunks());
+        assertThrows(IOException.class, () -> put(uploads, uploadId, 1, Arrays.copyOf(chunkOf(1), 10), null));
+        assertEquals(List.of(1), new ChunkedUploadManager(stagingRoot).getUpload(USER, uploadId).getMissingChunks(),
+                "the manifest no longer lists the chunk either");
+        assertThrows(IllegalStateException.class, () -> uploads.getUpload(USER, uploadId).verifyComplete());
+
+        put(uploads, uploadId, 1, chunkOf(1), checksumOf(1));
+        ChunkedUploadManager.Upload upload = uploads.getUpload(USER, uploadId);
+        upload.verifyComplete();
+        assertArrayEquals(content, Files.readAllBytes(upload.getDataFile()));
+    }
+
+    @Test
+    void verifyDropsChunksDamagedOnDisk() throws IOException {
+        ChunkedUploadManager uploads = new ChunkedUploadManager(stagingRoot);
+        String uploadId = uploads.begin(USER, "file.bin", content.length, CHUNK_SIZE);
+        for (int chunk = 0; chunk < 4; chunk++) {
+            put(uploads, uploadId, chunk, chunkOf(chunk), null);
+        }
+        ChunkedUploadManager.Upload upload = uploads.getUpload(USER, uploadId);
+        try (FileChannel data = FileChannel.open(upload.getDataFile(), StandardOpenOption.WRITE)) {
+            data.write(ByteBuffer.wrap(new byte[] {(byte) ~content[2 * CHUNK_SIZE + 7]}), 2 * CHUNK_SIZE + 7);
+        }
+        assertTrue(upload.isComplete());
+        assertThrows(IllegalStateException.class, upload::verifyComplete);
+        assertEquals(List.of(2), upload.getMissingChunks());
+    }
+
+    @Test
+    void rejectsChunksAfterRemoval() throws IOException {
+        ChunkedUploadManager uploads = new ChunkedUploadManager(stagingRoot);
+        String uploadId = uploads.begin(USER, "file.bin", content.length, CHUNK_SIZE);
+        ChunkedUploadManager.Upload upload = uploads.getUpload(USER, uploadId);
+        uploads.remove(uploadId);
+        assertFalse(Files.exists(stagingRoot.resolve(uploadId)));
+        assertThrows(IllegalArgumentException.class, () -> put(uploads, uploadId, 0, chunkOf(0), null));
+        assertThrows(IllegalArgumentException.class, upload::verifyComplete);
+    }
+
+    private static String put(ChunkedUploadManager uploads, String uploadId, int chunk, byte[] bytes, String checksum)
+            throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(bytes));
+        return uploads.putChunk(USER, uploadId, chunk, channel, checksum);
+    }
+
+    private byte[] chunkOf(int chunk) {
+        return Arrays.copyOfRange(content, chunk * CHUNK_SIZE, Math.min(content.length, (chunk + 1) * CHUNK_SIZE));
+    }
+
+    private String checksumOf(int chunk) {
+        CRC32C crc = new CRC32C();
+        crc.update(chunkOf(chunk));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
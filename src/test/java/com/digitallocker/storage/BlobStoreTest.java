@@ -0,0 +1,163 @@
+// Test class: BlobStoreTest.java
+package com.digitallocker.storage;
+
+import com.digitallocker.util.CopyEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stores identical content twice without writing it again, counts references across release and
+ * restart, and finds blobs in an older layout before and after they are migrated.
+ */
+class BlobStoreTest {
+    private static final int LARGE = 200_000; // Above the pack threshold, so the blob gets a file.
+
+    @TempDir
+    Path root;
+
+    @Test
+    void secondIdenticalStoreWritesNothing() throws IOException {
+        Path blobDirectory = root.resolve("blobs");
+        byte[] content = randomBytes(LARGE, 1);
+        try (BlobStore store = new BlobStore(blobDirectory, new CopyEngine())) {
+            BlobStore.StoredBlob first = store.store(source(content));
+            assertFalse(first.isDeduplicated());
+            Path blobFile = store.resolve(first.getName());
+            FileTime written = FileTime.fromMillis(1_000_000_000_000L);
+            Files.setLastModifiedTime(blobFile, written);
+            Object fileKey = Files.readAttributes(blobFile, BasicFileAttributes.class).fileKey();
+
+            BlobStore.StoredBlob second = store.store(source(content));
+            assertTrue(second.isDeduplicated());
+            assertEquals(first.getName(), second.getName());
+            assertEquals(written, Files.getLastModifiedTime(blobFile));
+            assertEquals(fileKey, Files.readAttributes(blobFile, BasicFileAttributes.class).fileKey());
+            try (Stream<Path> staged = Files.list(blobDirectory.resolve("staging"))) {
+                assertEquals(0, staged.count());
+            }
+            assertEquals(2, store.getReferenceCount(first.getName()));
+            assertArrayEquals(content, read(store, first.getName()));
+        }
+    }
+
+    @Test
+    void secondIdenticalSmallStoreAppendsNothingToThePack() throws IOException {
+        Path blobDirectory = root.resolve("blobs");
+        byte[] content = randomBytes(1000, 2);
+        try (BlobStore store = new BlobStore(blobDirectory, new CopyEngine())) {
+            BlobStore.StoredBlob first = store.store(source(content));
+            long packed = packedBytes(blobDirectory);
+            BlobStore.StoredBlob second = store.store(source(content));
+            assertTrue(second.isDeduplicated());
+            assertEquals(packed, packedBytes(blobDirectory));
+            assertEquals(2, store.getReferenceCount(first.getName()));
+        }
+    }
+
+    @Test
+    void referenceCountsSurviveReleaseAndRestart() throws IOException {
+        Path blobDirectory = root.resolve("blobs");
+        String shared;
+        String released;
+        try (BlobStore store = new BlobStore(blobDirectory, new CopyEngine())) {
+            shared = store.store(source(randomBytes(LARGE, 3))).getName();
+            store.store(source(randomBytes(LARGE, 3)));
+            store.acquire(shared);
+            released = store.store(source(randomBytes(LARGE, 4))).getName();
+            store.release(shared);
+            store.release(released);
+            assertEquals(2, store.getReferenceCount(shared));
+            assertEquals(0, store.getReferenceCount(released));
+            assertFalse(Files.exists(store.resolve(released)));
+        }
+
+        try (BlobStore store = new BlobStore(blobDirectory, new CopyEngine())) {
+            assertEquals(2, store.getReferenceCount(shared));
+            assertEquals(0, store.getReferenceCount(released));
+            store.release(shared);
+            store.release(shared);
+            assertFalse(Files.exists(store.resolve(shared)));
+        }
+        try (BlobStore store = new BlobStore(blobDirectory, new CopyEngine())) {
+            assertEquals(0, store.getReferenceCount(shared));
+            assertThrows(IOException.class, () -> store.open(shared).close());
+        }
+    }
+
+    @Test
+    void resolvesBlobsAcrossLayouts() throws IOException {
+        Path blobDirectory = root.resolve("blobs");
+        byte[] content = randomBytes(LARGE, 5);
+        String name;
+        try (BlobStore flat = new BlobStore(blobDirectory, new CopyEngine(), BlobLayout.flat())) {
+            name = flat.store(source(content)).getName();
+            assertEquals(blobDirectory.resolve(name), flat.resolve(name));
+        }
+
+        BlobLayout fanOut = BlobLayout.fanOut(2);
+        try (BlobStore store = new BlobStore(blobDirectory, new CopyEngine(), fanOut)) {
+            assertFalse(store.isLayoutMigrated());
+            assertEquals(blobDirectory.resolve(name), store.resolve(name));
+            assertArrayEquals(content, read(store, name));
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                assertEquals(1, store.migrateLayout(executor, 4));
+            } finally {
+                executor.shutdown();
+            }
+            assertTrue(store.isLayoutMigrated());
+            assertEquals(fanOut.locate(blobDirectory, name), store.resolve(name));
+            assertFalse(Files.exists(blobDirectory.resolve(name)));
+            assertArrayEquals(content, read(store, name));
+        }
+        try (BlobStore reopened = new BlobStore(blobDirectory, new CopyEngine(), fanOut)) {
+            assertTrue(reopened.isLayoutMigrated());
+            assertArrayEquals(content, read(reopened, name));
+        }
+    }
+
+    private Path source(byte[] content) throws IOException {
+        return Files.write(Files.createTempFile(root, "source", ".bin"), content);
+    }
+
+    private static byte[] read(BlobStore store, String name) throws IOException {
+        try (FileChannel in = store.open(name)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) in.size());
+            while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+                // Keep reading until the blob is in the buffer.
+            }
+            return buffer.array();
+        }
+    }
+
+    private static long packedBytes(Path blobDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(blobDirectory.resolve(PackStore.DIRECTORY))) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,171 @@
+// Test class: SegmentedCipherTest.java
+package com.digitallocker.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Round trips through {@link SegmentedCipher} at segment boundaries, and checks that truncated,
+ * reordered and altered content is rejected.
+ */
+class SegmentedCipherTest {
+    private static final int HEADER_SIZE = 47;
+    private static final int ENCRYPTED_SEGMENT_SIZE = SegmentedCipher.SEGMENT_SIZE + 16;
+
+    private final SecretKey key = new SecretKeySpec(randomBytes(32, 1), SegmentedCipher.KEY_ALGORITHM);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsAtSegmentBoundaries() throws IOException {
+        for (int size : new int[] {0, SegmentedCipher.SEGMENT_SIZE, SegmentedCipher.SEGMENT_SIZE + 1}) {
+            byte[] plaintext = randomBytes(size, size);
+            Path file = encrypt(plaintext);
+            assertArrayEquals(plaintext, decrypt(file), "size " + size);
+        }
+    }
+
+    @Test
+    void copiesRangesAcrossSegments() throws IOException {
+        byte[] plaintext = randomBytes(3 * SegmentedCipher.SEGMENT_SIZE + 10, 2);
+        Path file = encrypt(plaintext);
+        int from = SegmentedCipher.SEGMENT_SIZE - 5;
+        assertArrayEquals(Arrays.copyOfRange(plaintext, from, from + 100), copyRange(file, from, 100));
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 1, plaintext.length), copyRange(file, 1, Long.MAX_VALUE));
+        assertEquals(0, copyRange(file, plaintext.length, 10).length);
+    }
+
+    @Test
+    void rejectsTruncationAtASegmentBoundary() throws IOException {
+        Path file = encrypt(randomBytes(SegmentedCipher.SEGMENT_SIZE + 1, 3));
+        truncate(file, HEADER_SIZE + ENCRYPTED_SEGMENT_SIZE);
+        assertThrows(IOException.class, () -> decrypt(file));
+    }
+
+    @Test
+    void rejectsTruncationInsideASegment() throws IOException {
+        Path file = encrypt(randomBytes(SegmentedCipher.SEGMENT_SIZE + 1000, 4));
+        truncate(file, Files.size(file) - 100);
+        assertThrows(IOException.class, () -> decrypt(file));
+    }
+
+    @Test
+    void rejectsReorderedSegments() throws IOException {
+        Path file = encrypt(randomBytes(2 * SegmentedCipher.SEGMENT_SIZE + 1, 5));
+        byte[] encrypted = Files.readAllBytes(file);
+        byte[] first = Arrays.copyOfRange(encrypted, HEADER_SIZE, HEADER_SIZE + ENCRYPTED_SEGMENT_SIZE);
+        System.arraycopy(encrypted, HEADER_SIZE + ENCRYPTED_SEGMENT_SIZE, encrypted, HEADER_SIZE, ENCRYPTED_SEGMENT_SIZE);
+        System.arraycopy(first, 0, encrypted, HEADER_SIZE + ENCRYPTED_SEGMENT_SIZE, ENCRYPTED_SEGMENT_SIZE);
+        Files.write(file, encrypted);
+        assertThrows(IOException.class, () -> decrypt(file));
+    }
+
+    @Test
+    void rejectsFlippedBits() throws IOException {
+        byte[] plaintext = randomBytes(SegmentedCipher.SEGMENT_SIZE + 1, 6);
+        long[] positions = {
+                12, // The salt in the header.
+                HEADER_SIZE - 1, // The nonce prefix in the header.
+                HEADER_SIZE + 100, // Ciphertext of the first segment.
+                HEADER_SIZE + ENCRYPTED_SEGMENT_SIZE - 1, // The first segment's tag.
+                HEADER_SIZE + ENCRYPTED_SEGMENT_SIZE // The last segment.
+        };
+        for (long position : positions) {
+            Path file = encrypt(plaintext);
+            byte[] encrypted = Files.readAllBytes(file);
+            encrypted[(int) position] ^= 0x01;
+            Files.write(file, encrypted);
+            assertThrows(IOException.class, () -> decrypt(file), "flipped byte " + position);
+        }
+    }
+
+    @Test
+    void derivesAFreshKeyForEveryBlob() throws IOException {
+        byte[] plaintext = randomBytes(1000, 7);
+        byte[] first = Files.readAllBytes(encrypt(plaintext));
+        byte[] second = Files.readAllBytes(encrypt(plaintext));
+        assertFalse(Arrays.equals(Arrays.copyOfRange(first, HEADER_SIZE, first.length),
+                Arrays.copyOfRange(second, HEADER_SIZE, second.length)), "same content, different ciphertext");
+
+        Path file = encrypt(plaintext);
+        SecretKey otherKey = new SecretKeySpec(randomBytes(32, 8), SegmentedCipher.KEY_ALGORITHM);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThrows(IOException.class, () -> SegmentedCipher.copyRange(in, otherKey, 0, 10,
+                    Channels.newChannel(new ByteArrayOutputStream())));
+        }
+    }
+
+    @Test
+    void dataKeysSeparateContentAndNamingKeys() {
+        DataKey dataKey = new DataKey(randomBytes(32, 9));
+        byte[] contentKey = dataKey.getKey().getEncoded();
+        assertFalse(Arrays.equals(randomBytes(32, 9), contentKey), "the raw key is not used directly");
+        assertEquals(64, dataKey.blobId(new byte[32]).length());
+        assertFalse(dataKey.blobId(new byte[32]).equals(new DataKey(randomBytes(32, 10)).blobId(new byte[32])));
+    }
+
+    private Path encrypt(byte[] plaintext) throws IOException {
+        Path file = Files.createTempFile(directory, "blob", ".aes-gcm");
+        try (WritableByteChannel out = SegmentedCipher.encrypt(FileChannel.open(file, StandardOpenOption.WRITE), key)) {
+            ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+        return file;
+    }
+
+    private byte[] decrypt(Path file) throws IOException {
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        try (ReadableByteChannel in = SegmentedCipher.decrypt(FileChannel.open(file, StandardOpenOption.READ), key)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (in.read(buffer) >= 0) {
+                plaintext.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return plaintext.toByteArray();
+    }
+
+    private byte[] copyRange(Path file, long offset, long length) throws IOException {
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long copied = SegmentedCipher.copyRange(in, key, offset, length, Channels.newChannel(plaintext));
+            assertEquals(plaintext.size(), copied);
+        }
+        return plaintext.toByteArray();
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}